@@ -0,0 +1,63 @@
+import java.io.PrintStream;
+
+// Where a lot sends what it reports to the operator: tickets issued,
+// receipts, rejections and availability. Calls come from the gate threads,
+// so implementations must be thread-safe.
+interface AuditSink
+{
+    void parked(Ticket ticket);
+
+    void receipt(Payment payment);
+
+    // an operator message such as "No slot available."
+    void message(String text);
+
+    void availability(Availability availability);
+
+    // makes everything reported so far visible to the reader
+    default void flush()
+    {
+    }
+}
+
+// One println per line, straight to the stream; what the lot has always
+// printed. Suits an interactive console, where each answer must show up
+// before the next prompt.
+class PrintStreamSink implements AuditSink
+{
+    private final PrintStream out;
+
+    public PrintStreamSink(PrintStream out)
+    {
+        this.out = out;
+    }
+
+    public void parked(Ticket ticket)
+    {
+        out.println("Parked: " + ticket.getId());
+    }
+
+    public void receipt(Payment p)
+    {
+        out.println("Ticket ID: " + p.getTicket().getId());
+        out.println("Vehicle Type: " + p.getTicket().getVehicle().getType());
+        out.println("Hours Parked: " + p.getHours());
+        out.println("Amount: Rs. " + p.getAmount());
+    }
+
+    public void message(String text)
+    {
+        out.println(text);
+    }
+
+    public void availability(Availability a)
+    {
+        for (int i = 0; i < a.getFloorCount(); i++)
+            out.println("Floor " + (i + 1) + ": " + a.getAvailable(i) + " available slots");
+    }
+
+    public void flush()
+    {
+        out.flush();
+    }
+}
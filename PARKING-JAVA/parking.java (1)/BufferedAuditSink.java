@@ -0,0 +1,415 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.LockSupport;
+
+// AuditSink for busy lots. Gates format each record straight into a shared
+// byte buffer, with no Strings built along the way, and a background thread
+// writes the buffer out in batches every few milliseconds, or sooner once it
+// is half full. A gate only waits for the disk when the buffer is full.
+//
+// The buffer is double: the writer swaps in the spare under the append lock
+// and writes the full one outside it, so gates keep appending during the
+// write. writeLock keeps batches in order when a gate has to write one
+// itself.
+//
+// Text mode writes exactly what PrintStreamSink prints. Binary mode writes
+// one tagged record per call:
+//   PARKED        type, floor, slot, ticket id, plate
+//   RECEIPT       type, hours, amount in paise, ticket id
+//   MESSAGE       text
+//   AVAILABILITY  floor count, free slots per floor
+// with ints and longs big-endian, the type as its ordinal byte, and strings
+// as an unsigned short length followed by UTF-8. A string longer than
+// MAX_STRING_BYTES in UTF-8 is cut short at a whole character, so a record
+// always says how long it is; text mode writes strings whole.
+class BufferedAuditSink implements AuditSink, Closeable
+{
+    static final byte PARKED = 1;
+    static final byte RECEIPT = 2;
+    static final byte MESSAGE = 3;
+    static final byte AVAILABILITY = 4;
+    static final int MAX_STRING_BYTES = 0xFFFF;
+
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private static final byte[][] TYPE_NAMES = new byte[VehicleType.values().length][];
+
+    static
+    {
+        for (VehicleType type : VehicleType.values())
+            TYPE_NAMES[type.ordinal()] = type.name().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static final byte[] PARKED_TEXT = ascii("Parked: ");
+    private static final byte[] TICKET_TEXT = ascii("Ticket ID: ");
+    private static final byte[] TYPE_TEXT = ascii("Vehicle Type: ");
+    private static final byte[] HOURS_TEXT = ascii("Hours Parked: ");
+    private static final byte[] AMOUNT_TEXT = ascii("Amount: Rs. ");
+    private static final byte[] FLOOR_TEXT = ascii("Floor ");
+    private static final byte[] AVAILABLE_TEXT = ascii(" available slots");
+
+    private final WritableByteChannel out;
+    private final boolean binary;
+    private final long flushIntervalNanos;
+
+    private final Object appendLock = new Object();
+    private final Object writeLock = new Object();
+    private ByteBuffer active;
+    private ByteBuffer spare;
+
+    private final Thread writer;
+    private volatile boolean running = true;
+    private volatile IOException failure;
+
+    public BufferedAuditSink(OutputStream out, boolean binary)
+    {
+        this(Channels.newChannel(out), binary, 64 << 10, 10);
+    }
+
+    public BufferedAuditSink(WritableByteChannel out, boolean binary, int bufferSize, long flushIntervalMillis)
+    {
+        this.out = out;
+        this.binary = binary;
+        this.flushIntervalNanos = flushIntervalMillis * 1_000_000L;
+        this.active = ByteBuffer.allocate(bufferSize);
+        this.spare = ByteBuffer.allocate(bufferSize);
+        writer = new Thread(this::writeLoop, "audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public void parked(Ticket t)
+    {
+        String id = t.getId();
+        String plate = t.getVehicle().getPlate();
+        int need = 32 + 3 * (id.length() + plate.length());
+        while (true)
+        {
+            synchronized (appendLock)
+            {
+                ByteBuffer b = active;
+                if (b.remaining() >= need)
+                {
+                    if (binary)
+                    {
+                        b.put(PARKED).put((byte) t.getVehicle().getType().ordinal());
+                        b.putInt(t.getFloorIdx()).putInt(t.getSlotIdx());
+                        putString(b, id);
+                        putString(b, plate);
+                    }
+                    else
+                    {
+                        b.put(PARKED_TEXT);
+                        putText(b, id);
+                        b.put(NEWLINE);
+                    }
+                    appended(b);
+                    return;
+                }
+            }
+            makeRoom(need);
+        }
+    }
+
+    public void receipt(Payment p)
+    {
+        Ticket t = p.getTicket();
+        String id = t.getId();
+        int need = 128 + 3 * id.length();
+        while (true)
+        {
+            synchronized (appendLock)
+            {
+                ByteBuffer b = active;
+                if (b.remaining() >= need)
+                {
+                    int type = t.getVehicle().getType().ordinal();
+                    if (binary)
+                    {
+                        b.put(RECEIPT).put((byte) type).putInt(p.getHours());
+                        b.putLong(Math.round(p.getAmount() * 100));
+                        putString(b, id);
+                    }
+                    else
+                    {
+                        b.put(TICKET_TEXT);
+                        putText(b, id);
+                        b.put(NEWLINE).put(TYPE_TEXT).put(TYPE_NAMES[type]);
+                        b.put(NEWLINE).put(HOURS_TEXT);
+                        putDecimal(b, p.getHours());
+                        b.put(NEWLINE).put(AMOUNT_TEXT);
+                        putAmount(b, p.getAmount());
+                        b.put(NEWLINE);
+                    }
+                    appended(b);
+                    return;
+                }
+            }
+            makeRoom(need);
+        }
+    }
+
+    public void message(String text)
+    {
+        int need = 8 + 3 * text.length();
+        while (true)
+        {
+            synchronized (appendLock)
+            {
+                ByteBuffer b = active;
+                if (b.remaining() >= need)
+                {
+                    if (binary)
+                    {
+                        b.put(MESSAGE);
+                        putString(b, text);
+                    }
+                    else
+                    {
+                        putText(b, text);
+                        b.put(NEWLINE);
+                    }
+                    appended(b);
+                    return;
+                }
+            }
+            makeRoom(need);
+        }
+    }
+
+    public void availability(Availability a)
+    {
+        int floors = a.getFloorCount();
+        int need = 8 + floors * 48;
+        while (true)
+        {
+            synchronized (appendLock)
+            {
+                ByteBuffer b = active;
+                if (b.remaining() >= need)
+                {
+                    if (binary)
+                    {
+                        b.put(AVAILABILITY).putInt(floors);
+                        for (int i = 0; i < floors; i++)
+                            b.putInt(a.getAvailable(i));
+                    }
+                    else
+                    {
+                        for (int i = 0; i < floors; i++)
+                        {
+                            b.put(FLOOR_TEXT);
+                            putDecimal(b, i + 1);
+                            b.put((byte) ':').put((byte) ' ');
+                            putDecimal(b, a.getAvailable(i));
+                            b.put(AVAILABLE_TEXT).put(NEWLINE);
+                        }
+                    }
+                    appended(b);
+                    return;
+                }
+            }
+            makeRoom(need);
+        }
+    }
+
+    // Writes out everything appended so far before returning.
+    public void flush()
+    {
+        try {
+            writeOut();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Writes what is left and stops the writer thread. The channel is left
+    // open; it may well be stdout.
+    @Override
+    public void close() throws IOException
+    {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writeOut();
+    }
+
+    // Caller holds appendLock.
+    private void appended(ByteBuffer b)
+    {
+        if (b.position() > b.capacity() >>> 1)
+            LockSupport.unpark(writer);
+    }
+
+    // Called by a gate that found the buffer too full for its record: writes
+    // the buffer out itself, and grows both buffers for a record bigger than
+    // they are.
+    private void makeRoom(int need)
+    {
+        flush();
+        synchronized (writeLock)
+        {
+            synchronized (appendLock)
+            {
+                if (active.capacity() < need)
+                {
+                    ByteBuffer bigger = ByteBuffer.allocate(Integer.highestOneBit(need) << 1);
+                    active.flip();
+                    bigger.put(active);
+                    active = bigger;
+                    spare = ByteBuffer.allocate(bigger.capacity());
+                }
+            }
+        }
+    }
+
+    private void writeLoop()
+    {
+        while (running)
+        {
+            LockSupport.parkNanos(this, flushIntervalNanos);
+            try {
+                writeOut();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    // Swaps the buffers under appendLock and writes the full one outside it.
+    private void writeOut() throws IOException
+    {
+        synchronized (writeLock)
+        {
+            if (failure != null)
+                throw failure;
+            ByteBuffer full;
+            synchronized (appendLock)
+            {
+                if (active.position() == 0)
+                    return;
+                full = active;
+                active = spare;
+                spare = full;
+            }
+            full.flip();
+            try {
+                while (full.hasRemaining())
+                    out.write(full);
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            } finally {
+                full.clear();
+            }
+        }
+    }
+
+    private static byte[] ascii(String s)
+    {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // Unsigned short length, then UTF-8; the length is filled in afterwards.
+    // Past MAX_STRING_BYTES the text is cut back to the last character that
+    // fits whole.
+    private static void putString(ByteBuffer b, String s)
+    {
+        int at = b.position();
+        b.putShort((short) 0);
+        putText(b, s);
+        int end = b.position();
+        if (end - at - 2 > MAX_STRING_BYTES)
+        {
+            end = at + 2 + MAX_STRING_BYTES;
+            // the byte at end is not kept; while it continues a character,
+            // that character is not kept either
+            while ((b.get(end) & 0xC0) == 0x80)
+                end--;
+            b.position(end);
+        }
+        b.putShort(at, (short) (end - at - 2));
+    }
+
+    // UTF-8 without going through a byte[]; the caller has made room for
+    // three bytes per char.
+    private static void putText(ByteBuffer b, String s)
+    {
+        for (int i = 0; i < s.length(); i++)
+        {
+            char c = s.charAt(i);
+            if (c < 0x80)
+            {
+                b.put((byte) c);
+            }
+            else if (c < 0x800)
+            {
+                b.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1)))
+            {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                b.put((byte) (0xF0 | cp >> 18)).put((byte) (0x80 | cp >> 12 & 0x3F));
+                b.put((byte) (0x80 | cp >> 6 & 0x3F)).put((byte) (0x80 | cp & 0x3F));
+            }
+            else if (Character.isSurrogate(c))
+            {
+                b.put((byte) '?');
+            }
+            else
+            {
+                b.put((byte) (0xE0 | c >> 12)).put((byte) (0x80 | c >> 6 & 0x3F)).put((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+
+    private static void putDecimal(ByteBuffer b, long v)
+    {
+        if (v < 0)
+        {
+            b.put((byte) '-');
+            v = -v;
+        }
+        int start = b.position();
+        do {
+            b.put((byte) ('0' + v % 10));
+            v /= 10;
+        } while (v > 0);
+        for (int i = start, j = b.position() - 1; i < j; i++, j--)
+        {
+            byte tmp = b.get(i);
+            b.put(i, b.get(j));
+            b.put(j, tmp);
+        }
+    }
+
+    // Same digits as Double.toString for a whole number of paise under a
+    // crore, which is every amount a tariff produces; anything else goes
+    // through Double.toString.
+    private static void putAmount(ByteBuffer b, double amount)
+    {
+        long paise = Math.round(amount * 100);
+        if (amount < 0 || amount >= 1e7 || paise / 100.0 != amount)
+        {
+            putText(b, Double.toString(amount));
+            return;
+        }
+        putDecimal(b, paise / 100);
+        b.put((byte) '.');
+        int frac = (int) (paise % 100);
+        if (frac % 10 == 0)
+        {
+            b.put((byte) ('0' + frac / 10));
+        }
+        else
+        {
+            b.put((byte) ('0' + frac / 10)).put((byte) ('0' + frac % 10));
+        }
+    }
+}
@@ -0,0 +1,161 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+// Checks that a journaled lot comes back as it was: parks and exits through
+// several snapshot rotations, close, reopen, more of the same, reopen again,
+// and each time the recovered lot must hold the same tickets, plates and
+// entry times. Then, with waitForDisk, every change must be in the files as
+// soon as park or exit returns, before the journal is closed, and a plate
+// too long for a record must be turned away without writing anything.
+// Run: java JournalCheck [operations]
+public class JournalCheck
+{
+    // entry times go through wall-clock milliseconds on the way back
+    private static final long SLACK_MILLIS = 5;
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception
+    {
+        int ops = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        Path dir = Files.createTempDirectory("journal-check");
+        try {
+            // ticket id -> the plate parked on it, and when
+            Map<String, String> live = new HashMap<>();
+            Map<String, Long> entered = new HashMap<>();
+            Random rnd = new Random(6);
+            for (int round = 0; round < 3; round++)
+            {
+                // a small threshold, so every round rotates and snapshots
+                ParkingJournal journal = new ParkingJournal(dir, 1, 4096, false);
+                ParkingLot lot = new ParkingLot("NITHYA", journal);
+                compare("reopen " + round, lot, live, entered);
+                work(lot, ops, rnd, round, live, entered);
+                compare("round " + round, lot, live, entered);
+                journal.close();
+            }
+            System.out.println("Operations: " + 3L * ops + ", still parked: " + live.size());
+
+            ParkingJournal journal = new ParkingJournal(dir, 1, 4096, true);
+            ParkingLot lot = new ParkingLot("NITHYA", journal);
+            work(lot, ops / 10, rnd, 3, live, entered);
+            tooLong(lot);
+            onDisk("before close", dir, live);
+            journal.close();
+        } finally {
+            delete(dir);
+        }
+        if (failures > 0)
+        {
+            System.out.println("FAILED: " + failures + " slot(s) came back wrong.");
+            System.exit(1);
+        }
+        System.out.println("OK: every reopen restored the same tickets.");
+    }
+
+    private static void work(ParkingLot lot, int ops, Random rnd, int round,
+                             Map<String, String> live, Map<String, Long> entered)
+    {
+        VehicleType[] types = VehicleType.values();
+        List<String> ids = new ArrayList<>(live.keySet());
+        Collections.sort(ids);
+        for (int i = 0; i < ops; i++)
+        {
+            // hovers around half full
+            if (rnd.nextInt(lot.getCapacity()) >= ids.size())
+            {
+                Vehicle v = new Vehicle("R" + round + "-" + i, "", types[rnd.nextInt(types.length)]);
+                Ticket t = lot.tryPark(v);
+                if (t == null)
+                    continue;
+                ids.add(t.getId());
+                live.put(t.getId(), v.getPlate());
+                entered.put(t.getId(), lot.entryMillis(t));
+            }
+            else
+            {
+                String id = ids.remove(rnd.nextInt(ids.size()));
+                lot.exit(id);
+                live.remove(id);
+                entered.remove(id);
+            }
+        }
+    }
+
+    // turned away each time with the same reason: a plate the journal
+    // refused is not left claimed as if parked
+    private static void tooLong(ParkingLot lot)
+    {
+        String plate = "X".repeat(ParkingJournal.MAX_PLATE_BYTES + 1);
+        for (int i = 0; i < 2; i++)
+        {
+            try {
+                lot.tryPark(new Vehicle(plate, "", VehicleType.CAR));
+                fail("a plate too long for a record was parked");
+            } catch (IllegalArgumentException e) {
+                if (!e.getMessage().equals("Vehicle number is too long."))
+                    fail("a plate too long for a record, try " + (i + 1) + ": " + e.getMessage());
+            }
+        }
+        List<BatchResult<Ticket>> batch = lot.parkAll(Arrays.asList(
+                new Vehicle(plate, "", VehicleType.CAR), new Vehicle("Y" + plate, "", VehicleType.BIKE)));
+        for (BatchResult<Ticket> r : batch)
+            if (r.isOk() || !r.getError().equals("Vehicle number is too long."))
+                fail("a plate too long for a record, in a batch: " + (r.isOk() ? r.getValue().getId() : r.getError()));
+    }
+
+    private static void compare(String when, ParkingLot lot, Map<String, String> live, Map<String, Long> entered)
+    {
+        if (lot.getOccupied() != live.size())
+            fail(when + ": " + lot.getOccupied() + " parked, expected " + live.size());
+        for (Map.Entry<String, String> e : live.entrySet())
+        {
+            Ticket t = lot.findByPlate(e.getValue());
+            if (t == null || !t.getId().equals(e.getKey()))
+            {
+                fail(when + ": " + e.getValue() + " is on " + (t == null ? "no ticket" : t.getId())
+                        + ", expected " + e.getKey());
+                continue;
+            }
+            long drift = Math.abs(lot.entryMillis(t) - entered.get(e.getKey()));
+            if (drift > SLACK_MILLIS)
+                fail(when + ": " + e.getValue() + " entered " + drift + " ms off");
+        }
+    }
+
+    // reads the files as they are, without taking them over
+    private static void onDisk(String when, Path dir, Map<String, String> live) throws IOException
+    {
+        Map<Long, String> slots = new HashMap<>();
+        ParkingJournal.read(dir, (floorIdx, slotIdx, v, time) -> {
+            long key = (long) floorIdx << 32 | slotIdx;
+            if (v == null)
+                slots.remove(key);
+            else
+                slots.put(key, v.getPlate());
+        });
+        Map<String, String> found = new HashMap<>();
+        for (Map.Entry<Long, String> e : slots.entrySet())
+            found.put("NITHYA_" + ((e.getKey() >>> 32) + 1) + "_" + ((e.getKey() & 0xFFFFFFFFL) + 1), e.getValue());
+        if (!found.equals(live))
+            fail(when + ": the files hold " + found.size() + " parked, expected " + live.size());
+    }
+
+    private static void fail(String message)
+    {
+        if (failures < 10)
+            System.out.println("FAILED: " + message);
+        failures++;
+    }
+
+    private static void delete(Path dir) throws IOException
+    {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir))
+        {
+            for (Path p : files)
+                Files.delete(p);
+        }
+        Files.delete(dir);
+    }
+}
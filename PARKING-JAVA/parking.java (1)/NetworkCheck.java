@@ -0,0 +1,114 @@
+import java.util.*;
+
+// Checks that ParkingNetwork.parkAll() routes a batch nearest lot first and
+// moves on only what a lot had no room for: a full lot passes its cars on, a
+// plate turned away for being parked already is not offered again, and what
+// no lot can take comes back marked isNoSpace(). Single lots mark a full lot
+// the same way, on and off the heap.
+// Run: java NetworkCheck
+public class NetworkCheck
+{
+    private static int failures;
+
+    public static void main(String[] args)
+    {
+        overflow();
+        lots();
+        if (failures > 0)
+        {
+            System.out.println("FAILED: " + failures + " check(s).");
+            System.exit(1);
+        }
+        System.out.println("OK: batches overflow to the next lot and only for want of space.");
+    }
+
+    private static void overflow()
+    {
+        ParkingNetwork net = new ParkingNetwork();
+        ParkingLot near = new ParkingLot("A", 1, 4);
+        ParkingLot middle = new ParkingLot("B", 1, 10);
+        ParkingLot far = new ParkingLot("C", 2, 10);
+        net.addLot(far, 9, 0);
+        net.addLot(near, 0, 0);
+        net.addLot(middle, 4, 0);
+        net.addGate("g", 0, 0);
+
+        int inNear = near.getAvailable(VehicleType.CAR);
+        int inMiddle = middle.getAvailable(VehicleType.CAR);
+        int cars = net.getAvailable(VehicleType.CAR);
+        List<Vehicle> batch = new ArrayList<>();
+        for (int i = 0; i < cars + 3; i++)
+            batch.add(new Vehicle("C" + i, "", VehicleType.CAR));
+        // the same car twice: turned away, and not tried at the next lot
+        batch.add(new Vehicle("c 0", "", VehicleType.CAR));
+
+        List<BatchResult<Ticket>> results = net.parkAll(batch);
+        for (int k = 0; k < cars + 3; k++)
+        {
+            BatchResult<Ticket> r = results.get(k);
+            String want = k < inNear ? "A_" : k < inNear + inMiddle ? "B_" : k < cars ? "C_" : null;
+            if (want == null)
+            {
+                if (r.isOk() || !r.isNoSpace())
+                    fail("car " + k + " of " + cars + " places: " + describe(r) + ", expected no space");
+            }
+            else if (!r.isOk() || !r.getValue().getId().startsWith(want) || r.isNoSpace())
+            {
+                fail("car " + k + ": " + describe(r) + ", expected a ticket at " + want);
+            }
+        }
+        BatchResult<Ticket> twice = results.get(cars + 3);
+        if (twice.isOk() || twice.isNoSpace() || !twice.getError().equals("Vehicle is already parked."))
+            fail("the same car twice in a batch: " + describe(twice));
+        if (net.getAvailable(VehicleType.CAR) != 0)
+            fail(net.getAvailable(VehicleType.CAR) + " car slots left free");
+
+        // one exit at the far lot makes room there, and only there
+        Ticket out = results.get(cars - 1).getValue();
+        if (out == null)
+            return;
+        net.exit(out.getId());
+        List<BatchResult<Ticket>> again = net.parkAll(Arrays.asList(
+                new Vehicle("D1", "", VehicleType.CAR), new Vehicle("D2", "", VehicleType.CAR)));
+        if (!again.get(0).isOk() || !again.get(0).getValue().getId().equals(out.getId()))
+            fail("car after an exit: " + describe(again.get(0)) + ", expected " + out.getId());
+        if (!again.get(1).isNoSpace())
+            fail("car with the network full again: " + describe(again.get(1)));
+    }
+
+    private static void lots()
+    {
+        ParkingLot lot = new ParkingLot("L", 1, 4);
+        OffHeapParkingLot offHeap = new OffHeapParkingLot("O", 1, 4);
+        for (Parkable p : new Parkable[] {lot, offHeap})
+        {
+            String name = p == lot ? "ParkingLot" : "OffHeapParkingLot";
+            int bikes = p == lot ? lot.getAvailable(VehicleType.BIKE) : offHeap.getAvailable(VehicleType.BIKE);
+            List<Vehicle> batch = new ArrayList<>();
+            for (int i = 0; i <= bikes; i++)
+                batch.add(new Vehicle("B" + i, "", VehicleType.BIKE));
+            List<BatchResult<Ticket>> results = p.parkAll(batch);
+            for (int k = 0; k < bikes; k++)
+                if (!results.get(k).isOk() || results.get(k).isNoSpace())
+                    fail(name + " bike " + k + ": " + describe(results.get(k)));
+            BatchResult<Ticket> last = results.get(bikes);
+            if (last.isOk() || !last.isNoSpace() || !last.getError().equals("No slot available."))
+                fail(name + " bike with the lot full: " + describe(last));
+        }
+        BatchResult<Ticket> parked = lot.parkAll(Arrays.asList(new Vehicle("B0", "", VehicleType.CAR))).get(0);
+        if (parked.isOk() || parked.isNoSpace())
+            fail("ParkingLot plate already parked: " + describe(parked));
+    }
+
+    private static String describe(BatchResult<Ticket> r)
+    {
+        return r.isOk() ? r.getValue().getId() : r.getError() + (r.isNoSpace() ? " (no space)" : "");
+    }
+
+    private static void fail(String message)
+    {
+        if (failures < 10)
+            System.out.println("FAILED: " + message);
+        failures++;
+    }
+}
@@ -0,0 +1,316 @@
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.TimeZone;
+import java.util.concurrent.locks.LockSupport;
+
+// Occupancy, turnover and revenue over time, for the admin's reports; the
+// lot itself only knows how full it is right now.
+//
+// A background thread samples the lot's running counters every few seconds
+// and adds each sample, with the arrivals, departures and revenue since the
+// one before, to three rollups: by the minute for the last day, by the hour
+// for the last 31 days and by the day for the last 366. Each rollup is a ring
+// of fixed-size buckets reused as time moves on, so memory does not grow with
+// traffic or uptime, and a report over the last N buckets reads N of them.
+//
+// Buckets follow the local clock, so a day runs from midnight to midnight.
+// The peak is the highest sample, so a burst shorter than the sampling
+// interval can slip between samples.
+class OccupancyStats implements Closeable
+{
+    private static final TimeZone ZONE = TimeZone.getDefault();
+    private static final long MINUTE = 60_000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+
+    private final ParkingLot lot;
+    private final ParkingClock clock;
+    private final OccupancyRollup minutes = new OccupancyRollup(MINUTE, 24 * 60);
+    private final OccupancyRollup hours = new OccupancyRollup(HOUR, 31 * 24);
+    private final OccupancyRollup days = new OccupancyRollup(DAY, 366);
+    // the lot's counters as of the previous sample
+    private long lastArrivals;
+    private long lastDepartures;
+    private long lastRevenuePaise;
+
+    private Thread sampler;
+    private long intervalNanos;
+    private volatile boolean running;
+
+    // Sampled only when sample() is called, as a simulation on a ManualClock
+    // does. Vehicles already parked, or restored from the journal, are not
+    // counted as arrivals.
+    public OccupancyStats(ParkingLot lot)
+    {
+        this.lot = lot;
+        this.clock = lot.getClock();
+        lastArrivals = lot.getArrivals();
+        lastDepartures = lot.getDepartures();
+        lastRevenuePaise = lot.getRevenuePaise();
+    }
+
+    // Sampled by a background thread every sampleIntervalMillis.
+    public OccupancyStats(ParkingLot lot, long sampleIntervalMillis)
+    {
+        this(lot);
+        intervalNanos = sampleIntervalMillis * 1_000_000L;
+        running = true;
+        sampler = new Thread(this::sampleLoop, "occupancy-stats");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    // Reads the lot's counters once and adds them to the bucket for now at
+    // every resolution. Costs the same however busy the lot is.
+    public synchronized void sample()
+    {
+        long now = clock.currentTimeMillis();
+        long local = now + ZONE.getOffset(now);
+        int occupied = lot.getOccupied();
+        long arrivals = lot.getArrivals();
+        long departures = lot.getDepartures();
+        long revenuePaise = lot.getRevenuePaise();
+
+        long arrived = arrivals - lastArrivals;
+        long departed = departures - lastDepartures;
+        long paise = revenuePaise - lastRevenuePaise;
+        minutes.add(local, occupied, arrived, departed, paise);
+        hours.add(local, occupied, arrived, departed, paise);
+        days.add(local, occupied, arrived, departed, paise);
+        lastArrivals = arrivals;
+        lastDepartures = departures;
+        lastRevenuePaise = revenuePaise;
+    }
+
+    // The last n minutes, this one included; at most a day.
+    public synchronized OccupancyReport lastMinutes(int n)
+    {
+        return report(minutes, n);
+    }
+
+    // The last n hours, this one included; at most 31 days.
+    public synchronized OccupancyReport lastHours(int n)
+    {
+        return report(hours, n);
+    }
+
+    // The last n days, today included; at most 366.
+    public synchronized OccupancyReport lastDays(int n)
+    {
+        return report(days, n);
+    }
+
+    // Samples now, so the report is current, and prints the last hour, day
+    // and week.
+    public void printReport()
+    {
+        sample();
+        printLine("Last hour", lastMinutes(60));
+        printLine("Last 24 hours", lastHours(24));
+        printLine("Last 7 days", lastDays(7));
+    }
+
+    // Stops the sampling thread, if there is one.
+    @Override
+    public void close()
+    {
+        if (sampler == null)
+            return;
+        running = false;
+        LockSupport.unpark(sampler);
+        try {
+            sampler.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private OccupancyReport report(OccupancyRollup rollup, int n)
+    {
+        long now = clock.currentTimeMillis();
+        return rollup.report(now, now + ZONE.getOffset(now), n, lot.getCapacity());
+    }
+
+    private static void printLine(String label, OccupancyReport r)
+    {
+        System.out.printf("%s: %.1f of %d slots used on average (%.0f%%), peak %d, %d in, %d out, Rs. %s%n",
+                label, r.getAverageOccupied(), r.getCapacity(), 100 * r.getUtilisation(), r.getPeakOccupied(),
+                r.getArrivals(), r.getDepartures(), r.getRevenue());
+    }
+
+    private void sampleLoop()
+    {
+        while (running)
+        {
+            LockSupport.parkNanos(this, intervalNanos);
+            if (running)
+                sample();
+        }
+    }
+}
+
+// One resolution of OccupancyStats: a ring of buckets of the same length,
+// kept as parallel arrays. Each bucket is tagged with the bucket number it
+// holds, counted from the epoch in local time, so one left over from an
+// earlier lap of the ring is cleared when reused and skipped when read.
+// Caller synchronizes.
+class OccupancyRollup
+{
+    private final long widthMillis;
+    private final long[] bucket;
+    private final int[] samples;
+    private final long[] occupiedSum;
+    private final int[] peak;
+    private final long[] arrivals;
+    private final long[] departures;
+    private final long[] revenuePaise;
+
+    public OccupancyRollup(long widthMillis, int buckets)
+    {
+        this.widthMillis = widthMillis;
+        this.bucket = new long[buckets];
+        this.samples = new int[buckets];
+        this.occupiedSum = new long[buckets];
+        this.peak = new int[buckets];
+        this.arrivals = new long[buckets];
+        this.departures = new long[buckets];
+        this.revenuePaise = new long[buckets];
+        Arrays.fill(bucket, Long.MIN_VALUE);
+    }
+
+    public void add(long localMillis, int occupied, long arrived, long departed, long paise)
+    {
+        long b = Math.floorDiv(localMillis, widthMillis);
+        int i = (int) Math.floorMod(b, (long) bucket.length);
+        if (bucket[i] != b)
+        {
+            bucket[i] = b;
+            samples[i] = 0;
+            occupiedSum[i] = 0;
+            peak[i] = 0;
+            arrivals[i] = 0;
+            departures[i] = 0;
+            revenuePaise[i] = 0;
+        }
+        samples[i]++;
+        occupiedSum[i] += occupied;
+        peak[i] = Math.max(peak[i], occupied);
+        arrivals[i] += arrived;
+        departures[i] += departed;
+        revenuePaise[i] += paise;
+    }
+
+    // Totals of the last n buckets up to the one holding localMillis, n
+    // capped at the size of the ring.
+    public OccupancyReport report(long nowMillis, long localMillis, int n, int capacity)
+    {
+        n = Math.max(1, Math.min(n, bucket.length));
+        long last = Math.floorDiv(localMillis, widthMillis);
+        long sampleCount = 0;
+        long sum = 0;
+        int top = 0;
+        long in = 0;
+        long out = 0;
+        long paise = 0;
+        for (long b = last - n + 1; b <= last; b++)
+        {
+            int i = (int) Math.floorMod(b, (long) bucket.length);
+            if (bucket[i] != b)
+                continue;
+            sampleCount += samples[i];
+            sum += occupiedSum[i];
+            top = Math.max(top, peak[i]);
+            in += arrivals[i];
+            out += departures[i];
+            paise += revenuePaise[i];
+        }
+        long startMillis = nowMillis - (localMillis - (last - n + 1) * widthMillis);
+        return new OccupancyReport(startMillis, nowMillis, capacity, sampleCount, sum, top, in, out, paise);
+    }
+}
+
+// Occupancy, turnover and revenue over a span of time, from OccupancyStats.
+class OccupancyReport
+{
+    private long startMillis;
+    private long endMillis;
+    private int capacity;
+    private long samples;
+    private long occupiedSum;
+    private int peakOccupied;
+    private long arrivals;
+    private long departures;
+    private long revenuePaise;
+
+    public OccupancyReport(long startMillis, long endMillis, int capacity, long samples, long occupiedSum,
+                           int peakOccupied, long arrivals, long departures, long revenuePaise)
+    {
+        this.startMillis = startMillis;
+        this.endMillis = endMillis;
+        this.capacity = capacity;
+        this.samples = samples;
+        this.occupiedSum = occupiedSum;
+        this.peakOccupied = peakOccupied;
+        this.arrivals = arrivals;
+        this.departures = departures;
+        this.revenuePaise = revenuePaise;
+    }
+
+    public long getStartMillis()
+    {
+        return startMillis;
+    }
+
+    public long getEndMillis()
+    {
+        return endMillis;
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    // mean of the samples taken in the span; 0 when there were none
+    public double getAverageOccupied()
+    {
+        return samples == 0 ? 0 : (double) occupiedSum / samples;
+    }
+
+    // average share of the lot's slots in use, from 0 to 1
+    public double getUtilisation()
+    {
+        return capacity == 0 ? 0 : getAverageOccupied() / capacity;
+    }
+
+    public int getPeakOccupied()
+    {
+        return peakOccupied;
+    }
+
+    public long getArrivals()
+    {
+        return arrivals;
+    }
+
+    public long getDepartures()
+    {
+        return departures;
+    }
+
+    // vehicles that left per slot, the usual measure of how hard a lot works
+    public double getTurnover()
+    {
+        return capacity == 0 ? 0 : (double) departures / capacity;
+    }
+
+    public long getRevenuePaise()
+    {
+        return revenuePaise;
+    }
+
+    public double getRevenue()
+    {
+        return revenuePaise / 100.0;
+    }
+}
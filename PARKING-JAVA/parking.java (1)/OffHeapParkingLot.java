@@ -0,0 +1,462 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+// A lot for very large facilities that keeps its slots in one direct
+// ByteBuffer instead of on the heap, so hundreds of thousands of bays cost
+// the garbage collector nothing to trace. Tickets, vehicles and payments are
+// only built at the API boundary, when a call returns one; the ticket id
+// already says which slot it is for, so nothing needs to be kept to find it.
+//
+// Each floor is one region of the buffer: a free bitmap per vehicle type,
+// 64 slots per word as in Floor, then a fixed-size record per slot:
+//   0   type ordinal
+//   1   0 while the slot is free, else the plate length in bytes plus one
+//   2   plate, UTF-8, up to PLATE_BYTES
+//   24  ParkingClock.nanoTime() at entry
+// What stays on the heap is per floor: its lock, free counts and a search
+// hint. The buffer is only read and written at absolute offsets, under the
+// lock of the floor the offset belongs to.
+//
+// This is the slot engine alone. Reservations, events, the journal, the
+// plate index and allocation strategies need per-vehicle heap state and are
+// left to ParkingLot; vehicles read back from a record have no color.
+class OffHeapParkingLot implements Parkable
+{
+    static final int PLATE_BYTES = 22;
+    static final int RECORD_BYTES = 32;
+    private static final int TYPE = 0;
+    private static final int STATE = 1;
+    private static final int PLATE = 2;
+    private static final int ENTRY_NANOS = 24;
+
+    private static final VehicleType[] TYPES = VehicleType.values();
+
+    private final String name;
+    private final int floorCount;
+    private final int slotsPerFloor;
+    private final int words;
+    private final int floorBytes;
+    private final ByteBuffer slots;
+    private final ParkingClock clock;
+    private AuditSink sink = new PrintStreamSink(System.out);
+    private Tariff tariff = Tariff.standard();
+
+    private final ReentrantLock[] locks;
+    // free slots per floor and type, at floor * TYPES.length + type
+    private final AtomicIntegerArray freeByFloor;
+    private final AtomicIntegerArray freeByType = new AtomicIntegerArray(TYPES.length);
+    private final int[] capacityByType = new int[TYPES.length];
+    // per floor and type, no free slot lies in a word below this one;
+    // guarded by the floor lock
+    private final int[] firstFreeWord;
+    // floors with a free slot per type, as in ParkingLot
+    private final AtomicLongArray[] floorsWithSpace;
+
+    public OffHeapParkingLot(String name, int floorCount, int slotsPerFloor)
+    {
+        this(name, floorCount, slotsPerFloor, ParkingClock.SYSTEM);
+    }
+
+    public OffHeapParkingLot(String name, int floorCount, int slotsPerFloor, ParkingClock clock)
+    {
+        this.name = name;
+        this.floorCount = floorCount;
+        this.slotsPerFloor = slotsPerFloor;
+        this.clock = clock;
+        this.words = (slotsPerFloor + 63) / 64;
+        this.floorBytes = TYPES.length * words * 8 + slotsPerFloor * RECORD_BYTES;
+        long total = (long) floorBytes * floorCount;
+        if (total > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Lot too large for one buffer: " + total + " bytes");
+        this.slots = ByteBuffer.allocateDirect((int) total);
+
+        locks = new ReentrantLock[floorCount];
+        freeByFloor = new AtomicIntegerArray(floorCount * TYPES.length);
+        firstFreeWord = new int[floorCount * TYPES.length];
+        floorsWithSpace = new AtomicLongArray[TYPES.length];
+        for (int t = 0; t < TYPES.length; t++)
+            floorsWithSpace[t] = new AtomicLongArray((floorCount + 63) / 64);
+
+        for (int f = 0; f < floorCount; f++)
+        {
+            locks[f] = new ReentrantLock();
+            // the same layout as Floor: a truck bay, two bike bays, then cars
+            for (int s = 0; s < slotsPerFloor; s++)
+            {
+                VehicleType type = s == 0 ? VehicleType.TRUCK : s <= 2 ? VehicleType.BIKE : VehicleType.CAR;
+                slots.put(record(f, s) + TYPE, (byte) type.ordinal());
+                setFree(f, type.ordinal(), s, true);
+                freeByFloor.incrementAndGet(f * TYPES.length + type.ordinal());
+                freeByType.incrementAndGet(type.ordinal());
+                capacityByType[type.ordinal()]++;
+            }
+            for (int t = 0; t < TYPES.length; t++)
+                if (freeByFloor.get(f * TYPES.length + t) > 0)
+                    markSpace(floorsWithSpace[t], f, true);
+        }
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    // Set before the lot is shared between threads.
+    public void setAuditSink(AuditSink sink)
+    {
+        this.sink = sink;
+    }
+
+    // Set before the lot is shared between threads.
+    public void setTariff(Tariff tariff)
+    {
+        this.tariff = tariff;
+    }
+
+    // bytes of slot state held off the heap
+    public long offHeapBytes()
+    {
+        return slots.capacity();
+    }
+
+    @Override
+    public void park(Vehicle v)
+    {
+        Ticket ticket;
+        try {
+            ticket = tryPark(v);
+        } catch (IllegalArgumentException e) {
+            sink.message(e.getMessage());
+            return;
+        }
+        if (ticket == null)
+            sink.message("No slot available.");
+        else
+            sink.parked(ticket);
+    }
+
+    // Claims the lowest free slot on the lowest floor with space, or returns
+    // null when the lot is full for this vehicle type. Throws
+    // IllegalArgumentException for a plate longer than a record holds.
+    public Ticket tryPark(Vehicle v)
+    {
+        byte[] plate = plateBytes(v);
+        long entryNanos = clock.nanoTime();
+        int t = v.getType().ordinal();
+        AtomicLongArray candidates = floorsWithSpace[t];
+        for (int f = nextFloorWithSpace(candidates, 0); f >= 0; f = nextFloorWithSpace(candidates, f + 1))
+        {
+            locks[f].lock();
+            try {
+                int s = findSlot(f, t);
+                if (s < 0)
+                {
+                    // another gate took the last slot after we read the bitmap
+                    markSpace(candidates, f, false);
+                    continue;
+                }
+                occupy(f, s, t, plate, entryNanos);
+                return new Ticket(ticketId(f, s), v, f, s, entryNanos);
+            } finally {
+                locks[f].unlock();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void remove(String id)
+    {
+        Payment p;
+        try {
+            p = exit(id);
+        } catch (IllegalArgumentException e) {
+            sink.message(e.getMessage());
+            return;
+        }
+        sink.receipt(p);
+    }
+
+    // Checks the ticket out and bills the stay measured on the lot's clock.
+    public Payment exit(String id)
+    {
+        Ticket t = checkout(id);
+        return new Payment(t, clock.nanoTime(), clock.currentTimeMillis(), tariff);
+    }
+
+    // Frees the slot the ticket id names and returns a ticket rebuilt from
+    // its record. Throws IllegalArgumentException with the operator message
+    // when the id is malformed or the slot is free.
+    public Ticket checkout(String id)
+    {
+        int at = slotOf(id);
+        int f = at / slotsPerFloor;
+        int s = at % slotsPerFloor;
+        locks[f].lock();
+        try {
+            Ticket t = ticketAt(f, s);
+            if (t == null)
+                throw new IllegalArgumentException("Ticket not found.");
+            vacate(f, s, t.getVehicle().getType().ordinal());
+            return t;
+        } finally {
+            locks[f].unlock();
+        }
+    }
+
+    // One pass over the floors from the bottom, taking each floor lock once.
+    @Override
+    public List<BatchResult<Ticket>> parkAll(List<Vehicle> vehicles)
+    {
+        List<BatchResult<Ticket>> results = new ArrayList<>(Collections.nCopies(vehicles.size(), null));
+        byte[][] plates = new byte[vehicles.size()][];
+        EnumMap<VehicleType, ArrayDeque<Integer>> waiting = new EnumMap<>(VehicleType.class);
+        for (int k = 0; k < vehicles.size(); k++)
+        {
+            try {
+                plates[k] = plateBytes(vehicles.get(k));
+                waiting.computeIfAbsent(vehicles.get(k).getType(), t -> new ArrayDeque<>()).add(k);
+            } catch (IllegalArgumentException e) {
+                results.set(k, BatchResult.failed(e.getMessage()));
+            }
+        }
+
+        long entryNanos = clock.nanoTime();
+        for (int f = 0; f < floorCount && !waiting.isEmpty(); f++)
+        {
+            boolean room = false;
+            for (VehicleType type : waiting.keySet())
+                room |= freeByFloor.get(f * TYPES.length + type.ordinal()) > 0;
+            if (!room)
+                continue;
+
+            locks[f].lock();
+            try {
+                for (Map.Entry<VehicleType, ArrayDeque<Integer>> e : waiting.entrySet())
+                {
+                    int t = e.getKey().ordinal();
+                    ArrayDeque<Integer> queue = e.getValue();
+                    int s;
+                    while (!queue.isEmpty() && (s = findSlot(f, t)) >= 0)
+                    {
+                        int k = queue.poll();
+                        occupy(f, s, t, plates[k], entryNanos);
+                        results.set(k, BatchResult.ok(new Ticket(ticketId(f, s), vehicles.get(k), f, s, entryNanos)));
+                    }
+                }
+            } finally {
+                locks[f].unlock();
+            }
+            waiting.values().removeIf(ArrayDeque::isEmpty);
+        }
+
+        for (ArrayDeque<Integer> queue : waiting.values())
+            for (int k : queue)
+                results.set(k, BatchResult.noSpace());
+        return results;
+    }
+
+    @Override
+    public List<BatchResult<Payment>> removeAll(List<ExitRequest> exits)
+    {
+        List<BatchResult<Payment>> results = new ArrayList<>(exits.size());
+        long exitNanos = clock.nanoTime();
+        long exitMillis = clock.currentTimeMillis();
+        for (ExitRequest e : exits)
+        {
+            try {
+                results.add(BatchResult.ok(new Payment(checkout(e.getTicketId()), exitNanos, exitMillis, tariff)));
+            } catch (IllegalArgumentException ex) {
+                results.add(BatchResult.failed(ex.getMessage()));
+            }
+        }
+        return results;
+    }
+
+    // O(1) count of free slots for one vehicle type across the whole lot
+    public int getAvailable(VehicleType vehicleType)
+    {
+        return freeByType.get(vehicleType.ordinal());
+    }
+
+    public Availability getAvailability()
+    {
+        int[] available = new int[floorCount];
+        int[] occupied = new int[floorCount];
+        for (int f = 0; f < floorCount; f++)
+        {
+            for (int t = 0; t < TYPES.length; t++)
+                available[f] += freeByFloor.get(f * TYPES.length + t);
+            occupied[f] = slotsPerFloor - available[f];
+        }
+        int[] availableByType = new int[TYPES.length];
+        int[] occupiedByType = new int[TYPES.length];
+        for (int t = 0; t < TYPES.length; t++)
+        {
+            availableByType[t] = freeByType.get(t);
+            occupiedByType[t] = capacityByType[t] - availableByType[t];
+        }
+        return new Availability(available, occupied, availableByType, occupiedByType);
+    }
+
+    public void viewAvailability()
+    {
+        sink.availability(getAvailability());
+    }
+
+    // The ticket of the vehicle in the slot, built from its record, or null
+    // when the slot is free. Caller holds the floor lock.
+    private Ticket ticketAt(int f, int s)
+    {
+        int r = record(f, s);
+        int state = slots.get(r + STATE);
+        if (state == 0)
+            return null;
+        byte[] plate = new byte[state - 1];
+        for (int i = 0; i < plate.length; i++)
+            plate[i] = slots.get(r + PLATE + i);
+        Vehicle v = new Vehicle(new String(plate, StandardCharsets.UTF_8), "", TYPES[slots.get(r + TYPE)]);
+        return new Ticket(ticketId(f, s), v, f, s, slots.getLong(r + ENTRY_NANOS));
+    }
+
+    // lowest free slot of the type on the floor, or -1; caller holds the lock
+    private int findSlot(int f, int t)
+    {
+        int hint = f * TYPES.length + t;
+        int base = bitmap(f, t);
+        for (int w = firstFreeWord[hint]; w < words; w++)
+        {
+            long word = slots.getLong(base + w * 8);
+            if (word != 0)
+            {
+                firstFreeWord[hint] = w;
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+        }
+        firstFreeWord[hint] = words;
+        return -1;
+    }
+
+    private void occupy(int f, int s, int t, byte[] plate, long entryNanos)
+    {
+        int r = record(f, s);
+        for (int i = 0; i < plate.length; i++)
+            slots.put(r + PLATE + i, plate[i]);
+        slots.put(r + STATE, (byte) (plate.length + 1));
+        slots.putLong(r + ENTRY_NANOS, entryNanos);
+        setFree(f, t, s, false);
+        freeByType.decrementAndGet(t);
+        if (freeByFloor.decrementAndGet(f * TYPES.length + t) == 0)
+            markSpace(floorsWithSpace[t], f, false);
+    }
+
+    private void vacate(int f, int s, int t)
+    {
+        slots.put(record(f, s) + STATE, (byte) 0);
+        setFree(f, t, s, true);
+        int hint = f * TYPES.length + t;
+        firstFreeWord[hint] = Math.min(firstFreeWord[hint], s >>> 6);
+        freeByType.incrementAndGet(t);
+        freeByFloor.incrementAndGet(hint);
+        markSpace(floorsWithSpace[t], f, true);
+    }
+
+    private void setFree(int f, int t, int s, boolean free)
+    {
+        int at = bitmap(f, t) + (s >>> 6) * 8;
+        long word = slots.getLong(at);
+        slots.putLong(at, free ? word | 1L << s : word & ~(1L << s));
+    }
+
+    private int bitmap(int f, int t)
+    {
+        return f * floorBytes + t * words * 8;
+    }
+
+    private int record(int f, int s)
+    {
+        return f * floorBytes + TYPES.length * words * 8 + s * RECORD_BYTES;
+    }
+
+    private String ticketId(int f, int s)
+    {
+        return name + "_" + (f + 1) + "_" + (s + 1);
+    }
+
+    private static byte[] plateBytes(Vehicle v)
+    {
+        byte[] plate = v.getPlate() == null ? new byte[0] : v.getPlate().getBytes(StandardCharsets.UTF_8);
+        if (plate.length > PLATE_BYTES)
+            throw new IllegalArgumentException("Vehicle number is too long.");
+        return plate;
+    }
+
+    // floor * slotsPerFloor + slot for a well-formed id of this lot; throws
+    // IllegalArgumentException with ParkingLot's messages otherwise
+    private int slotOf(String id)
+    {
+        int p = name.length();
+        if (!id.startsWith(name) || p >= id.length() || id.charAt(p) != '_')
+            throw new IllegalArgumentException("Invalid Ticket ID.");
+        int floorEnd = skipDigits(id, p + 1);
+        if (floorEnd == p + 1 || floorEnd >= id.length() || id.charAt(floorEnd) != '_')
+            throw new IllegalArgumentException("Invalid Ticket ID.");
+        int slotEnd = skipDigits(id, floorEnd + 1);
+        if (slotEnd == floorEnd + 1 || slotEnd != id.length())
+            throw new IllegalArgumentException("Invalid Ticket ID.");
+
+        long floorNo = parseDigits(id, p + 1, floorEnd);
+        if (floorNo < 1 || floorNo > floorCount)
+            throw new IllegalArgumentException("Invalid floor.");
+        long slotNo = parseDigits(id, floorEnd + 1, slotEnd);
+        if (slotNo < 1 || slotNo > slotsPerFloor)
+            throw new IllegalArgumentException("Invalid slot.");
+        return (int) (floorNo - 1) * slotsPerFloor + (int) (slotNo - 1);
+    }
+
+    private static int skipDigits(String s, int from)
+    {
+        while (from < s.length() && s.charAt(from) >= '0' && s.charAt(from) <= '9')
+            from++;
+        return from;
+    }
+
+    // parses [from, to) as a non-negative number, saturating at Long.MAX_VALUE
+    private static long parseDigits(String s, int from, int to)
+    {
+        long n = 0;
+        for (int i = from; i < to; i++)
+        {
+            n = n * 10 + (s.charAt(i) - '0');
+            if (n > Integer.MAX_VALUE)
+                return Long.MAX_VALUE;
+        }
+        return n;
+    }
+
+    private static int nextFloorWithSpace(AtomicLongArray mask, int from)
+    {
+        for (int w = from >>> 6; w < mask.length(); w++)
+        {
+            long word = mask.get(w);
+            if (w == from >>> 6)
+                word &= -1L << (from & 63);
+            if (word != 0)
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+        }
+        return -1;
+    }
+
+    private static void markSpace(AtomicLongArray mask, int floorIdx, boolean hasSpace)
+    {
+        long bit = 1L << (floorIdx & 63);
+        if (hasSpace)
+            mask.getAndUpdate(floorIdx >>> 6, w -> w | bit);
+        else
+            mask.getAndUpdate(floorIdx >>> 6, w -> w & ~bit);
+    }
+}
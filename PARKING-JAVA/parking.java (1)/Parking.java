@@ -1,4 +1,15 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 enum Role
  {
@@ -7,20 +18,102 @@ enum Role
     USER
 }
 
+enum VehicleType
+{
+    CAR,
+    BIKE,
+    TRUCK
+}
+
 interface Parkable 
 {
     void park(Vehicle vehicle);
-    void remove(String ticketId, int hours);
+    void remove(String ticketId);
+
+    // Batch forms for gate controllers that buffer traffic. They print
+    // nothing and return one result per input, in input order.
+    List<BatchResult<Ticket>> parkAll(List<Vehicle> vehicles);
+    List<BatchResult<Payment>> removeAll(List<ExitRequest> exits);
+}
+
+class ExitRequest
+{
+    private String ticketId;
+
+    public ExitRequest(String ticketId)
+    {
+        this.ticketId = ticketId;
+    }
+
+    public String getTicketId()
+    {
+        return ticketId;
+    }
+}
+
+// Outcome of one item in a batch: either a value or the message the
+// single-item call would have printed. A park that failed only for want of a
+// free slot says so through isNoSpace(), so callers can try elsewhere
+// without reading the message.
+class BatchResult<T>
+{
+    private T value;
+    private String error;
+    private boolean noSpace;
+
+    private BatchResult(T value, String error, boolean noSpace)
+    {
+        this.value = value;
+        this.error = error;
+        this.noSpace = noSpace;
+    }
+
+    public static <T> BatchResult<T> ok(T value)
+    {
+        return new BatchResult<>(value, null, false);
+    }
+
+    public static <T> BatchResult<T> failed(String error)
+    {
+        return new BatchResult<>(null, error, false);
+    }
+
+    public static <T> BatchResult<T> noSpace()
+    {
+        return new BatchResult<>(null, "No slot available.", true);
+    }
+
+    public boolean isOk()
+    {
+        return error == null;
+    }
+
+    public boolean isNoSpace()
+    {
+        return noSpace;
+    }
+
+    public T getValue()
+    {
+        return value;
+    }
+
+    public String getError()
+    {
+        return error;
+    }
 }
 
 class Vehicle 
 {
     private String plate;
-    private String type;
+    private String color;
+    private VehicleType type;
 
-    public Vehicle(String plate, String color, String type) 
+    public Vehicle(String plate, String color, VehicleType type) 
     {
         this.plate = plate;
+        this.color = color;
         this.type = type;
     }
 
@@ -29,7 +122,12 @@ class Vehicle
         return plate;
     }
 
-    public String getType() 
+    public String getColor()
+    {
+        return color;
+    }
+
+    public VehicleType getType() 
     {
         return type;
     }
@@ -39,11 +137,18 @@ class Ticket
 {
     private String id;
     private Vehicle vehicle;
+    private int floorIdx;
+    private int slotIdx;
+    // ParkingClock.nanoTime() at entry
+    private long entryNanos;
 
-    public Ticket(String id, Vehicle vehicle) 
+    public Ticket(String id, Vehicle vehicle, int floorIdx, int slotIdx, long entryNanos) 
     {
         this.id = id;
         this.vehicle = vehicle;
+        this.floorIdx = floorIdx;
+        this.slotIdx = slotIdx;
+        this.entryNanos = entryNanos;
     }
 
     public String getId() 
@@ -55,132 +160,533 @@ class Ticket
     {
         return vehicle;
     }
-}
 
-class Slot 
-{
-    private int slotNo;
-    private String allowedType;
-    private boolean occupied;
-    private Vehicle vehicle;
-    private Ticket ticket;
+    public int getFloorIdx()
+    {
+        return floorIdx;
+    }
 
-    public Slot(int slotNo, String allowedType) 
+    public int getSlotIdx()
     {
-        this.slotNo = slotNo;
-        this.allowedType = allowedType;
-        this.occupied = false;
+        return slotIdx;
     }
 
-    public int getSlotNo() 
+    public long getEntryNanos()
     {
-        return slotNo;
+        return entryNanos;
     }
+}
 
-    public boolean isAvailable()
-     {
-        return !occupied;
+// A slot booked for a future window. Times are epoch milliseconds, widened
+// to whole SlotCalendar buckets.
+class Reservation
+{
+    private String id;
+    private VehicleType type;
+    private int floorIdx;
+    private int slotIdx;
+    private long startMillis;
+    private long endMillis;
+
+    public Reservation(String id, VehicleType type, int floorIdx, int slotIdx, long startMillis, long endMillis)
+    {
+        this.id = id;
+        this.type = type;
+        this.floorIdx = floorIdx;
+        this.slotIdx = slotIdx;
+        this.startMillis = startMillis;
+        this.endMillis = endMillis;
     }
 
-    public boolean fits(String type) 
+    public String getId()
     {
-        return allowedType.equals(type) && isAvailable();
+        return id;
     }
 
-    public void park(Vehicle v, Ticket t) 
+    public VehicleType getType()
     {
-        this.vehicle = v;
-        this.ticket = t;
-        this.occupied = true;
+        return type;
     }
 
-    public void vacate() 
+    public int getFloorIdx()
     {
-        this.vehicle = null;
-        this.ticket = null;
-        this.occupied = false;
+        return floorIdx;
     }
 
-    public Ticket getTicket() 
+    public int getSlotIdx()
     {
-        return ticket;
+        return slotIdx;
     }
 
-    public boolean isOccupied() 
+    public long getStartMillis()
     {
-        return occupied;
+        return startMillis;
+    }
+
+    public long getEndMillis()
+    {
+        return endMillis;
     }
 }
 
+// Slots are stored column-wise instead of as one object per bay: a byte per
+// slot for the vehicle type it takes, the ticket of the parked vehicle (null
+// when free), and a bitmap of free slots per vehicle type. Slot indexes are
+// zero-based; the slot number on a ticket is index + 1.
+//
+// Reservations live in a SlotCalendar per floor. findSlot() passes over
+// free slots that are reserved within the next SlotCalendar.HOLD_MILLIS, and
+// only reads the clock while the floor has reservations at all. The held
+// slots are cached as one more bitmap, rebuilt when the 15-minute bucket
+// moves on or a booking changes, so skipping them costs one AND per word.
+//
+// A floor is not thread-safe by itself; callers hold getLock() while they
+// look up, occupy, vacate or reserve its slots. The free counters can be read
+// at any time without the lock.
 class Floor 
 {
-    private ArrayList<Slot> slots;
+    private static final VehicleType[] TYPES = VehicleType.values();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final byte[] slotTypes;
+    private final Ticket[] tickets;
+    // free slots per type, 64 slots per word; lowest set bit is the lowest free slot
+    private final long[][] freeBits;
+    // every slot per type, laid out like freeBits
+    private final long[][] typeBits;
+    private final SlotCalendar calendar;
+    private final ParkingClock clock;
+    // slots held for walk-ins as of heldBucket, and free slots per type
+    // outside them; heldBucket is Long.MIN_VALUE when they need rebuilding
+    private long[] heldBits;
+    private int[] unheldFree;
+    private long heldBucket = Long.MIN_VALUE;
+    // per type, no free slot lies in a word below this one
+    private final int[] firstFreeWord;
+    private final int[] capacityByType;
+    private final AtomicIntegerArray freeCountByType;
+    private final AtomicInteger freeCount = new AtomicInteger();
 
-    public Floor(int totalSlots) 
+    public Floor(int totalSlots, ParkingClock clock) 
     {
-        slots = new ArrayList<>();
+        this.clock = clock;
+        slotTypes = new byte[totalSlots];
+        tickets = new Ticket[totalSlots];
+        freeBits = new long[TYPES.length][(totalSlots + 63) / 64];
+        typeBits = new long[TYPES.length][(totalSlots + 63) / 64];
+        calendar = new SlotCalendar(totalSlots);
+        firstFreeWord = new int[TYPES.length];
+        capacityByType = new int[TYPES.length];
+        freeCountByType = new AtomicIntegerArray(TYPES.length);
         for (int i = 1; i <= totalSlots; i++) 
         {
+            VehicleType type;
             if (i == 1)
-                slots.add(new Slot(i, "TRUCK"));
+                type = VehicleType.TRUCK;
             else if (i <= 3)
-                slots.add(new Slot(i, "BIKE"));
+                type = VehicleType.BIKE;
             else
-                slots.add(new Slot(i, "CAR"));
+                type = VehicleType.CAR;
+            slotTypes[i - 1] = (byte) type.ordinal();
+            freeBits[type.ordinal()][(i - 1) >>> 6] |= 1L << (i - 1);
+            typeBits[type.ordinal()][(i - 1) >>> 6] |= 1L << (i - 1);
+            capacityByType[type.ordinal()]++;
         }
+        for (int t = 0; t < TYPES.length; t++)
+            freeCountByType.set(t, capacityByType[t]);
+        freeCount.set(totalSlots);
     }
 
-    public Slot findSlot(String vehicleType) 
+    public int size()
     {
-        for (Slot slot : slots) {
-            if (slot.fits(vehicleType))
-                return slot;
+        return slotTypes.length;
+    }
+
+    public VehicleType getType(int slotIdx)
+    {
+        return TYPES[slotTypes[slotIdx]];
+    }
+
+    public Ticket getTicket(int slotIdx)
+    {
+        return tickets[slotIdx];
+    }
+
+    public boolean isOccupied(int slotIdx)
+    {
+        return tickets[slotIdx] != null;
+    }
+
+    // index of the lowest free slot for the type that is not held for a
+    // reservation, or -1
+    public int findSlot(VehicleType vehicleType) 
+    {
+        int t = vehicleType.ordinal();
+        long[] bits = freeBits[t];
+        if (!calendar.isEmpty())
+        {
+            long from = SlotCalendar.bucket(clock.currentTimeMillis());
+            if (calendar.hasReservations(from))
+                return findUnheld(t, from);
         }
-        return null;
+        for (int w = firstFreeWord[t]; w < bits.length; w++)
+        {
+            if (bits[w] != 0)
+            {
+                firstFreeWord[t] = w;
+                return (w << 6) + Long.numberOfTrailingZeros(bits[w]);
+            }
+        }
+        firstFreeWord[t] = bits.length;
+        return -1;
     }
 
-    public ArrayList<Slot> getAllSlots()
-     {
-        return slots;
+    // The free slot for the type nearest to pos, the lower one on a tie,
+    // that is not held for a reservation; -1 if there is none. Searches the
+    // bitmap outward from pos a word at a time and stops once no closer slot
+    // can remain.
+    public int findSlotNear(VehicleType vehicleType, int pos)
+    {
+        int t = vehicleType.ordinal();
+        if (freeCountByType.get(t) == 0)
+            return -1;
+        long[] held = null;
+        if (!calendar.isEmpty())
+        {
+            long from = SlotCalendar.bucket(clock.currentTimeMillis());
+            if (calendar.hasReservations(from))
+            {
+                if (heldBucket != from)
+                    refreshHeld(from);
+                if (unheldFree[t] == 0)
+                    return -1;
+                held = heldBits;
+            }
+        }
+
+        long[] bits = freeBits[t];
+        pos = Math.max(0, Math.min(pos, slotTypes.length - 1));
+        int w0 = pos >>> 6;
+        int best = -1;
+        int bestDist = Integer.MAX_VALUE;
+        for (int d = 0; w0 + d < bits.length || w0 - d >= 0; d++)
+        {
+            // every slot d words away is more than (d - 1) * 64 from pos
+            if (bestDist <= (d - 1) * 64)
+                break;
+            int up = w0 + d;
+            if (up < bits.length)
+            {
+                long m = held == null ? bits[up] : bits[up] & ~held[up];
+                if (d == 0)
+                    m &= -1L << (pos & 63);
+                if (m != 0)
+                {
+                    int slot = (up << 6) + Long.numberOfTrailingZeros(m);
+                    if (slot - pos < bestDist)
+                    {
+                        best = slot;
+                        bestDist = slot - pos;
+                    }
+                }
+            }
+            int down = w0 - d;
+            if (down >= 0)
+            {
+                long m = held == null ? bits[down] : bits[down] & ~held[down];
+                if (d == 0)
+                    m &= (1L << (pos & 63)) - 1;
+                if (m != 0)
+                {
+                    int slot = (down << 6) + 63 - Long.numberOfLeadingZeros(m);
+                    if (pos - slot <= bestDist)
+                    {
+                        best = slot;
+                        bestDist = pos - slot;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    // Same scan with held slots masked out. The firstFreeWord hint is left
+    // alone: a word whose free slots are all held still has free slots.
+    private int findUnheld(int t, long fromBucket)
+    {
+        if (heldBucket != fromBucket)
+            refreshHeld(fromBucket);
+        if (unheldFree[t] == 0)
+            return -1;
+        long[] bits = freeBits[t];
+        for (int w = firstFreeWord[t]; w < bits.length; w++)
+        {
+            long free = bits[w] & ~heldBits[w];
+            if (free != 0)
+                return (w << 6) + Long.numberOfTrailingZeros(free);
+        }
+        return -1;
+    }
+
+    private void refreshHeld(long fromBucket)
+    {
+        int words = slotTypes.length + 63 >>> 6;
+        if (heldBits == null)
+        {
+            heldBits = new long[words];
+            unheldFree = new int[TYPES.length];
+        }
+        Arrays.fill(unheldFree, 0);
+        for (int w = 0; w < words; w++)
+        {
+            heldBits[w] = calendar.reservedWord(w, fromBucket, fromBucket + SlotCalendar.HOLD_BUCKETS);
+            for (int t = 0; t < TYPES.length; t++)
+                unheldFree[t] += Long.bitCount(freeBits[t][w] & ~heldBits[w]);
+        }
+        heldBucket = fromBucket;
+    }
+
+    // Lowest slot for the type with no reservation in [fromBucket, toBucket),
+    // or -1. With mustBeFree the slot must also be free right now. A floor
+    // whose slots of the type are all booked in some bucket of the window is
+    // turned down from the bucket counts alone.
+    public int findReservable(VehicleType vehicleType, long fromBucket, long toBucket, boolean mustBeFree)
+    {
+        int t = vehicleType.ordinal();
+        int booked = calendar.maxReserved(t, fromBucket, toBucket);
+        if (booked >= capacityByType[t])
+            return -1;
+        long[] bits = mustBeFree ? freeBits[t] : typeBits[t];
+        for (int w = mustBeFree ? firstFreeWord[t] : 0; w < bits.length; w++)
+        {
+            long open = bits[w];
+            if (open != 0 && booked > 0)
+                open &= ~calendar.reservedWord(w, fromBucket, toBucket);
+            if (open != 0)
+                return (w << 6) + Long.numberOfTrailingZeros(open);
+        }
+        return -1;
+    }
+
+    public void reserve(int slotIdx, long fromBucket, long toBucket)
+    {
+        calendar.book(slotIdx, slotTypes[slotIdx], fromBucket, toBucket);
+        heldBucket = Long.MIN_VALUE;
+    }
+
+    public void unreserve(int slotIdx, long fromBucket, long toBucket)
+    {
+        calendar.release(slotIdx, slotTypes[slotIdx], fromBucket, toBucket);
+        heldBucket = Long.MIN_VALUE;
+    }
+
+    public boolean hasSpace(VehicleType vehicleType)
+    {
+        return freeCountByType.get(vehicleType.ordinal()) > 0;
+    }
+
+    public void occupy(int slotIdx, Ticket t)
+    {
+        int type = slotTypes[slotIdx];
+        tickets[slotIdx] = t;
+        freeBits[type][slotIdx >>> 6] &= ~(1L << slotIdx);
+        if (heldBucket != Long.MIN_VALUE && (heldBits[slotIdx >>> 6] & 1L << slotIdx) == 0)
+            unheldFree[type]--;
+        freeCountByType.decrementAndGet(type);
+        freeCount.decrementAndGet();
+    }
+
+    public void vacate(int slotIdx)
+    {
+        int type = slotTypes[slotIdx];
+        tickets[slotIdx] = null;
+        freeBits[type][slotIdx >>> 6] |= 1L << slotIdx;
+        if (heldBucket != Long.MIN_VALUE && (heldBits[slotIdx >>> 6] & 1L << slotIdx) == 0)
+            unheldFree[type]++;
+        firstFreeWord[type] = Math.min(firstFreeWord[type], slotIdx >>> 6);
+        freeCountByType.incrementAndGet(type);
+        freeCount.incrementAndGet();
+    }
+
+    public int getFreeCount()
+    {
+        return freeCount.get();
+    }
+
+    public int getFreeCount(VehicleType vehicleType)
+    {
+        return freeCountByType.get(vehicleType.ordinal());
+    }
+
+    public int getCapacity(VehicleType vehicleType)
+    {
+        return capacityByType[vehicleType.ordinal()];
+    }
+
+    public ReentrantLock getLock()
+    {
+        return lock;
     }
 }
 
 class Payment 
 {
+    private static final TimeZone ZONE = TimeZone.getDefault();
+
     private Ticket ticket;
     private int hours;
     private double amount;
 
-    public Payment(Ticket ticket, int hours) 
+    // Prices the stay the ticket measured, from entry to exitNanos on the
+    // lot's clock. Every started hour is billed, and at least one.
+    public Payment(Ticket ticket, long exitNanos, long exitMillis, Tariff tariff)
     {
+        long stayNanos = Math.max(0, exitNanos - ticket.getEntryNanos());
         this.ticket = ticket;
-        this.hours = hours;
-        this.amount = calculate(ticket.getVehicle().getType(), hours);
+        this.hours = (int) Math.max(1, (stayNanos + NANOS_PER_HOUR - 1) / NANOS_PER_HOUR);
+        this.amount = tariff.fee(ticket.getVehicle().getType(), hourOf(exitMillis - stayNanos / 1_000_000L), hours) / 100.0;
     }
 
-    private double calculate(String type, int h)
-     {
-        double base = 0, extra = 10;
-        switch (type) {
-            case "CAR":
-                base = 40;
-                break;
-            case "BIKE":
-                base = 20;
-                break;
-            case "TRUCK":
-                base = 60;
-                break;
-        }
-        return (h == 1) ? base : base + (h - 1) * extra;
+    private static final long NANOS_PER_HOUR = 3_600_000_000_000L;
+
+    // clock hour of the day in the default time zone, without allocating
+    static int hourOf(long millis)
+    {
+        long local = millis + ZONE.getOffset(millis);
+        return (int) Math.floorMod(local / 3_600_000L, 24L);
+    }
+
+    public Ticket getTicket()
+    {
+        return ticket;
+    }
+
+    public int getHours()
+    {
+        return hours;
+    }
+
+    public double getAmount()
+    {
+        return amount;
     }
 
     public void printReceipt() 
     {
-        System.out.println("Ticket ID: " + ticket.getId());
-        System.out.println("Vehicle Type: " + ticket.getVehicle().getType());
-        System.out.println("Hours Parked: " + hours);
-        System.out.println("Amount: Rs. " + amount);
+        new PrintStreamSink(System.out).receipt(this);
+    }
+}
+
+// A slot changing hands, as published by ParkingLot.events().
+class SlotEvent
+{
+    private String ticketId;
+    private int floorIdx;
+    private int slotIdx;
+    private VehicleType type;
+    private boolean parked;
+    private long timeMillis;
+
+    public SlotEvent(String ticketId, int floorIdx, int slotIdx, VehicleType type, boolean parked, long timeMillis)
+    {
+        this.ticketId = ticketId;
+        this.floorIdx = floorIdx;
+        this.slotIdx = slotIdx;
+        this.type = type;
+        this.parked = parked;
+        this.timeMillis = timeMillis;
+    }
+
+    public String getTicketId()
+    {
+        return ticketId;
+    }
+
+    public int getFloorIdx()
+    {
+        return floorIdx;
+    }
+
+    public int getSlotIdx()
+    {
+        return slotIdx;
+    }
+
+    public VehicleType getType()
+    {
+        return type;
+    }
+
+    // true when the slot was just taken, false when it was just freed
+    public boolean isParked()
+    {
+        return parked;
+    }
+
+    public long getTimeMillis()
+    {
+        return timeMillis;
+    }
+}
+
+// Point-in-time view of free and occupied slots, per floor and per vehicle type.
+class Availability
+{
+    private int[] availableByFloor;
+    private int[] occupiedByFloor;
+    // indexed by VehicleType ordinal
+    private int[] availableByType;
+    private int[] occupiedByType;
+
+    public Availability(int[] availableByFloor, int[] occupiedByFloor,
+                        int[] availableByType, int[] occupiedByType)
+    {
+        this.availableByFloor = availableByFloor;
+        this.occupiedByFloor = occupiedByFloor;
+        this.availableByType = availableByType;
+        this.occupiedByType = occupiedByType;
+    }
+
+    public int getFloorCount()
+    {
+        return availableByFloor.length;
+    }
+
+    // floorIdx is zero-based, like ParkingLot.getFloors()
+    public int getAvailable(int floorIdx)
+    {
+        return availableByFloor[floorIdx];
+    }
+
+    public int getOccupied(int floorIdx)
+    {
+        return occupiedByFloor[floorIdx];
+    }
+
+    public int getAvailable(VehicleType vehicleType)
+    {
+        return availableByType[vehicleType.ordinal()];
+    }
+
+    public int getOccupied(VehicleType vehicleType)
+    {
+        return occupiedByType[vehicleType.ordinal()];
+    }
+
+    public int getTotalAvailable()
+    {
+        int total = 0;
+        for (int n : availableByFloor)
+            total += n;
+        return total;
+    }
+
+    public int getTotalOccupied()
+    {
+        int total = 0;
+        for (int n : occupiedByFloor)
+            total += n;
+        return total;
     }
 }
 
@@ -188,15 +694,93 @@ class ParkingLot implements Parkable
 {
     private String name;
     private ArrayList<Floor> floors;
+    // floors that still have a free slot, per vehicle type, as a bitmap of
+    // 64 floors per word; a bit is only changed while holding that floor's lock
+    // (indexed by VehicleType ordinal)
+    private AtomicLongArray[] floorsWithSpace;
+    // tickets of parked vehicles, so exit finds the slot without parsing the id
+    private ConcurrentHashMap<String, Ticket> tickets = new ConcurrentHashMap<>();
+    // lot-wide free slots and capacity per vehicle type, kept in step with the floors
+    private AtomicIntegerArray freeByType = new AtomicIntegerArray(VehicleType.values().length);
+    private int[] capacityByType = new int[VehicleType.values().length];
+    // null for a purely in-memory lot
+    private ParkingJournal journal;
+    // times stays and reservations; exits are billed from it
+    private ParkingClock clock;
+    // what park(), remove() and viewAvailability() report to
+    private AuditSink sink = new PrintStreamSink(System.out);
+    // where park() looks for a slot first
+    private SlotAllocationStrategy strategy = new FirstFitStrategy();
+    // what exits are billed at
+    private Tariff tariff = Tariff.standard();
+    // parked vehicles by plate; shared by every lot of a ParkingNetwork
+    private PlateIndex plates = new PlateIndex();
+    // Slot changes for signage, billing and analytics. Each subscriber has
+    // its own bounded buffer and pulls with request(n); a subscriber whose
+    // buffer is full misses events rather than holding up the gates.
+    private SlotEventBus events;
+    // open reservations by id; the slot calendars hold the same bookings
+    // indexed by time
+    private ConcurrentHashMap<String, Reservation> reservations = new ConcurrentHashMap<>();
+    private AtomicLong reservationSeq = new AtomicLong();
+    // running totals since the lot was built, sampled by OccupancyStats
+    private LongAdder arrivals = new LongAdder();
+    private LongAdder departures = new LongAdder();
+    private LongAdder revenuePaise = new LongAdder();
+    // reserve() clears out ended reservations once there are this many
+    private volatile int pruneAt = MIN_PRUNE_AT;
+
+    private static final int EVENT_BUFFER = 1024;
+    private static final int MIN_PRUNE_AT = 64;
+    // matches locate() lists at most
+    private static final int LOCATE_LIMIT = 10;
 
     public static final int totalFloors = 5;
     public static final int totalSlots = 10;
 
     public ParkingLot(String name) {
+        this(name, totalFloors, totalSlots);
+    }
+
+    public ParkingLot(String name, int floorCount, int slotsPerFloor)
+    {
+        this(name, floorCount, slotsPerFloor, ParkingClock.SYSTEM);
+    }
+
+    public ParkingLot(String name, int floorCount, int slotsPerFloor, ParkingClock clock)
+    {
         this.name = name;
+        this.clock = clock;
+        this.events = new SlotEventBus(EVENT_BUFFER, clock);
         this.floors = new ArrayList<>();
-        for (int i = 0; i < totalFloors; i++)
-            floors.add(new Floor(totalSlots));
+        this.floorsWithSpace = new AtomicLongArray[VehicleType.values().length];
+        for (VehicleType type : VehicleType.values())
+            floorsWithSpace[type.ordinal()] = new AtomicLongArray((floorCount + 63) / 64);
+        for (int i = 0; i < floorCount; i++)
+        {
+            Floor floor = new Floor(slotsPerFloor, clock);
+            floors.add(floor);
+            for (VehicleType type : VehicleType.values())
+            {
+                if (floor.getCapacity(type) > 0)
+                    markSpace(floorsWithSpace[type.ordinal()], i, true);
+                capacityByType[type.ordinal()] += floor.getCapacity(type);
+                freeByType.addAndGet(type.ordinal(), floor.getCapacity(type));
+            }
+        }
+    }
+
+    // A lot whose slots are recovered from, and recorded to, the journal.
+    public ParkingLot(String name, ParkingJournal journal) throws IOException
+    {
+        this(name);
+        journal.attach(this);
+        this.journal = journal;
+    }
+
+    public String getName()
+    {
+        return name;
     }
 
     public ArrayList<Floor> getFloors() 
@@ -204,80 +788,723 @@ class ParkingLot implements Parkable
         return floors;
     }
 
+    // Set before the lot is shared between threads.
+    public void setAuditSink(AuditSink sink)
+    {
+        this.sink = sink;
+    }
+
+    // Set before the lot is shared between threads.
+    public void setAllocationStrategy(SlotAllocationStrategy strategy)
+    {
+        strategy.attach(floors);
+        this.strategy = strategy;
+    }
+
+    // Set before the lot is shared between threads.
+    public void setTariff(Tariff tariff)
+    {
+        this.tariff = tariff;
+    }
+
+    // Moves the lot's parked vehicles into another index, so several lots
+    // can turn away a plate parked at any of them. Set before the lot is
+    // shared between threads.
+    void setPlateIndex(PlateIndex index)
+    {
+        for (Ticket t : tickets.values())
+        {
+            String key = PlateIndex.normalize(t.getVehicle().getPlate());
+            plates.unbind(key, t);
+            index.bind(key, t);
+        }
+        this.plates = index;
+    }
+
     @Override
     public void park(Vehicle v)
      {
-        for (int i = 0; i < floors.size(); i++) 
+        Ticket ticket;
+        try {
+            ticket = tryPark(v);
+        } catch (IllegalArgumentException e) {
+            sink.message(e.getMessage());
+            return;
+        } catch (UncheckedIOException e) {
+            sink.message("Could not save parking data: " + e.getCause().getMessage());
+            return;
+        }
+        if (ticket == null)
+            sink.message("No slot available.");
+        else
+            sink.parked(ticket);
+    }
+
+    // Claims a free slot where the allocation strategy points, or returns
+    // null when the lot is full for this vehicle type. Only the floor being
+    // claimed from is locked, so gates parking on different floors never wait
+    // on each other. Throws IllegalArgumentException when a vehicle with the
+    // same plate is already parked. The plate is let go again whenever no
+    // ticket comes of it, by a full lot or by the journal throwing.
+    public Ticket tryPark(Vehicle v)
+    {
+        String plate = PlateIndex.normalize(v.getPlate());
+        if (!plates.claim(plate))
+            throw new IllegalArgumentException("Vehicle is already parked.");
+        Ticket ticket = null;
+        try {
+            ticket = claimFirstFree(v);
+        } finally {
+            if (ticket == null)
+                plates.unclaim(plate);
+        }
+        if (ticket == null)
+            return null;
+        if (journal != null)
+            journal.commit();
+        return ticket;
+    }
+
+    private Ticket claimFirstFree(Vehicle v)
+    {
+        long entryNanos = clock.nanoTime();
+        AtomicLongArray candidates = floorsWithSpace[v.getType().ordinal()];
+        int start = strategy.startFloor(v.getType());
+        // from the start floor to the top, then wrap round to the floors below it
+        for (int pass = 0; pass < 2; pass++)
         {
-            Floor floor = floors.get(i);
-            Slot slot = floor.findSlot(v.getType());
-            if (slot != null) {
-                String id = name + "_" + (i + 1) + "_" + slot.getSlotNo();
-                Ticket ticket = new Ticket(id, v);
-                slot.park(v, ticket);
-                System.out.println("Parked: " + id);
-                return;
+            int from = pass == 0 ? start : 0;
+            int to = pass == 0 ? floors.size() : start;
+            for (int i = nextFloorWithSpace(candidates, from); i >= 0 && i < to; i = nextFloorWithSpace(candidates, i + 1))
+            {
+                Floor floor = floors.get(i);
+                floor.getLock().lock();
+                try {
+                    int slot = strategy.pickSlot(floor, v.getType());
+                    if (slot < 0)
+                    {
+                        // another gate took the last slot after we read the
+                        // bitmap, or the free slots left are held for reservations
+                        if (!floor.hasSpace(v.getType()))
+                            markSpace(candidates, i, false);
+                        continue;
+                    }
+                    return claim(i, slot, v, entryNanos);
+                } finally {
+                    floor.getLock().unlock();
+                }
             }
         }
-        System.out.println("No slot available.");
+        return null;
     }
 
     @Override
-    public void remove(String id, int hours) 
+    public void remove(String id) 
     {
-        if (!id.matches("^" + name + "_\\d+_\\d+$")) 
-        {
-            System.out.println("Invalid Ticket ID.");
+        Payment p;
+        try {
+            p = exit(id);
+        } catch (IllegalArgumentException e) {
+            sink.message(e.getMessage());
+            return;
+        } catch (UncheckedIOException e) {
+            sink.message("Could not save parking data: " + e.getCause().getMessage());
             return;
         }
+        sink.receipt(p);
+    }
+
+    // Checks the ticket out and bills the stay measured on the lot's clock.
+    public Payment exit(String id)
+    {
+        Ticket t = checkout(id);
+        Payment p = new Payment(t, clock.nanoTime(), clock.currentTimeMillis(), tariff);
+        revenuePaise.add(Math.round(p.getAmount() * 100));
+        return p;
+    }
+
+    // Frees the slot held by the ticket and returns the ticket. Throws
+    // IllegalArgumentException with the operator message when the ticket is
+    // malformed or not currently parked.
+    public Ticket checkout(String id)
+    {
+        Ticket t = release(id);
+        if (journal != null)
+            journal.commit();
+        return t;
+    }
+
+    private Ticket release(String id)
+    {
+        Ticket t = tickets.get(id);
+        if (t == null)
+            throw new IllegalArgumentException(rejectReason(id));
+
+        Floor floor = floors.get(t.getFloorIdx());
+        floor.getLock().lock();
+        try {
+            // a second exit with the same ticket may have raced us here
+            if (floor.getTicket(t.getSlotIdx()) != t) 
+                throw new IllegalArgumentException("Ticket not found.");
 
-        String[] parts = id.split("_");
-        int floorIdx = Integer.parseInt(parts[1]) - 1;
-        int slotIdx = Integer.parseInt(parts[2]) - 1;
+            release(t);
+            return t;
+        } finally {
+            floor.getLock().unlock();
+        }
+    }
 
-        if (floorIdx >= floors.size() || floorIdx < 0) 
+    // Parks the batch a vehicle type at a time. Each type starts where the
+    // allocation strategy points, as a single park does, and walks on to the
+    // top and round to the floors below; each floor is locked once per type
+    // and fills as many waiting vehicles as it has room for, in the
+    // strategy's slot order. Vehicles of one type are placed in the order
+    // they were submitted.
+    @Override
+    public List<BatchResult<Ticket>> parkAll(List<Vehicle> vehicles)
+    {
+        List<BatchResult<Ticket>> results = new ArrayList<>(Collections.nCopies(vehicles.size(), null));
+        EnumMap<VehicleType, ArrayDeque<Integer>> waiting = new EnumMap<>(VehicleType.class);
+        for (int k = 0; k < vehicles.size(); k++)
         {
-            System.out.println("Invalid floor.");
-            return;
+            if (plates.claim(PlateIndex.normalize(vehicles.get(k).getPlate())))
+                waiting.computeIfAbsent(vehicles.get(k).getType(), t -> new ArrayDeque<>()).add(k);
+            else
+                results.set(k, BatchResult.failed("Vehicle is already parked."));
         }
 
-        Floor floor = floors.get(floorIdx);
-        ArrayList<Slot> slots = floor.getAllSlots();
+        long entryNanos = clock.nanoTime();
+        try {
+            for (Map.Entry<VehicleType, ArrayDeque<Integer>> e : waiting.entrySet())
+            {
+                VehicleType type = e.getKey();
+                ArrayDeque<Integer> queue = e.getValue();
+                AtomicLongArray candidates = floorsWithSpace[type.ordinal()];
+                int start = strategy.startFloor(type);
+                for (int pass = 0; pass < 2 && !queue.isEmpty(); pass++)
+                {
+                    int from = pass == 0 ? start : 0;
+                    int to = pass == 0 ? floors.size() : start;
+                    for (int i = nextFloorWithSpace(candidates, from); i >= 0 && i < to && !queue.isEmpty();
+                         i = nextFloorWithSpace(candidates, i + 1))
+                    {
+                        Floor floor = floors.get(i);
+                        floor.getLock().lock();
+                        try {
+                            int slot;
+                            while (!queue.isEmpty() && (slot = strategy.pickSlot(floor, type)) >= 0)
+                            {
+                                // stays queued until it has its ticket, so its plate
+                                // is let go below if the journal throws
+                                int k = queue.peek();
+                                try {
+                                    results.set(k, BatchResult.ok(claim(i, slot, vehicles.get(k), entryNanos)));
+                                } catch (IllegalArgumentException ex) {
+                                    // this vehicle only, and the slot is still free
+                                    plates.unclaim(PlateIndex.normalize(vehicles.get(k).getPlate()));
+                                    results.set(k, BatchResult.failed(ex.getMessage()));
+                                }
+                                queue.poll();
+                            }
+                            if (!floor.hasSpace(type))
+                                markSpace(candidates, i, false);
+                        } finally {
+                            floor.getLock().unlock();
+                        }
+                    }
+                }
+            }
+        } finally {
+            // whoever is still waiting, for want of a slot or because the
+            // journal threw, lets the plate go
+            for (ArrayDeque<Integer> queue : waiting.values())
+            {
+                for (int k : queue)
+                {
+                    plates.unclaim(PlateIndex.normalize(vehicles.get(k).getPlate()));
+                    results.set(k, BatchResult.noSpace());
+                }
+            }
+        }
+        if (journal != null)
+            journal.commit();
+        return results;
+    }
 
-        if (slotIdx >= slots.size() || slotIdx < 0) 
+    // Frees the batch floor by floor, taking each floor lock once. A ticket
+    // that appears twice in the batch only pays once; the repeat is reported
+    // as not found, just as a second remove() call would be.
+    @Override
+    public List<BatchResult<Payment>> removeAll(List<ExitRequest> exits)
+    {
+        List<BatchResult<Payment>> results = new ArrayList<>(Collections.nCopies(exits.size(), null));
+        TreeMap<Integer, ArrayList<Integer>> byFloor = new TreeMap<>();
+        Ticket[] found = new Ticket[exits.size()];
+        for (int k = 0; k < exits.size(); k++)
         {
-            System.out.println("Invalid slot.");
-            return;
+            String id = exits.get(k).getTicketId();
+            found[k] = tickets.get(id);
+            if (found[k] == null)
+                results.set(k, BatchResult.failed(rejectReason(id)));
+            else
+                byFloor.computeIfAbsent(found[k].getFloorIdx(), f -> new ArrayList<>()).add(k);
+        }
+
+        for (Map.Entry<Integer, ArrayList<Integer>> e : byFloor.entrySet())
+        {
+            Floor floor = floors.get(e.getKey());
+            floor.getLock().lock();
+            try {
+                for (int k : e.getValue())
+                {
+                    if (floor.getTicket(found[k].getSlotIdx()) != found[k])
+                    {
+                        results.set(k, BatchResult.failed("Ticket not found."));
+                        continue;
+                    }
+                    release(found[k]);
+                    results.set(k, null);
+                }
+            } finally {
+                floor.getLock().unlock();
+            }
         }
 
-        Slot slot = slots.get(slotIdx);
-        Ticket t = slot.getTicket();
+        if (journal != null)
+            journal.commit();
 
-        if (t == null || !t.getId().equals(id)) 
+        // price outside the floor locks, with one clock reading for the batch
+        long exitNanos = clock.nanoTime();
+        long exitMillis = clock.currentTimeMillis();
+        long paise = 0;
+        for (int k = 0; k < exits.size(); k++)
         {
-            System.out.println("Ticket not found.");
+            if (results.get(k) == null)
+            {
+                Payment p = new Payment(found[k], exitNanos, exitMillis, tariff);
+                paise += Math.round(p.getAmount() * 100);
+                results.set(k, BatchResult.ok(p));
+            }
+        }
+        revenuePaise.add(paise);
+        return results;
+    }
+
+    // Issues a ticket for a slot found on floor i. Caller holds the floor
+    // lock, and has read the entry time before taking it.
+    private Ticket claim(int i, int slot, Vehicle v, long entryNanos)
+    {
+        Floor floor = floors.get(i);
+        Ticket ticket = new Ticket(name + "_" + (i + 1) + "_" + (slot + 1), v, i, slot, entryNanos);
+        // journal first: if the record cannot be written the slot is left
+        // as it was, instead of taken by a ticket nobody was given
+        if (journal != null)
+            journal.logPark(i, slot, v, entryMillis(ticket));
+        floor.occupy(slot, ticket);
+        tickets.put(ticket.getId(), ticket);
+        plates.bind(PlateIndex.normalize(v.getPlate()), ticket);
+        publish(ticket, true);
+        arrivals.increment();
+        freeByType.decrementAndGet(v.getType().ordinal());
+        strategy.freeCountChanged(i, v.getType(), floor.getFreeCount(v.getType()));
+        if (!floor.hasSpace(v.getType()))
+            markSpace(floorsWithSpace[v.getType().ordinal()], i, false);
+        return ticket;
+    }
+
+    // Frees the slot a ticket holds. Caller holds the floor lock.
+    private void release(Ticket t)
+    {
+        Floor floor = floors.get(t.getFloorIdx());
+        if (journal != null)
+            journal.logVacate(t.getFloorIdx(), t.getSlotIdx(), clock.currentTimeMillis());
+        floor.vacate(t.getSlotIdx());
+        tickets.remove(t.getId());
+        plates.unbind(PlateIndex.normalize(t.getVehicle().getPlate()), t);
+        publish(t, false);
+        departures.increment();
+        freeByType.incrementAndGet(t.getVehicle().getType().ordinal());
+        strategy.freeCountChanged(t.getFloorIdx(), t.getVehicle().getType(), floor.getFreeCount(t.getVehicle().getType()));
+        markSpace(floorsWithSpace[t.getVehicle().getType().ordinal()], t.getFloorIdx(), true);
+    }
+
+    public Flow.Publisher<SlotEvent> events()
+    {
+        return events;
+    }
+
+    // events thrown away because a subscriber's buffer was full
+    public long getDroppedEvents()
+    {
+        return events.getDropped();
+    }
+
+    // Called under the floor lock so each slot's events come out in order.
+    // Never blocks: with no subscribers it returns at once, and a full
+    // subscriber buffer drops the event for that subscriber only.
+    private void publish(Ticket t, boolean parked)
+    {
+        if (!events.hasSubscribers())
             return;
+        events.publish(t, parked);
+    }
+
+    // Books the lowest slot, on the lowest floor, with no reservation
+    // overlapping [startMillis, endMillis), or returns null when there is
+    // none. The window is widened to whole 15-minute buckets and must end
+    // within seven days. A window that starts within the hold period also
+    // needs the slot to be free now. Reservations are kept in memory only.
+    public Reservation reserve(VehicleType vehicleType, long startMillis, long endMillis)
+    {
+        long now = clock.currentTimeMillis();
+        if (reservations.size() >= pruneAt)
+            pruneReservations(now);
+        return locateReservable(vehicleType, startMillis, endMillis, now, true);
+    }
+
+    // The slot reserve() would book for the window, as "<lot>_<floor>_<slot>",
+    // or null. Floors are ruled out from their bucket counts, and within a
+    // floor 64 slots are checked per step, so a fully booked lot answers
+    // without visiting its slots.
+    public String findReservable(VehicleType vehicleType, long startMillis, long endMillis)
+    {
+        Reservation r = locateReservable(vehicleType, startMillis, endMillis, clock.currentTimeMillis(), false);
+        return r == null ? null : name + "_" + (r.getFloorIdx() + 1) + "_" + (r.getSlotIdx() + 1);
+    }
+
+    public void cancelReservation(String id)
+    {
+        Reservation r = reservations.get(id);
+        if (r == null)
+            throw new IllegalArgumentException("Reservation not found.");
+        Floor floor = floors.get(r.getFloorIdx());
+        floor.getLock().lock();
+        try {
+            if (!reservations.remove(id, r))
+                throw new IllegalArgumentException("Reservation not found.");
+            unreserve(floor, r);
+        } finally {
+            floor.getLock().unlock();
         }
+    }
+
+    // Parks the holder of a reservation in the reserved slot and uses the
+    // reservation up. The holder may arrive from the start of the hold
+    // period until the window ends.
+    public Ticket parkReserved(String id, Vehicle v)
+    {
+        long now = clock.currentTimeMillis();
+        Reservation r = reservations.get(id);
+        if (r == null || now >= r.getEndMillis())
+            throw new IllegalArgumentException("Reservation not found.");
+        if (v.getType() != r.getType())
+            throw new IllegalArgumentException("Reservation is for a " + r.getType() + ".");
+        if (now < r.getStartMillis() - SlotCalendar.HOLD_MILLIS)
+            throw new IllegalArgumentException("Too early for this reservation.");
+        String plate = PlateIndex.normalize(v.getPlate());
+        if (!plates.claim(plate))
+            throw new IllegalArgumentException("Vehicle is already parked.");
 
-        slot.vacate();
-        Payment p = new Payment(t, hours);
-        p.printReceipt();
+        Ticket ticket = null;
+        long entryNanos = clock.nanoTime();
+        Floor floor = floors.get(r.getFloorIdx());
+        floor.getLock().lock();
+        try {
+            if (reservations.get(id) != r)
+                throw new IllegalArgumentException("Reservation not found.");
+            if (floor.isOccupied(r.getSlotIdx()))
+                throw new IllegalArgumentException("Reserved slot is still occupied.");
+            reservations.remove(id);
+            unreserve(floor, r);
+            ticket = claim(r.getFloorIdx(), r.getSlotIdx(), v, entryNanos);
+        } finally {
+            floor.getLock().unlock();
+            if (ticket == null)
+                plates.unclaim(plate);
+        }
+        if (journal != null)
+            journal.commit();
+        return ticket;
     }
 
-    public void viewAvailability() 
+    // Finds, and with book also reserves, the first slot open for the
+    // window, or returns null. Without book the result has no id and
+    // nothing is held.
+    private Reservation locateReservable(VehicleType vehicleType, long startMillis, long endMillis, long now, boolean book)
     {
-        for (int i = 0; i < floors.size(); i++) 
+        if (endMillis <= startMillis)
+            throw new IllegalArgumentException("Reservation must end after it starts.");
+        long from = SlotCalendar.bucket(startMillis);
+        long to = SlotCalendar.bucketAfter(endMillis);
+        if (from < SlotCalendar.bucket(now))
+            throw new IllegalArgumentException("Reservation cannot start in the past.");
+        if (to > SlotCalendar.bucket(now) + SlotCalendar.HORIZON_BUCKETS)
+            throw new IllegalArgumentException("Reservations can only be made up to 7 days ahead.");
+        boolean mustBeFree = startMillis < now + SlotCalendar.HOLD_MILLIS;
+
+        for (int i = 0; i < floors.size(); i++)
         {
-            int count = 0;
-            ArrayList<Slot> slots = floors.get(i).getAllSlots();
-            for (Slot slot : slots) {
-                if (slot.isAvailable()) 
+            Floor floor = floors.get(i);
+            if (floor.getCapacity(vehicleType) == 0)
+                continue;
+            floor.getLock().lock();
+            try {
+                int slot = floor.findReservable(vehicleType, from, to, mustBeFree);
+                if (slot < 0)
+                    continue;
+                String id = book ? name + "_R" + reservationSeq.incrementAndGet() : null;
+                Reservation r = new Reservation(id, vehicleType, i, slot,
+                        from * SlotCalendar.BUCKET_MILLIS, to * SlotCalendar.BUCKET_MILLIS);
+                if (book)
                 {
-                    count++;
+                    floor.reserve(slot, from, to);
+                    reservations.put(id, r);
                 }
+                return r;
+            } finally {
+                floor.getLock().unlock();
             }
-            System.out.println("Floor " + (i + 1) + ": " + count + " available slots");
         }
+        return null;
+    }
+
+    // Drops reservations whose window has passed without the holder
+    // arriving, then lets the map grow to twice its size before looking again.
+    private void pruneReservations(long now)
+    {
+        for (Reservation r : reservations.values())
+        {
+            if (r.getEndMillis() > now)
+                continue;
+            Floor floor = floors.get(r.getFloorIdx());
+            floor.getLock().lock();
+            try {
+                if (reservations.remove(r.getId(), r))
+                    unreserve(floor, r);
+            } finally {
+                floor.getLock().unlock();
+            }
+        }
+        pruneAt = Math.max(MIN_PRUNE_AT, reservations.size() * 2);
+    }
+
+    // Caller holds the floor lock.
+    private static void unreserve(Floor floor, Reservation r)
+    {
+        floor.unreserve(r.getSlotIdx(), SlotCalendar.bucket(r.getStartMillis()), SlotCalendar.bucket(r.getEndMillis()));
+    }
+
+    // Sets a slot to the state read back from the journal: parked by v since
+    // entryMillis (negative when the record predates entry times, and the
+    // stay is then timed from now), or free when v is null; a free slot's
+    // time is not needed. Records that no
+    // longer fit this lot's layout are skipped.
+    void restore(int floorIdx, int slotIdx, Vehicle v, long entryMillis)
+    {
+        if (floorIdx < 0 || floorIdx >= floors.size())
+            return;
+        Floor floor = floors.get(floorIdx);
+        if (slotIdx < 0 || slotIdx >= floor.size())
+            return;
+        if (v != null && floor.getType(slotIdx) != v.getType())
+            return;
+
+        floor.getLock().lock();
+        try {
+            if (floor.getTicket(slotIdx) != null)
+                release(floor.getTicket(slotIdx));
+            if (v != null)
+            {
+                long ago = entryMillis < 0 ? 0 : Math.max(0, clock.currentTimeMillis() - entryMillis);
+                claim(floorIdx, slotIdx, v, clock.nanoTime() - ago * 1_000_000L);
+            }
+        } finally {
+            floor.getLock().unlock();
+        }
+    }
+
+    // Wall-clock time the ticket's stay began, for writing to disk; the
+    // monotonic entry time means nothing to another process.
+    long entryMillis(Ticket t)
+    {
+        return clock.currentTimeMillis() - (clock.nanoTime() - t.getEntryNanos()) / 1_000_000L;
+    }
+
+    // Works out why an id is not a live ticket, with the same checks and
+    // messages as the old "<name>_<floor>_<slot>" parsing. Only reached on a
+    // registry miss, so the normal exit path never parses the id.
+    private String rejectReason(String id)
+    {
+        int p = name.length();
+        if (!id.startsWith(name) || p >= id.length() || id.charAt(p) != '_')
+            return "Invalid Ticket ID.";
+
+        int floorEnd = skipDigits(id, p + 1);
+        if (floorEnd == p + 1 || floorEnd >= id.length() || id.charAt(floorEnd) != '_')
+            return "Invalid Ticket ID.";
+        int slotEnd = skipDigits(id, floorEnd + 1);
+        if (slotEnd == floorEnd + 1 || slotEnd != id.length())
+            return "Invalid Ticket ID.";
+
+        long floorNo = parseDigits(id, p + 1, floorEnd);
+        if (floorNo < 1 || floorNo > floors.size())
+            return "Invalid floor.";
+        long slotNo = parseDigits(id, floorEnd + 1, slotEnd);
+        if (slotNo < 1 || slotNo > floors.get((int) floorNo - 1).size())
+            return "Invalid slot.";
+        return "Ticket not found.";
+    }
+
+    private static int skipDigits(String s, int from)
+    {
+        while (from < s.length() && s.charAt(from) >= '0' && s.charAt(from) <= '9')
+            from++;
+        return from;
+    }
+
+    // parses [from, to) as a non-negative number, saturating at Long.MAX_VALUE
+    private static long parseDigits(String s, int from, int to)
+    {
+        long n = 0;
+        for (int i = from; i < to; i++)
+        {
+            n = n * 10 + (s.charAt(i) - '0');
+            if (n > Integer.MAX_VALUE)
+                return Long.MAX_VALUE;
+        }
+        return n;
+    }
+
+    public void viewAvailability() 
+    {
+        sink.availability(getAvailability());
+    }
+
+    // Reports where the vehicles whose plate starts with the given text are
+    // parked, a whole plate matching first. Text shorter than
+    // PlateIndex.MIN_SEARCH_PREFIX only finds that exact plate.
+    public void locate(String plate)
+    {
+        List<Ticket> found = searchPlates(plate, LOCATE_LIMIT);
+        if (found.isEmpty())
+            sink.message("Vehicle not found.");
+        for (Ticket t : found)
+        {
+            Vehicle v = t.getVehicle();
+            String color = v.getColor() == null || v.getColor().isEmpty() ? "" : v.getColor() + " ";
+            sink.message(v.getPlate() + " (" + color + v.getType() + "): Floor " + (t.getFloorIdx() + 1)
+                    + ", Slot " + (t.getSlotIdx() + 1) + ", Ticket " + t.getId());
+        }
+    }
+
+    // ticket of the parked vehicle with this plate, or null; case, spaces
+    // and punctuation in the plate are ignored
+    public Ticket findByPlate(String plate)
+    {
+        return plates.find(plate);
+    }
+
+    // up to limit parked vehicles whose plate starts with prefix, in plate order
+    public List<Ticket> findByPlatePrefix(String prefix, int limit)
+    {
+        return plates.findPrefix(prefix, limit);
+    }
+
+    // findByPlatePrefix for customers: see PlateIndex.search
+    public List<Ticket> searchPlates(String text, int limit)
+    {
+        return plates.search(text, limit);
+    }
+
+    // Reads the running counters instead of walking the slots, so this costs
+    // O(floors + vehicle types) no matter how many slots each floor has.
+    public Availability getAvailability()
+    {
+        int[] available = new int[floors.size()];
+        int[] occupied = new int[floors.size()];
+        for (int i = 0; i < floors.size(); i++)
+        {
+            Floor floor = floors.get(i);
+            available[i] = floor.getFreeCount();
+            occupied[i] = floor.size() - available[i];
+        }
+
+        int[] availableByType = new int[capacityByType.length];
+        int[] occupiedByType = new int[capacityByType.length];
+        for (int t = 0; t < capacityByType.length; t++)
+        {
+            availableByType[t] = freeByType.get(t);
+            occupiedByType[t] = capacityByType[t] - availableByType[t];
+        }
+        return new Availability(available, occupied, availableByType, occupiedByType);
+    }
+
+    // O(1) count of free slots for one vehicle type across the whole lot
+    public int getAvailable(VehicleType vehicleType)
+    {
+        return freeByType.get(vehicleType.ordinal());
+    }
+
+    // O(1) count of occupied slots across the whole lot
+    public int getOccupied()
+    {
+        int occupied = 0;
+        for (int t = 0; t < capacityByType.length; t++)
+            occupied += capacityByType[t] - freeByType.get(t);
+        return occupied;
+    }
+
+    public int getCapacity()
+    {
+        int capacity = 0;
+        for (int n : capacityByType)
+            capacity += n;
+        return capacity;
+    }
+
+    // vehicles parked since the lot was built, counting any restored from
+    // the journal
+    public long getArrivals()
+    {
+        return arrivals.sum();
+    }
+
+    public long getDepartures()
+    {
+        return departures.sum();
+    }
+
+    // billed by exit() and removeAll() since the lot was built
+    public long getRevenuePaise()
+    {
+        return revenuePaise.sum();
+    }
+
+    ParkingClock getClock()
+    {
+        return clock;
+    }
+
+    private static int nextFloorWithSpace(AtomicLongArray mask, int from)
+    {
+        for (int w = from >>> 6; w < mask.length(); w++)
+        {
+            long word = mask.get(w);
+            if (w == from >>> 6)
+                word &= -1L << (from & 63);
+            if (word != 0)
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+        }
+        return -1;
+    }
+
+    private static void markSpace(AtomicLongArray mask, int floorIdx, boolean hasSpace)
+    {
+        long bit = 1L << (floorIdx & 63);
+        if (hasSpace)
+            mask.getAndUpdate(floorIdx >>> 6, w -> w | bit);
+        else
+            mask.getAndUpdate(floorIdx >>> 6, w -> w & ~bit);
     }
 }
 
@@ -286,7 +1513,30 @@ public class Parking
     public static void main(String[] args) 
     {
         Scanner sc = new Scanner(System.in);
-        Parkable lot = new ParkingLot("NITHYA");
+        ParkingJournal journal;
+        Parkable lot;
+        try {
+            journal = new ParkingJournal(Paths.get("parking-data"));
+            lot = new ParkingLot("NITHYA", journal);
+        } catch (IOException e) {
+            System.out.println("Could not open parking data: " + e.getMessage());
+            return;
+        }
+        try {
+            ((ParkingLot) lot).setTariff(Tariff.configured());
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Could not read the tariff: " + e.getMessage());
+            return;
+        }
+        OccupancyStats stats = new OccupancyStats((ParkingLot) lot, 5_000);
+        // flush the journal however the program ends
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.out.println("Could not save parking data: " + e.getMessage());
+            }
+        }));
 
         System.out.println("Welcome to NITHYA Parking System");
         System.out.print("Are you an ADMIN or USER? (Enter ADMIN/USER): ");
@@ -306,10 +1556,12 @@ public class Parking
             if (role == Role.USER) {
                 System.out.println("1. Park Vehicle");
                 System.out.println("2. Remove Vehicle");
-                System.out.println("3. Exit");
+                System.out.println("3. Find Vehicle");
+                System.out.println("4. Exit");
             } else if (role == Role.ADMIN) {
                 System.out.println("1. View Parking Status");
-                System.out.println("2. Exit");
+                System.out.println("2. Occupancy Report");
+                System.out.println("3. Exit");
             }
 
             System.out.print("Enter choice: ");
@@ -326,7 +1578,13 @@ public class Parking
                         System.out.print("Enter vehicle color: ");
                         String color = sc.nextLine();
                         System.out.print("Enter vehicle type (CAR/BIKE/TRUCK): ");
-                        String type = sc.nextLine().toUpperCase();
+                        VehicleType type;
+                        try {
+                            type = VehicleType.valueOf(sc.nextLine().trim().toUpperCase());
+                        } catch (IllegalArgumentException e) {
+                            System.out.println("Invalid vehicle type.");
+                            break;
+                        }
 
                         Vehicle v = new Vehicle(plate, color, type);
                         lot.park(v);
@@ -335,13 +1593,15 @@ public class Parking
                     case 2:
                         System.out.print("Enter ticket ID: ");
                         String id = sc.nextLine();
-                        System.out.print("Enter hours parked: ");
-                        int hrs = sc.nextInt();
-                        sc.nextLine();
-                        lot.remove(id, hrs);
+                        lot.remove(id);
                         break;
 
                     case 3:
+                        System.out.print("Enter vehicle number (or at least its first " + PlateIndex.MIN_SEARCH_PREFIX + " characters): ");
+                        ((ParkingLot) lot).locate(sc.nextLine());
+                        break;
+
+                    case 4:
                         System.out.println("Goodbye!");
                         sc.close();
                         return;
@@ -356,7 +1616,12 @@ public class Parking
                     case 1:
                         ((ParkingLot) lot).viewAvailability(); 
                         break;
-                 case 2:
+
+                    case 2:
+                        stats.printReport();
+                        break;
+
+                 case 3:
                         System.out.println("Goodbye!");
                         sc.close();
                         return;
@@ -0,0 +1,637 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+// Benchmark suite for the parking engine hot paths. Each case is run for a
+// warm-up period, then timed over several measured rounds; the report shows
+// the mean cost per operation and the bytes the measuring thread allocated
+// per operation (not meaningful for the multi-threaded cases).
+//
+// The parking classes live in the unnamed package, which JMH-generated code
+// cannot import, so this is a plain main() harness in the same package. The
+// numbers from a reference run are kept in bench-baseline.txt next to this
+// file; rerun and diff against it when changing the lot.
+//
+// Lots are sized floors x slots-per-floor. Occupancy cases pre-fill that share
+// of the CAR bays, then each operation parks one car and lets the oldest one
+// leave, so occupancy stays put while slots are reused.
+//
+// Run: java -Xmx2g ParkingBench [case-name-filter]
+public class ParkingBench
+{
+    interface Case
+    {
+        // runs n operations and returns something derived from them so the
+        // JIT cannot drop the work
+        long run(int n);
+
+        // untimed setup before every warm-up and measured run
+        default void reset()
+        {
+        }
+    }
+
+    private static final long WARMUP_NANOS = 1_000_000_000L;
+    private static final int ROUNDS = 5;
+    private static final int OPS_PER_ROUND = 1_000_000;
+
+    private static final int[][] SIZES = {{5, 10}, {20, 1_000}, {100, 10_000}};
+    private static final int[] OCCUPANCY_PERCENT = {0, 50, 90, 99};
+    private static final int[] GATES = {1, 4, 16};
+
+    private static long sink;
+
+    public static void main(String[] args) throws Exception
+    {
+        String filter = args.length > 0 ? args[0] : "";
+        // each case is built only when it is run, so the lots set up for one
+        // case are garbage by the time the next is measured
+        LinkedHashMap<String, Supplier<Case>> cases = new LinkedHashMap<>();
+        LinkedHashMap<String, Integer> opsPerRound = new LinkedHashMap<>();
+
+        Tariff tariff = Tariff.standard();
+        Ticket[] tickets = new Ticket[1024];
+        VehicleType[] types = VehicleType.values();
+        for (int i = 0; i < tickets.length; i++)
+            tickets[i] = new Ticket("NITHYA_1_" + i, new Vehicle("P" + i, "", types[i % types.length]), 0, i, 0);
+
+        // the constructor exit() uses; the tickets entered at nanoTime 0
+        long hourNanos = 3_600_000_000_000L;
+        long exitMillis = System.currentTimeMillis();
+        cases.put("payment.construct", () -> n -> {
+            long acc = 0;
+            for (int i = 0; i < n; i++)
+                acc += (long) new Payment(tickets[i & 1023], (1 + (i & 7)) * hourNanos, exitMillis, tariff).getAmount();
+            return acc;
+        });
+        cases.put("tariff.fee", () -> n -> {
+            long acc = 0;
+            for (int i = 0; i < n; i++)
+                acc += tariff.fee(types[i % 3], i & 23, 1 + (i & 63));
+            return acc;
+        });
+
+        for (int[] size : SIZES)
+        {
+            String lotName = size[0] + "x" + size[1];
+            int carBays = size[0] * Math.max(0, size[1] - 3);
+            Vehicle[] cars = cars(carBays + 1);
+
+            cases.put("park.fill/" + lotName, () -> new FillCase(size, cars));
+            opsPerRound.put("park.fill/" + lotName, carBays);
+            cases.put("remove.drain/" + lotName, () -> new DrainCase(size, cars));
+            opsPerRound.put("remove.drain/" + lotName, carBays);
+
+            for (int pct : OCCUPANCY_PERCENT)
+                cases.put("park+remove/" + lotName + "/" + pct + "%", () -> new TurnoverCase(size, cars, carBays * pct / 100));
+
+            cases.put("viewAvailability/" + lotName, () -> {
+                ParkingLot half = new ParkingLot("NITHYA", size[0], size[1]);
+                for (int i = 0; i < carBays / 2; i++)
+                    half.tryPark(cars[i]);
+                return n -> {
+                    long acc = 0;
+                    for (int i = 0; i < n; i++)
+                        acc += half.getAvailability().getTotalAvailable();
+                    return acc;
+                };
+            });
+            opsPerRound.put("viewAvailability/" + lotName, OPS_PER_ROUND / 10);
+
+            for (int gates : GATES)
+                cases.put("contention/" + lotName + "/" + gates + "-gates", () -> new ContentionCase(size, gates, carBays / 2));
+
+            cases.put("parkAll/" + lotName + "/batch-of-100", () -> new BatchCase(size, cars, 100));
+        }
+
+        Vehicle[] eventCars = cars(20_000);
+        cases.put("park+remove/events/no-subscriber", () -> new TurnoverCase(new int[] {20, 1_000}, eventCars, 10_000));
+        cases.put("park+remove/events/lagging-subscriber", () -> {
+            TurnoverCase lagging = new TurnoverCase(new int[] {20, 1_000}, eventCars, 10_000);
+            lagging.lot.events().subscribe(new LaggingSubscriber());
+            return lagging;
+        });
+        cases.put("park+remove/events/fast-subscriber", () -> {
+            TurnoverCase keeping = new TurnoverCase(new int[] {20, 1_000}, eventCars, 10_000);
+            keeping.lot.events().subscribe(new CountingSubscriber());
+            return keeping;
+        });
+
+        cases.put("park+remove/reservations/20x1000/50%/10%-held",
+                () -> new TurnoverCase(new int[] {20, 1_000}, eventCars, 10_000, 2_000));
+        for (int pct : new int[] {0, 90})
+        {
+            cases.put("reserve.find/20x1000/" + pct + "%-booked", () -> {
+                ParkingLot booked = new ParkingLot("NITHYA", 20, 1_000);
+                long start = System.currentTimeMillis() + 24 * 3_600_000L;
+                long end = start + 3 * 3_600_000L;
+                for (int i = 0; i < 20 * 997 * pct / 100; i++)
+                    booked.reserve(VehicleType.CAR, start, end);
+                return n -> {
+                    long acc = 0;
+                    for (int i = 0; i < n; i++)
+                        acc += booked.findReservable(VehicleType.CAR, start, end).length();
+                    return acc;
+                };
+            });
+            opsPerRound.put("reserve.find/20x1000/" + pct + "%-booked", OPS_PER_ROUND / 10);
+        }
+
+        // slot allocation strategies on a 20x1000 lot kept 70% full by a
+        // seeded trace where each arrival is matched by a random departure
+        LinkedHashMap<String, Supplier<SlotAllocationStrategy>> strategies = new LinkedHashMap<>();
+        strategies.put("first-fit", FirstFitStrategy::new);
+        strategies.put("round-robin", RoundRobinStrategy::new);
+        strategies.put("least-loaded", LeastLoadedStrategy::new);
+        strategies.put("nearest-exit", () -> new NearestExitStrategy(500));
+        for (Map.Entry<String, Supplier<SlotAllocationStrategy>> e : strategies.entrySet())
+            cases.put("strategy/" + e.getKey() + "/20x1000/70%",
+                    () -> new StrategyCase(new int[] {20, 1_000}, eventCars, 20 * 997 * 70 / 100, e.getValue().get()));
+
+        // where-is-my-car lookups against 10,000 parked cars: a whole plate,
+        // and the first ten plates starting with three characters
+        Supplier<ParkingLot> plated = () -> {
+            ParkingLot lot = new ParkingLot("NITHYA", 20, 1_000);
+            for (int i = 0; i < 10_000; i++)
+                lot.tryPark(eventCars[i]);
+            return lot;
+        };
+        cases.put("plate.find/20x1000/50%", () -> {
+            ParkingLot lot = plated.get();
+            return n -> {
+                long acc = 0;
+                for (int i = 0; i < n; i++)
+                    acc += lot.findByPlate(eventCars[i % 10_000].getPlate()).getSlotIdx();
+                return acc;
+            };
+        });
+        cases.put("plate.prefix/20x1000/50%", () -> {
+            ParkingLot lot = plated.get();
+            return n -> {
+                long acc = 0;
+                for (int i = 0; i < n; i++)
+                    acc += lot.findByPlatePrefix(eventCars[i % 10_000].getPlate().substring(0, 3), 10).size();
+                return acc;
+            };
+        });
+        opsPerRound.put("plate.prefix/20x1000/50%", OPS_PER_ROUND / 10);
+
+        // reporting one ticket and one receipt per operation, to /dev/null:
+        // println through a PrintStream set up like System.out (autoflush over
+        // a 128-byte buffer) against the batched writer in both modes
+        Payment[] payments = new Payment[tickets.length];
+        for (int i = 0; i < payments.length; i++)
+            payments[i] = new Payment(tickets[i], (1 + (i & 7)) * hourNanos, exitMillis, tariff);
+        for (int gates : new int[] {1, 4})
+        {
+            PrintStream println = new PrintStream(new BufferedOutputStream(new FileOutputStream("/dev/null"), 128), true);
+            cases.put("audit/println/" + gates + "-gates",
+                    () -> new AuditCase(new PrintStreamSink(println), tickets, payments, gates));
+            for (boolean binary : new boolean[] {false, true})
+            {
+                FileChannel devNull = FileChannel.open(Paths.get("/dev/null"), StandardOpenOption.WRITE);
+                cases.put("audit/buffered-" + (binary ? "binary/" : "text/") + gates + "-gates", () -> new AuditCase(
+                        new BufferedAuditSink(devNull, binary, 64 << 10, 10), tickets, payments, gates));
+            }
+        }
+
+        for (int lots : new int[] {1, 4, 16})
+            cases.put("network/" + lots + "-lots/" + lots + "-gates", () -> new NetworkCase(lots));
+
+        System.out.printf("%-44s %12s %12s%n", "case", "ns/op", "bytes/op");
+        for (Map.Entry<String, Supplier<Case>> e : cases.entrySet())
+        {
+            if (!e.getKey().contains(filter))
+                continue;
+            System.gc();
+            measure(e.getKey(), e.getValue().get(), opsPerRound.getOrDefault(e.getKey(), OPS_PER_ROUND));
+        }
+    }
+
+    static void measure(String name, Case c, int opsPerRound)
+    {
+        long end = System.nanoTime() + WARMUP_NANOS;
+        while (System.nanoTime() < end)
+        {
+            c.reset();
+            sink += c.run(opsPerRound);
+        }
+
+        long nanos = 0, bytes = 0;
+        for (int r = 0; r < ROUNDS; r++)
+        {
+            c.reset();
+            long a0 = allocatedBytes();
+            long t0 = System.nanoTime();
+            sink += c.run(opsPerRound);
+            nanos += System.nanoTime() - t0;
+            bytes += allocatedBytes() - a0;
+        }
+        long ops = (long) ROUNDS * opsPerRound;
+        System.out.printf("%-44s %12.1f %12.1f%n", name, (double) nanos / ops, (double) bytes / ops);
+    }
+
+    private static Vehicle[] cars(int n)
+    {
+        Vehicle[] cars = new Vehicle[n];
+        for (int i = 0; i < n; i++)
+            cars[i] = new Vehicle("KA" + i, "", VehicleType.CAR);
+        return cars;
+    }
+
+    // parks into an empty lot until every CAR bay is taken
+    static class FillCase implements Case
+    {
+        private final int[] size;
+        private final Vehicle[] cars;
+        private ParkingLot lot;
+
+        FillCase(int[] size, Vehicle[] cars)
+        {
+            this.size = size;
+            this.cars = cars;
+        }
+
+        public void reset()
+        {
+            lot = new ParkingLot("NITHYA", size[0], size[1]);
+        }
+
+        public long run(int n)
+        {
+            long acc = 0;
+            for (int i = 0; i < n; i++)
+                acc += lot.tryPark(cars[i]).getSlotIdx();
+            return acc;
+        }
+    }
+
+    // frees every CAR bay of a full lot, in parking order
+    static class DrainCase implements Case
+    {
+        private final int[] size;
+        private final Vehicle[] cars;
+        private String[] ids;
+        private ParkingLot lot;
+
+        DrainCase(int[] size, Vehicle[] cars)
+        {
+            this.size = size;
+            this.cars = cars;
+        }
+
+        public void reset()
+        {
+            lot = new ParkingLot("NITHYA", size[0], size[1]);
+            ids = new String[cars.length - 1];
+            for (int i = 0; i < ids.length; i++)
+                ids[i] = lot.tryPark(cars[i]).getId();
+        }
+
+        public long run(int n)
+        {
+            long acc = 0;
+            for (int i = 0; i < n; i++)
+                acc += lot.checkout(ids[i]).getSlotIdx();
+            return acc;
+        }
+    }
+
+    // one arrival and one departure per operation at a fixed occupancy
+    static class TurnoverCase implements Case
+    {
+        private final Vehicle[] cars;
+        final ParkingLot lot;
+        private final ArrayDeque<String> parked = new ArrayDeque<>();
+        private int next;
+
+        TurnoverCase(int[] size, Vehicle[] cars, int occupied)
+        {
+            this(size, cars, occupied, 0);
+        }
+
+        // held CAR bays are reserved from now on before the lot fills, so
+        // they are the lowest slots and every park has to pass over them
+        TurnoverCase(int[] size, Vehicle[] cars, int occupied, int held)
+        {
+            this.cars = cars;
+            this.lot = new ParkingLot("NITHYA", size[0], size[1]);
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < held; i++)
+                lot.reserve(VehicleType.CAR, now, now + 6 * 3_600_000L);
+            for (next = 0; next < occupied; next++)
+                parked.add(lot.tryPark(cars[next]).getId());
+        }
+
+        public long run(int n)
+        {
+            long acc = 0;
+            for (int i = 0; i < n; i++)
+            {
+                Ticket t = lot.tryPark(cars[next]);
+                next = (next + 1) % cars.length;
+                parked.add(t.getId());
+                acc += lot.checkout(parked.poll()).getSlotIdx();
+            }
+            return acc;
+        }
+    }
+
+    // Parks one car and lets a randomly chosen parked car leave per
+    // operation, so departures leave holes all over the lot the way real
+    // traffic does, rather than always freeing the oldest slot. The random
+    // picks come from a fixed seed, so every strategy sees the same trace.
+    // The next car to arrive is one that has left, as a plate can only be
+    // parked once.
+    static class StrategyCase implements Case
+    {
+        final ParkingLot lot;
+        // tickets of the parked cars, and the cars waiting outside as a stack
+        private final ArrayList<Ticket> parked = new ArrayList<>();
+        private final Vehicle[] outside;
+        private int outsideCount;
+        private final int[] trace = new int[1 << 16];
+        private int step;
+
+        StrategyCase(int[] size, Vehicle[] cars, int occupied, SlotAllocationStrategy strategy)
+        {
+            this.lot = new ParkingLot("NITHYA", size[0], size[1]);
+            lot.setAllocationStrategy(strategy);
+            Random random = new Random(42);
+            for (int i = 0; i < trace.length; i++)
+                trace[i] = random.nextInt(Integer.MAX_VALUE);
+            for (int i = 0; i < occupied; i++)
+                parked.add(lot.tryPark(cars[i]));
+            outside = new Vehicle[cars.length];
+            for (int i = cars.length - 1; i >= occupied; i--)
+                outside[outsideCount++] = cars[i];
+        }
+
+        public long run(int n)
+        {
+            long acc = 0;
+            for (int i = 0; i < n; i++)
+            {
+                parked.add(lot.tryPark(outside[--outsideCount]));
+                int k = trace[step++ & (trace.length - 1)] % parked.size();
+                Ticket leaving = parked.get(k);
+                parked.set(k, parked.get(parked.size() - 1));
+                parked.remove(parked.size() - 1);
+                acc += lot.checkout(leaving.getId()).getSlotIdx();
+                outside[outsideCount++] = leaving.getVehicle();
+            }
+            return acc;
+        }
+    }
+
+    // asks for one event at a time and is slow to handle each, so its buffer
+    // stays full and the lot has to drop events for it
+    static class LaggingSubscriber implements Flow.Subscriber<SlotEvent>
+    {
+        private Flow.Subscription subscription;
+
+        public void onSubscribe(Flow.Subscription s)
+        {
+            subscription = s;
+            s.request(1);
+        }
+
+        public void onNext(SlotEvent e)
+        {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            subscription.request(1);
+        }
+
+        public void onError(Throwable t)
+        {
+        }
+
+        public void onComplete()
+        {
+        }
+    }
+
+    // takes events as fast as they come
+    static class CountingSubscriber implements Flow.Subscriber<SlotEvent>
+    {
+        long seen;
+
+        public void onSubscribe(Flow.Subscription s)
+        {
+            s.request(Long.MAX_VALUE);
+        }
+
+        public void onNext(SlotEvent e)
+        {
+            seen++;
+        }
+
+        public void onError(Throwable t)
+        {
+        }
+
+        public void onComplete()
+        {
+        }
+    }
+
+    static class AuditCase implements Case
+    {
+        private final AuditSink sink;
+        private final Ticket[] tickets;
+        private final Payment[] payments;
+        private final int gates;
+        private final ExecutorService pool;
+
+        AuditCase(AuditSink sink, Ticket[] tickets, Payment[] payments, int gates)
+        {
+            this.sink = sink;
+            this.tickets = tickets;
+            this.payments = payments;
+            this.gates = gates;
+            this.pool = gates == 1 ? null : Executors.newFixedThreadPool(gates, r -> {
+                Thread t = new Thread(r);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        public long run(int n)
+        {
+            if (pool == null)
+                return report(0, 1, n);
+            List<Future<Long>> done = new ArrayList<>();
+            for (int g = 0; g < gates; g++)
+            {
+                final int gate = g;
+                done.add(pool.submit(() -> report(gate, gates, n)));
+            }
+            long acc = 0;
+            try {
+                for (Future<Long> f : done)
+                    acc += f.get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IllegalStateException(e);
+            }
+            return acc;
+        }
+
+        private long report(int from, int step, int n)
+        {
+            for (int i = from; i < n; i += step)
+            {
+                sink.parked(tickets[i & 1023]);
+                sink.receipt(payments[i & 1023]);
+            }
+            sink.flush();
+            return n;
+        }
+    }
+
+    // parks and removes in groups through parkAll/removeAll
+    static class BatchCase implements Case
+    {
+        private final Vehicle[] cars;
+        private final ParkingLot lot;
+        private final int batch;
+
+        BatchCase(int[] size, Vehicle[] cars, int batch)
+        {
+            this.cars = cars;
+            this.lot = new ParkingLot("NITHYA", size[0], size[1]);
+            this.batch = Math.min(batch, cars.length - 1);
+        }
+
+        public long run(int n)
+        {
+            long acc = 0;
+            List<Vehicle> arrivals = Arrays.asList(cars).subList(0, batch);
+            ArrayList<ExitRequest> exits = new ArrayList<>(batch);
+            for (int done = 0; done < n; done += batch)
+            {
+                exits.clear();
+                for (BatchResult<Ticket> r : lot.parkAll(arrivals))
+                    exits.add(new ExitRequest(r.getValue().getId()));
+                acc += lot.removeAll(exits).size();
+            }
+            return acc;
+        }
+    }
+
+    // many gate threads doing park+remove against one half-full lot; ns/op
+    // is wall time divided by the operations of all gates together
+    static class ContentionCase implements Case
+    {
+        private final ParkingLot lot;
+        private final int gates;
+        private final ExecutorService pool;
+
+        ContentionCase(int[] size, int gates, int occupied)
+        {
+            this.lot = new ParkingLot("NITHYA", size[0], size[1]);
+            this.gates = gates;
+            this.pool = Executors.newFixedThreadPool(gates, r -> {
+                Thread t = new Thread(r);
+                t.setDaemon(true);
+                return t;
+            });
+            Vehicle[] filler = cars(occupied);
+            for (Vehicle v : filler)
+                lot.tryPark(v);
+        }
+
+        public long run(int n)
+        {
+            List<Future<Long>> done = new ArrayList<>();
+            for (int g = 0; g < gates; g++)
+            {
+                final int gate = g;
+                done.add(pool.submit(() -> {
+                    long acc = 0;
+                    Vehicle v = new Vehicle("G" + gate, "", VehicleType.CAR);
+                    for (int i = gate; i < n; i += gates)
+                    {
+                        Ticket t = lot.tryPark(v);
+                        if (t != null)
+                            acc += lot.checkout(t.getId()).getSlotIdx();
+                    }
+                    return acc;
+                }));
+            }
+            long acc = 0;
+            try {
+                for (Future<Long> f : done)
+                    acc += f.get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IllegalStateException(e);
+            }
+            return acc;
+        }
+    }
+
+    // one gate per lot, each parking and removing at its own nearest lot, so
+    // the lots work as independent shards
+    static class NetworkCase implements Case
+    {
+        private final ParkingNetwork network = new ParkingNetwork();
+        private final int lots;
+        private final ExecutorService pool;
+
+        NetworkCase(int lots)
+        {
+            this.lots = lots;
+            for (int i = 0; i < lots; i++)
+            {
+                network.addLot(new ParkingLot("SITE" + i, 20, 1_000), i * 10, 0);
+                network.addGate("G" + i, i * 10, 0);
+            }
+            this.pool = Executors.newFixedThreadPool(lots, r -> {
+                Thread t = new Thread(r);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        public long run(int n)
+        {
+            List<Future<Long>> done = new ArrayList<>();
+            for (int g = 0; g < lots; g++)
+            {
+                final String gate = "G" + g;
+                final int first = g;
+                done.add(pool.submit(() -> {
+                    long acc = 0;
+                    Vehicle v = new Vehicle(gate, "", VehicleType.CAR);
+                    for (int i = first; i < n; i += lots)
+                        acc += network.checkout(network.tryPark(v, gate).getId()).getSlotIdx();
+                    return acc;
+                }));
+            }
+            long acc = 0;
+            try {
+                for (Future<Long> f : done)
+                    acc += f.get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IllegalStateException(e);
+            }
+            return acc;
+        }
+    }
+
+    private static long allocatedBytes()
+    {
+        java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        if (mx instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) mx).getThreadAllocatedBytes(Thread.currentThread().getId());
+        return 0;
+    }
+}
@@ -0,0 +1,54 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Where a lot gets the time from. Stays are measured on nanoTime(), which
+// never jumps when the wall clock is set; currentTimeMillis() is for clock
+// hours, reservations and anything written to disk.
+interface ParkingClock
+{
+    long nanoTime();
+
+    long currentTimeMillis();
+
+    ParkingClock SYSTEM = new ParkingClock()
+    {
+        public long nanoTime()
+        {
+            return System.nanoTime();
+        }
+
+        public long currentTimeMillis()
+        {
+            return System.currentTimeMillis();
+        }
+    };
+}
+
+// A clock that only moves when told to, so a test or simulation can park a
+// vehicle, advance three hours and check the bill. Both readings move
+// together.
+class ManualClock implements ParkingClock
+{
+    private final long startMillis;
+    private final AtomicLong elapsedNanos = new AtomicLong();
+
+    public ManualClock(long startMillis)
+    {
+        this.startMillis = startMillis;
+    }
+
+    public void advance(long amount, TimeUnit unit)
+    {
+        elapsedNanos.addAndGet(unit.toNanos(amount));
+    }
+
+    public long nanoTime()
+    {
+        return elapsedNanos.get();
+    }
+
+    public long currentTimeMillis()
+    {
+        return startMillis + elapsedNanos.get() / 1_000_000L;
+    }
+}
@@ -0,0 +1,75 @@
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+
+// Memory a lot takes per bay, on and off the heap, for ParkingLot against
+// OffHeapParkingLot at the same size and occupancy, and how long a full
+// collection takes while each lot is alive, which is what the heap layout
+// costs the garbage collector.
+//
+// Heap use is read after several System.gc() calls, so run it with nothing
+// else in the JVM and a serial or parallel collector for steady numbers.
+// Run: java -Xmx2g ParkingFootprint [floors] [slotsPerFloor] [occupancyPercent]
+public class ParkingFootprint
+{
+    public static void main(String[] args)
+    {
+        int floors = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int slotsPerFloor = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+        int occupancy = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        long bays = (long) floors * slotsPerFloor;
+        int cars = (int) (floors * Math.max(0, slotsPerFloor - 3) * (long) occupancy / 100);
+
+        System.out.printf("%d floors x %d slots = %d bays, %d cars parked%n", floors, slotsPerFloor, bays, cars);
+        System.out.printf("%-20s %14s %14s %14s%n", "lot", "heap B/bay", "off-heap B/bay", "full GC ms");
+
+        long heap0 = usedHeap();
+        long direct0 = directMemory();
+        ParkingLot onHeap = new ParkingLot("NITHYA", floors, slotsPerFloor);
+        for (int i = 0; i < cars; i++)
+            onHeap.tryPark(new Vehicle("KA" + i, "white", VehicleType.CAR));
+        report("ParkingLot", bays, usedHeap() - heap0, directMemory() - direct0);
+        Reference.reachabilityFence(onHeap);
+        onHeap = null;
+
+        heap0 = usedHeap();
+        direct0 = directMemory();
+        OffHeapParkingLot offHeap = new OffHeapParkingLot("NITHYA", floors, slotsPerFloor);
+        for (int i = 0; i < cars; i++)
+            offHeap.tryPark(new Vehicle("KA" + i, "white", VehicleType.CAR));
+        report("OffHeapParkingLot", bays, usedHeap() - heap0, directMemory() - direct0);
+        Reference.reachabilityFence(offHeap);
+    }
+
+    private static void report(String name, long bays, long heap, long direct)
+    {
+        long t0 = System.nanoTime();
+        System.gc();
+        double gcMillis = (System.nanoTime() - t0) / 1e6;
+        System.out.printf("%-20s %14.1f %14.1f %14.1f%n", name, (double) heap / bays, (double) direct / bays, gcMillis);
+    }
+
+    private static long usedHeap()
+    {
+        Runtime rt = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // keep collecting until nothing more goes
+        for (int i = 0; i < 10; i++)
+        {
+            System.gc();
+            long now = rt.totalMemory() - rt.freeMemory();
+            if (now >= used)
+                break;
+            used = now;
+        }
+        return used;
+    }
+
+    private static long directMemory()
+    {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class))
+            if (pool.getName().equals("direct"))
+                return pool.getMemoryUsed();
+        return 0;
+    }
+}
@@ -0,0 +1,635 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Write-ahead journal of slot changes plus periodic snapshots, so a ParkingLot
+// survives a restart.
+//
+// Every park and vacate is appended as a small binary record to
+// journal-<gen>.log; a park carries the wall-clock time the stay began and a
+// vacate the time it ended. Records are buffered and a background thread
+// writes and fsyncs them in groups. When a journal grows past the snapshot threshold the
+// journal is rotated to gen+1 and the occupied slots are written to
+// snapshot-<gen+1>.bin, after which older files are deleted.
+//
+// Records set a slot to a state rather than describe a delta, so replaying a
+// record twice is harmless. That is what lets a snapshot be taken floor by
+// floor while gates keep parking: anything that changed after the rotation is
+// in the new journal and simply replays over the snapshot.
+//
+// For readers that count stays rather than restore state, the snapshot also
+// notes, per floor, how many records of the new journal were written before
+// that floor was copied. read() skips those records of the floor, so a park
+// shows up once, not once from the snapshot and again from the journal.
+class ParkingJournal implements Closeable
+{
+    static final byte END = 0;
+    // PARK records from before entry times were kept are still read
+    static final byte PARK = 1;
+    static final byte VACATE = 2;
+    static final byte PARK_AT = 3;
+    // VACATE records from before exit times were kept are still read
+    static final byte VACATE_AT = 4;
+
+    // "PKS3": records, END, then the floor count and, per floor, the journal
+    // records the snapshot already holds
+    private static final int SNAPSHOT_MAGIC = 0x504b5333;
+    // "PKS2" snapshots, without the per-floor counts, are still read
+    private static final int SNAPSHOT_MAGIC_V2 = 0x504b5332;
+    private static final long[] NOTHING_COVERED = new long[0];
+    private static final VehicleType[] TYPES = VehicleType.values();
+    private static final int BUFFER_SIZE = 1 << 20;
+    // a record keeps the plate's length in two bytes; real plates are a
+    // few dozen, so anything past this is refused rather than written
+    static final int MAX_PLATE_BYTES = 255;
+
+    // What one record says about a slot: parked by v since timeMillis, or
+    // freed at timeMillis when v is null. timeMillis is -1 for records from
+    // before those times were kept.
+    interface Visitor
+    {
+        void slot(int floorIdx, int slotIdx, Vehicle v, long timeMillis);
+    }
+
+    private final Path dir;
+    private final long flushIntervalMillis;
+    private final long snapshotThreshold;
+    private final boolean waitForDisk;
+
+    private final Object appendLock = new Object();
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private FileChannel channel;
+    private long generation;
+    private long journalBytes;
+    private long appendedSeq;
+
+    private final Object durableLock = new Object();
+    private long durableSeq;
+    private boolean flushRequested;
+
+    private ParkingLot lot;
+    private Thread flusher;
+    private volatile boolean running;
+    // the first write or fsync that failed; from then on nothing more is
+    // journaled, so the lot refuses changes it could not recover
+    private volatile IOException failure;
+
+    // Group commit every few milliseconds, snapshot every 64 MB of journal,
+    // and let park/remove return before their record reaches the disk.
+    public ParkingJournal(Path dir) throws IOException
+    {
+        this(dir, 5, 64L << 20, false);
+    }
+
+    // waitForDisk makes every park/remove wait until its record is fsynced.
+    // Concurrent callers still share one fsync per flush interval.
+    public ParkingJournal(Path dir, long flushIntervalMillis, long snapshotThreshold, boolean waitForDisk)
+            throws IOException
+    {
+        this.dir = dir;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.snapshotThreshold = snapshotThreshold;
+        this.waitForDisk = waitForDisk;
+        Files.createDirectories(dir);
+    }
+
+    // Loads the newest snapshot into the lot, replays the journals written
+    // since, checkpoints the result and starts the background writer. Called
+    // once by the ParkingLot constructor before it starts journaling.
+    void attach(ParkingLot lot) throws IOException
+    {
+        this.lot = lot;
+        generation = read(dir, lot::restore);
+        channel = openJournal(generation);
+        snapshot();
+
+        running = true;
+        flusher = new Thread(this::flushLoop, "parking-journal");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // Called by the lot while it holds the floor lock, so records for one
+    // slot reach the journal in the order the slot changed. Throws
+    // IllegalArgumentException for a plate over MAX_PLATE_BYTES, and
+    // UncheckedIOException once the journal has failed to write; either way
+    // nothing is appended.
+    void logPark(int floorIdx, int slotIdx, Vehicle v, long entryMillis)
+    {
+        byte[] plate = v.getPlate().getBytes(StandardCharsets.UTF_8);
+        if (plate.length > MAX_PLATE_BYTES)
+            throw new IllegalArgumentException("Vehicle number is too long.");
+        synchronized (appendLock)
+        {
+            checkFailure();
+            reserve(1 + 8 + 8 + 1 + 2 + plate.length);
+            buffer.put(PARK_AT).putInt(floorIdx).putInt(slotIdx).putLong(entryMillis);
+            buffer.put((byte) v.getType().ordinal());
+            buffer.putShort((short) plate.length).put(plate);
+            appendedSeq++;
+        }
+    }
+
+    void logVacate(int floorIdx, int slotIdx, long exitMillis)
+    {
+        synchronized (appendLock)
+        {
+            checkFailure();
+            reserve(1 + 8 + 8);
+            buffer.put(VACATE_AT).putInt(floorIdx).putInt(slotIdx).putLong(exitMillis);
+            appendedSeq++;
+        }
+    }
+
+    // Called by the lot after it has released its floor locks. Returns at
+    // once unless the journal was opened with waitForDisk, but throws
+    // UncheckedIOException either way once a write has failed.
+    void commit()
+    {
+        if (waitForDisk)
+            sync();
+        else
+            checkFailure();
+    }
+
+    private void checkFailure()
+    {
+        IOException e = failure;
+        if (e != null)
+            throw new UncheckedIOException("Parking data can no longer be saved", e);
+    }
+
+    // Blocks until everything appended so far is on disk.
+    public void sync()
+    {
+        long target;
+        synchronized (appendLock)
+        {
+            target = appendedSeq;
+        }
+        synchronized (durableLock)
+        {
+            while (durableSeq < target && running)
+            {
+                flushRequested = true;
+                durableLock.notifyAll();
+                try {
+                    durableLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        checkFailure();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        synchronized (durableLock)
+        {
+            running = false;
+            durableLock.notifyAll();
+        }
+        if (flusher != null)
+        {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (appendLock)
+        {
+            if (channel != null)
+            {
+                drain();
+                channel.force(false);
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+    private void flushLoop()
+    {
+        while (true)
+        {
+            synchronized (durableLock)
+            {
+                if (!running)
+                    return;
+                if (!flushRequested)
+                {
+                    try {
+                        durableLock.wait(flushIntervalMillis);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                flushRequested = false;
+            }
+
+            try {
+                long target;
+                FileChannel ch;
+                boolean rotate;
+                synchronized (appendLock)
+                {
+                    drain();
+                    target = appendedSeq;
+                    ch = channel;
+                    rotate = journalBytes >= snapshotThreshold;
+                }
+                // fsync outside appendLock so gates keep appending meanwhile
+                if (target > durableSeq)
+                    ch.force(false);
+                synchronized (durableLock)
+                {
+                    durableSeq = Math.max(durableSeq, target);
+                    durableLock.notifyAll();
+                }
+                if (rotate)
+                    snapshot();
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+        }
+    }
+
+    // Rotates to a new journal and writes the current slot state as the
+    // snapshot for that generation, then drops the files it replaces.
+    private void snapshot() throws IOException
+    {
+        long gen;
+        long rotatedSeq;
+        synchronized (appendLock)
+        {
+            drain();
+            channel.force(false);
+            channel.close();
+            generation++;
+            gen = generation;
+            channel = openJournal(gen);
+            journalBytes = 0;
+            rotatedSeq = appendedSeq;
+        }
+
+        Path tmp = dir.resolve("snapshot-" + gen + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+        {
+            ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buf.putInt(SNAPSHOT_MAGIC);
+            ArrayList<Floor> floors = lot.getFloors();
+            long[] covered = new long[floors.size()];
+            for (int f = 0; f < floors.size(); f++)
+            {
+                Floor floor = floors.get(f);
+                floor.getLock().lock();
+                try {
+                    // the floor's records are appended under its lock, so
+                    // none of them is in flight while we hold it
+                    synchronized (appendLock)
+                    {
+                        covered[f] = appendedSeq - rotatedSeq;
+                    }
+                    for (int s = 0; s < floor.size(); s++)
+                    {
+                        Ticket t = floor.getTicket(s);
+                        if (t == null)
+                            continue;
+                        // every plate here came through logPark or was read
+                        // from a record, so its length fits the short
+                        byte[] plate = t.getVehicle().getPlate().getBytes(StandardCharsets.UTF_8);
+                        if (buf.remaining() < 20 + plate.length + 1)
+                            writeFully(out, buf);
+                        buf.put(PARK_AT).putInt(f).putInt(s).putLong(lot.entryMillis(t));
+                        buf.put((byte) t.getVehicle().getType().ordinal());
+                        buf.putShort((short) plate.length).put(plate);
+                    }
+                } finally {
+                    floor.getLock().unlock();
+                }
+            }
+            buf.put(END);
+            if (buf.remaining() < 4)
+                writeFully(out, buf);
+            buf.putInt(covered.length);
+            for (long n : covered)
+            {
+                if (buf.remaining() < 8)
+                    writeFully(out, buf);
+                buf.putLong(n);
+            }
+            writeFully(out, buf);
+            out.force(false);
+        }
+        Files.move(tmp, snapshotPath(gen), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // the rename is only durable once the directory is; until then a
+        // crash could keep the old journals and lose the new snapshot
+        forceDirectory(dir);
+
+        for (long old : generations("snapshot-", ".bin"))
+            if (old < gen)
+                Files.deleteIfExists(snapshotPath(old));
+        for (long old : generations("journal-", ".log"))
+            if (old < gen)
+                Files.deleteIfExists(journalPath(old));
+    }
+
+    // Makes room for a record, writing the buffer to the channel when full.
+    private void reserve(int bytes)
+    {
+        if (buffer.remaining() < bytes)
+        {
+            try {
+                drain();
+            } catch (IOException e) {
+                fail(e);
+                throw new UncheckedIOException("Parking data can no longer be saved", e);
+            }
+        }
+    }
+
+    // Stops the flusher and wakes anyone waiting in sync(); later records
+    // are refused by checkFailure().
+    private void fail(IOException e)
+    {
+        synchronized (durableLock)
+        {
+            if (failure == null)
+                failure = e;
+            running = false;
+            durableLock.notifyAll();
+        }
+    }
+
+    // Caller holds appendLock.
+    private void drain() throws IOException
+    {
+        journalBytes += buffer.position();
+        writeFully(channel, buffer);
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf) throws IOException
+    {
+        buf.flip();
+        while (buf.hasRemaining())
+            ch.write(buf);
+        buf.clear();
+    }
+
+    // Some platforms cannot open a directory as a channel; there a rename
+    // is as durable as the file system makes it, and nothing more can be done.
+    private static void forceDirectory(Path dir) throws IOException
+    {
+        FileChannel ch;
+        try {
+            ch = FileChannel.open(dir, StandardOpenOption.READ);
+        } catch (IOException | UnsupportedOperationException e) {
+            return;
+        }
+        try (FileChannel d = ch)
+        {
+            d.force(true);
+        }
+    }
+
+    private FileChannel openJournal(long gen) throws IOException
+    {
+        return FileChannel.open(journalPath(gen), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private Path journalPath(long gen)
+    {
+        return journalPath(dir, gen);
+    }
+
+    private Path snapshotPath(long gen)
+    {
+        return snapshotPath(dir, gen);
+    }
+
+    private static Path journalPath(Path dir, long gen)
+    {
+        return dir.resolve("journal-" + gen + ".log");
+    }
+
+    private static Path snapshotPath(Path dir, long gen)
+    {
+        return dir.resolve("snapshot-" + gen + ".bin");
+    }
+
+    private long[] generations(String prefix, String suffix) throws IOException
+    {
+        return generations(dir, prefix, suffix);
+    }
+
+    // Feeds the newest complete snapshot in dir, then every journal written
+    // since it, to the visitor, record by record in the order they were
+    // written. Returns the newest generation found. Reads the files without
+    // taking them over, so it also serves tools that study a lot's history.
+    static long read(Path dir, Visitor visitor) throws IOException
+    {
+        long base = 0;
+        for (long gen : generations(dir, "snapshot-", ".bin"))
+            if (gen > base && isCompleteSnapshot(snapshotPath(dir, gen)))
+                base = gen;
+        long[] covered = NOTHING_COVERED;
+        if (base > 0)
+            covered = loadSnapshot(visitor, snapshotPath(dir, base));
+        long last = base;
+        for (long gen : generations(dir, "journal-", ".log"))
+        {
+            if (gen >= base)
+                replay(visitor, journalPath(dir, gen), gen == base ? covered : NOTHING_COVERED);
+            last = Math.max(last, gen);
+        }
+        return last;
+    }
+
+    private static long[] generations(Path dir, String prefix, String suffix) throws IOException
+    {
+        ArrayList<Long> gens = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, prefix + "*" + suffix))
+        {
+            for (Path p : files)
+            {
+                String n = p.getFileName().toString();
+                try {
+                    gens.add(Long.parseLong(n.substring(prefix.length(), n.length() - suffix.length())));
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        long[] out = new long[gens.size()];
+        for (int i = 0; i < out.length; i++)
+            out[i] = gens.get(i);
+        Arrays.sort(out);
+        return out;
+    }
+
+    // False for a snapshot that was cut short, so recovery falls back to
+    // the previous one.
+    private static boolean isCompleteSnapshot(Path file) throws IOException
+    {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            MappedByteBuffer in = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (in.remaining() < 4)
+                return false;
+            int magic = in.getInt();
+            if (magic == SNAPSHOT_MAGIC_V2)
+                return isComplete(in);
+            if (magic != SNAPSHOT_MAGIC || !isComplete(in) || in.remaining() < 4)
+                return false;
+            int floors = in.getInt();
+            return floors >= 0 && in.remaining() >= 8L * floors;
+        }
+    }
+
+    // Returns, per floor, the records of the next journal the snapshot
+    // already holds.
+    private static long[] loadSnapshot(Visitor visitor, Path file) throws IOException
+    {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            MappedByteBuffer in = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            int magic = in.getInt();
+            apply(visitor, in, NOTHING_COVERED);
+            if (magic == SNAPSHOT_MAGIC_V2)
+                return NOTHING_COVERED;
+            long[] covered = new long[in.getInt()];
+            for (int f = 0; f < covered.length; f++)
+                covered[f] = in.getLong();
+            return covered;
+        }
+    }
+
+    private static void replay(Visitor visitor, Path file, long[] covered) throws IOException
+    {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            apply(visitor, ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()), covered);
+        }
+    }
+
+    private static boolean isComplete(ByteBuffer in)
+    {
+        while (in.hasRemaining())
+        {
+            byte op = in.get();
+            if (op == END)
+                return true;
+            if (!skipRecord(op, in))
+                return false;
+        }
+        return false;
+    }
+
+    // Applies records until the END marker, the end of the data, or a record
+    // that was only partly written before a crash. The n-th record (from 0)
+    // is passed over when it is for a floor f with n < covered[f].
+    private static void apply(Visitor visitor, ByteBuffer in, long[] covered)
+    {
+        for (long n = 0; in.hasRemaining(); n++)
+        {
+            byte op = in.get();
+            if (op == END || in.remaining() < 8)
+                return;
+            int floorIdx = in.getInt();
+            int slotIdx = in.getInt();
+            boolean skip = floorIdx >= 0 && floorIdx < covered.length && n < covered[floorIdx];
+            if (op == VACATE)
+            {
+                if (!skip)
+                    visitor.slot(floorIdx, slotIdx, null, -1);
+            }
+            else if (op == VACATE_AT)
+            {
+                if (in.remaining() < 8)
+                    return;
+                long exitMillis = in.getLong();
+                if (!skip)
+                    visitor.slot(floorIdx, slotIdx, null, exitMillis);
+            }
+            else if (op == PARK || op == PARK_AT)
+            {
+                long entryMillis = -1;
+                if (op == PARK_AT)
+                {
+                    if (in.remaining() < 8)
+                        return;
+                    entryMillis = in.getLong();
+                }
+                if (!in.hasRemaining())
+                    return;
+                int type = in.get();
+                String plate = readString(in);
+                if (plate == null || type < 0 || type >= TYPES.length)
+                    return;
+                if (!skip)
+                    visitor.slot(floorIdx, slotIdx, new Vehicle(plate, "", TYPES[type]), entryMillis);
+            }
+            else
+            {
+                return;
+            }
+        }
+    }
+
+    private static boolean skipRecord(byte op, ByteBuffer in)
+    {
+        if (in.remaining() < 8)
+            return false;
+        in.position(in.position() + 8);
+        if (op == VACATE)
+            return true;
+        if (op == VACATE_AT)
+        {
+            if (in.remaining() < 8)
+                return false;
+            in.position(in.position() + 8);
+            return true;
+        }
+        if (op == PARK_AT)
+        {
+            if (in.remaining() < 8)
+                return false;
+            in.position(in.position() + 8);
+        }
+        else if (op != PARK)
+        {
+            return false;
+        }
+        if (in.remaining() < 3)
+            return false;
+        in.get();
+        int len = in.getShort() & 0xffff;
+        if (in.remaining() < len)
+            return false;
+        in.position(in.position() + len);
+        return true;
+    }
+
+    private static String readString(ByteBuffer in)
+    {
+        if (in.remaining() < 2)
+            return null;
+        int len = in.getShort() & 0xffff;
+        if (in.remaining() < len)
+            return null;
+        byte[] b = new byte[len];
+        in.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
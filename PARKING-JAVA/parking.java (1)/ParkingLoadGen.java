@@ -0,0 +1,132 @@
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Drives a ParkingServer with many simulated gates on localhost and reports
+// request latency percentiles. Each gate holds one connection, parks a
+// vehicle, asks for availability every tenth round, and removes the vehicle
+// again, one request at a time, until the run time is up.
+//
+// With no port it starts its own server on a free port with a lot big enough
+// for every gate to hold a car.
+// Run: java ParkingLoadGen [gates] [seconds] [port]
+public class ParkingLoadGen
+{
+    public static void main(String[] args) throws Exception
+    {
+        int gates = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+
+        ParkingServer own = null;
+        if (port == 0)
+        {
+            own = new ParkingServer(new ParkingLot("NITHYA", 100, gates / 50 + 10), 0);
+            own.start();
+            port = own.getPort();
+        }
+        final int serverPort = port;
+
+        long[][] latencies = new long[gates][];
+        int[] counts = new int[gates];
+        AtomicLong errors = new AtomicLong();
+        long stopAt = System.nanoTime() + seconds * 1_000_000_000L;
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService pool = ParkingServer.requestExecutor();
+        List<Future<?>> done = new ArrayList<>();
+        for (int g = 0; g < gates; g++)
+        {
+            final int gate = g;
+            done.add(pool.submit(() -> {
+                long[] mine = new long[1024];
+                int n = 0;
+                try (Socket socket = new Socket("localhost", serverPort))
+                {
+                    socket.setTcpNoDelay(true);
+                    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                    Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+                    start.await();
+                    for (int round = 0; System.nanoTime() < stopAt; round++)
+                    {
+                        String[] calls = round % 10 == 0
+                                ? new String[] {"PARK", "AVAIL", "REMOVE"}
+                                : new String[] {"PARK", "REMOVE"};
+                        String ticket = null;
+                        for (String call : calls)
+                        {
+                            String req;
+                            if (call.equals("PARK"))
+                                req = "PARK CAR GATE" + gate + "-" + round;
+                            else if (call.equals("REMOVE"))
+                                req = ticket == null ? null : "REMOVE " + ticket;
+                            else
+                                req = "AVAIL";
+                            if (req == null)
+                                continue;
+
+                            long t0 = System.nanoTime();
+                            out.write(req);
+                            out.write('\n');
+                            out.flush();
+                            String resp = in.readLine();
+                            long took = System.nanoTime() - t0;
+                            if (resp == null)
+                                throw new EOFException("server closed the connection");
+                            if (n == mine.length)
+                                mine = Arrays.copyOf(mine, n * 2);
+                            mine[n++] = took;
+
+                            if (!resp.startsWith("OK "))
+                                errors.incrementAndGet();
+                            else if (call.equals("PARK"))
+                                ticket = resp.substring(3);
+                        }
+                    }
+                } catch (IOException e) {
+                    errors.incrementAndGet();
+                }
+                latencies[gate] = mine;
+                counts[gate] = n;
+                return null;
+            }));
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> f : done)
+            f.get();
+        double elapsed = (System.nanoTime() - begin) / 1e9;
+        pool.shutdown();
+        if (own != null)
+            own.stop();
+
+        int total = 0;
+        for (int c : counts)
+            total += c;
+        long[] all = new long[total];
+        int at = 0;
+        for (int g = 0; g < gates; g++)
+        {
+            System.arraycopy(latencies[g], 0, all, at, counts[g]);
+            at += counts[g];
+        }
+        Arrays.sort(all);
+
+        System.out.println("Gates: " + gates + ", requests: " + total + ", errors: " + errors);
+        System.out.printf("Throughput: %.0f requests/s%n", total / elapsed);
+        System.out.printf("Latency p50: %.2f ms, p99: %.2f ms, p99.9: %.2f ms, max: %.2f ms%n",
+                percentile(all, 50), percentile(all, 99), percentile(all, 99.9), total == 0 ? 0 : all[total - 1] / 1e6);
+    }
+
+    private static double percentile(long[] sorted, double p)
+    {
+        if (sorted.length == 0)
+            return 0;
+        int idx = (int) Math.ceil(p / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(idx, sorted.length - 1))] / 1e6;
+    }
+}
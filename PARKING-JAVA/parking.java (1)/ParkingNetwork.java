@@ -0,0 +1,239 @@
+import java.util.*;
+
+// Many independently sized lots served as one Parkable. Each lot keeps its
+// own floors, locks and ticket registry, so gates at different sites never
+// contend and throughput grows with the number of lots.
+//
+// Arrivals are routed to the nearest lot that has a free slot for the vehicle
+// type. Every gate keeps the lots sorted by distance from it, and a lot is
+// only tried once its O(1) free counter says it has room. Exits are routed by
+// the lot name at the front of the ticket id. The lots share one plate
+// index, so a plate parked at any lot is turned away at all of them and can
+// be found from any gate.
+//
+// Add all lots and gates before the network is shared between threads.
+class ParkingNetwork implements Parkable
+{
+    private static class Site
+    {
+        final ParkingLot lot;
+        final double x;
+        final double y;
+
+        Site(ParkingLot lot, double x, double y)
+        {
+            this.lot = lot;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    private final ArrayList<Site> sites = new ArrayList<>();
+    private final HashMap<String, ParkingLot> lotsByName = new HashMap<>();
+    // per gate, the lots ordered nearest first
+    private final HashMap<String, ParkingLot[]> routes = new HashMap<>();
+    private final HashMap<String, double[]> gates = new HashMap<>();
+    private String defaultGate;
+    private AuditSink sink = new PrintStreamSink(System.out);
+    private final PlateIndex plates = new PlateIndex();
+
+    public void addLot(ParkingLot lot, double x, double y)
+    {
+        if (lot.getName().indexOf('_') >= 0)
+            throw new IllegalArgumentException("Lot names cannot contain '_': " + lot.getName());
+        if (lotsByName.putIfAbsent(lot.getName(), lot) != null)
+            throw new IllegalArgumentException("Duplicate lot name: " + lot.getName());
+        lot.setPlateIndex(plates);
+        sites.add(new Site(lot, x, y));
+        for (Map.Entry<String, double[]> g : gates.entrySet())
+            routes.put(g.getKey(), route(g.getValue()[0], g.getValue()[1]));
+    }
+
+    // The first gate added is the one used by park() and parkAll().
+    public void addGate(String gate, double x, double y)
+    {
+        gates.put(gate, new double[] {x, y});
+        routes.put(gate, route(x, y));
+        if (defaultGate == null)
+            defaultGate = gate;
+    }
+
+    public ParkingLot getLot(String name)
+    {
+        return lotsByName.get(name);
+    }
+
+    // where park() and remove() report to; set before sharing the network
+    public void setAuditSink(AuditSink sink)
+    {
+        this.sink = sink;
+    }
+
+    @Override
+    public void park(Vehicle v)
+    {
+        Ticket ticket;
+        try {
+            ticket = tryPark(v, defaultGate);
+        } catch (IllegalArgumentException e) {
+            sink.message(e.getMessage());
+            return;
+        }
+        if (ticket == null)
+            sink.message("No slot available.");
+        else
+            sink.parked(ticket);
+    }
+
+    public Ticket tryPark(Vehicle v, String gate)
+    {
+        for (ParkingLot lot : routeFor(gate))
+        {
+            if (lot.getAvailable(v.getType()) == 0)
+                continue;
+            Ticket t = lot.tryPark(v);
+            if (t != null)
+                return t;
+        }
+        return null;
+    }
+
+    @Override
+    public void remove(String ticketId)
+    {
+        Payment p;
+        try {
+            p = exit(ticketId);
+        } catch (IllegalArgumentException e) {
+            sink.message(e.getMessage());
+            return;
+        }
+        sink.receipt(p);
+    }
+
+    public Payment exit(String ticketId)
+    {
+        ParkingLot lot = lotFor(ticketId);
+        if (lot == null)
+            throw new IllegalArgumentException("Invalid Ticket ID.");
+        return lot.exit(ticketId);
+    }
+
+    public Ticket checkout(String ticketId)
+    {
+        ParkingLot lot = lotFor(ticketId);
+        if (lot == null)
+            throw new IllegalArgumentException("Invalid Ticket ID.");
+        return lot.checkout(ticketId);
+    }
+
+    // Offers the batch to the nearest lot first; whatever it could not place
+    // moves on to the next lot, so each lot sees the batch at most once.
+    @Override
+    public List<BatchResult<Ticket>> parkAll(List<Vehicle> vehicles)
+    {
+        List<BatchResult<Ticket>> results = new ArrayList<>(Collections.nCopies(vehicles.size(), null));
+        ArrayList<Integer> pending = new ArrayList<>();
+        for (int k = 0; k < vehicles.size(); k++)
+            pending.add(k);
+
+        for (ParkingLot lot : routeFor(defaultGate))
+        {
+            if (pending.isEmpty())
+                break;
+            ArrayList<Vehicle> offer = new ArrayList<>(pending.size());
+            ArrayList<Integer> offered = new ArrayList<>(pending.size());
+            for (int k : pending)
+            {
+                if (lot.getAvailable(vehicles.get(k).getType()) > 0)
+                {
+                    offer.add(vehicles.get(k));
+                    offered.add(k);
+                }
+            }
+            if (offer.isEmpty())
+                continue;
+
+            List<BatchResult<Ticket>> placed = lot.parkAll(offer);
+            for (int j = 0; j < placed.size(); j++)
+                if (!placed.get(j).isNoSpace())
+                    results.set(offered.get(j), placed.get(j));
+            pending.removeIf(k -> results.get(k) != null);
+        }
+
+        for (int k : pending)
+            results.set(k, BatchResult.noSpace());
+        return results;
+    }
+
+    @Override
+    public List<BatchResult<Payment>> removeAll(List<ExitRequest> exits)
+    {
+        List<BatchResult<Payment>> results = new ArrayList<>(Collections.nCopies(exits.size(), null));
+        HashMap<ParkingLot, ArrayList<Integer>> byLot = new HashMap<>();
+        for (int k = 0; k < exits.size(); k++)
+        {
+            ParkingLot lot = lotFor(exits.get(k).getTicketId());
+            if (lot == null)
+                results.set(k, BatchResult.failed("Invalid Ticket ID."));
+            else
+                byLot.computeIfAbsent(lot, l -> new ArrayList<>()).add(k);
+        }
+
+        for (Map.Entry<ParkingLot, ArrayList<Integer>> e : byLot.entrySet())
+        {
+            ArrayList<ExitRequest> batch = new ArrayList<>(e.getValue().size());
+            for (int k : e.getValue())
+                batch.add(exits.get(k));
+            List<BatchResult<Payment>> done = e.getKey().removeAll(batch);
+            for (int j = 0; j < done.size(); j++)
+                results.set(e.getValue().get(j), done.get(j));
+        }
+        return results;
+    }
+
+    // ticket of the vehicle with this plate at any of the lots, or null
+    public Ticket findByPlate(String plate)
+    {
+        return plates.find(plate);
+    }
+
+    public List<Ticket> findByPlatePrefix(String prefix, int limit)
+    {
+        return plates.findPrefix(prefix, limit);
+    }
+
+    // free slots for the type across all lots
+    public int getAvailable(VehicleType type)
+    {
+        int total = 0;
+        for (Site s : sites)
+            total += s.lot.getAvailable(type);
+        return total;
+    }
+
+    private ParkingLot[] routeFor(String gate)
+    {
+        ParkingLot[] route = gate == null ? null : routes.get(gate);
+        if (route == null)
+            throw new IllegalArgumentException("Unknown gate: " + gate);
+        return route;
+    }
+
+    // ticket ids are "<lot>_<floor>_<slot>" and lot names have no '_'
+    private ParkingLot lotFor(String ticketId)
+    {
+        int end = ticketId.indexOf('_');
+        return end < 0 ? null : lotsByName.get(ticketId.substring(0, end));
+    }
+
+    private ParkingLot[] route(double x, double y)
+    {
+        ArrayList<Site> byDistance = new ArrayList<>(sites);
+        byDistance.sort(Comparator.comparingDouble(s -> (s.x - x) * (s.x - x) + (s.y - y) * (s.y - y)));
+        ParkingLot[] route = new ParkingLot[byDistance.size()];
+        for (int i = 0; i < route.length; i++)
+            route[i] = byDistance.get(i).lot;
+        return route;
+    }
+}
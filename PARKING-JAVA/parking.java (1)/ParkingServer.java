@@ -0,0 +1,266 @@
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.*;
+
+// Network front end for one ParkingLot, so any number of gates and operators
+// can work against the lot at once instead of sharing the console.
+//
+// Gates keep a TCP connection open and exchange one short text line per
+// request:
+//   PARK CAR KA01AB1234   ->  OK NITHYA_1_4
+//   REMOVE NITHYA_1_4     ->  OK 60.0 3
+//   AVAIL                 ->  OK 47 8,9,10,10,10 CAR=33 BIKE=10 TRUCK=4
+//   WHERE KA01            ->  OK KA01AB1234=NITHYA_1_4 KA01CD77=NITHYA_2_1
+// (amount and hours billed for the measured stay; total free, free per
+// floor, free per vehicle type; up to ten parked plates starting with the
+// text, a whole plate first, or for text under PlateIndex.MIN_SEARCH_PREFIX
+// characters only the plate itself). Failures answer
+// "ERR <message>" with the message the console would print. A line longer
+// than MAX_LINE characters is answered "ERR Line too long." and the
+// connection closed without reading the rest, and a plate longer than
+// MAX_PLATE is refused.
+//
+// Each connection is served by its own virtual thread when the JDK has them
+// (21+); older JDKs fall back to a cached pool of daemon platform threads.
+// Run: java ParkingServer [port] [floors] [slotsPerFloor]
+public class ParkingServer
+{
+    private static final long MIN_BACKOFF_MILLIS = 10;
+    private static final long MAX_BACKOFF_MILLIS = 1_000;
+    static final int MAX_LINE = 1024;
+    static final int MAX_PLATE = 32;
+
+    private final ParkingLot lot;
+    private final ServerSocket socket;
+    private final ExecutorService executor;
+    private Thread acceptor;
+
+    public ParkingServer(ParkingLot lot, int port) throws IOException
+    {
+        this.lot = lot;
+        this.socket = new ServerSocket(port, 4096);
+        this.executor = requestExecutor();
+    }
+
+    public void start()
+    {
+        acceptor = new Thread(this::acceptLoop, "parking-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public void stop() throws IOException
+    {
+        socket.close();
+        executor.shutdownNow();
+    }
+
+    public int getPort()
+    {
+        return socket.getLocalPort();
+    }
+
+    // a virtual thread per task on JDK 21+, looked up reflectively so the
+    // server still builds and runs on older JDKs
+    static ExecutorService requestExecutor()
+    {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    // An accept that fails while the socket is open is usually the process
+    // running out of file descriptors; retrying at once would only spin, so
+    // the loop reports it and waits, longer each time it fails again, until
+    // connections close and accept succeeds.
+    private void acceptLoop()
+    {
+        long backoffMillis = 0;
+        while (!socket.isClosed())
+        {
+            Socket client;
+            try {
+                client = socket.accept();
+            } catch (IOException e) {
+                if (socket.isClosed())
+                    return; // closed by stop()
+                backoffMillis = Math.min(MAX_BACKOFF_MILLIS, Math.max(MIN_BACKOFF_MILLIS, backoffMillis * 2));
+                System.err.println("parking-server: accept failed, retrying in " + backoffMillis + " ms: " + e.getMessage());
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                continue;
+            }
+            backoffMillis = 0;
+            try {
+                client.setTcpNoDelay(true);
+                executor.execute(() -> serve(client));
+            } catch (IOException | RejectedExecutionException e) {
+                closeQuietly(client);
+                if (executor.isShutdown())
+                    return; // stopped by stop()
+            }
+        }
+    }
+
+    private static void closeQuietly(Socket client)
+    {
+        try {
+            client.close();
+        } catch (IOException e) {
+            // nothing more to do for it
+        }
+    }
+
+    private void serve(Socket client)
+    {
+        try (Socket s = client;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8)))
+        {
+            StringBuilder buf = new StringBuilder();
+            String line;
+            while ((line = readLine(in, buf)) != null)
+            {
+                if (line.length() > MAX_LINE)
+                {
+                    out.write("ERR Line too long.\n");
+                    out.flush();
+                    return;
+                }
+                out.write(handle(line.trim()));
+                out.write('\n');
+                // answer now unless the gate has already pipelined the next request
+                if (!in.ready())
+                    out.flush();
+            }
+        } catch (IOException e) {
+            // gate went away
+        }
+    }
+
+    // Reads a line ended by \n, \r or \r\n, as BufferedReader.readLine does,
+    // or returns null at the end of the stream. Gives up one character past
+    // MAX_LINE, so what comes back is then longer than MAX_LINE and the rest
+    // of the line is left unread.
+    private static String readLine(BufferedReader in, StringBuilder line) throws IOException
+    {
+        line.setLength(0);
+        int c;
+        while ((c = in.read()) >= 0)
+        {
+            if (c == '\n')
+                return line.toString();
+            if (c == '\r')
+            {
+                in.mark(1);
+                if (in.read() != '\n')
+                    in.reset();
+                return line.toString();
+            }
+            line.append((char) c);
+            if (line.length() > MAX_LINE)
+                return line.toString();
+        }
+        return line.length() > 0 ? line.toString() : null;
+    }
+
+    String handle(String line)
+    {
+        String[] parts = line.split("\\s+");
+        switch (parts[0].toUpperCase()) {
+            case "PARK":
+                return park(parts);
+            case "REMOVE":
+                return remove(parts);
+            case "AVAIL":
+                return availability();
+            case "WHERE":
+                return where(parts);
+            default:
+                return "ERR Unknown command.";
+        }
+    }
+
+    private String park(String[] parts)
+    {
+        if (parts.length != 3)
+            return "ERR Expected PARK <type> <plate>.";
+        VehicleType type;
+        try {
+            type = VehicleType.valueOf(parts[1].toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return "ERR Invalid vehicle type.";
+        }
+        if (parts[2].length() > MAX_PLATE)
+            return "ERR Vehicle number is too long.";
+
+        Ticket t;
+        try {
+            t = lot.tryPark(new Vehicle(parts[2], "", type));
+        } catch (IllegalArgumentException e) {
+            return "ERR " + e.getMessage();
+        }
+        return t == null ? "ERR No slot available." : "OK " + t.getId();
+    }
+
+    private String where(String[] parts)
+    {
+        if (parts.length != 2)
+            return "ERR Expected WHERE <plate>.";
+        List<Ticket> found = lot.searchPlates(parts[1], 10);
+        if (found.isEmpty())
+            return "ERR Vehicle not found.";
+        StringBuilder reply = new StringBuilder("OK");
+        for (Ticket t : found)
+            reply.append(' ').append(t.getVehicle().getPlate()).append('=').append(t.getId());
+        return reply.toString();
+    }
+
+    private String remove(String[] parts)
+    {
+        if (parts.length != 2)
+            return "ERR Expected REMOVE <ticket>.";
+        try {
+            Payment p = lot.exit(parts[1]);
+            return "OK " + p.getAmount() + " " + p.getHours();
+        } catch (IllegalArgumentException e) {
+            return "ERR " + e.getMessage();
+        }
+    }
+
+    private String availability()
+    {
+        Availability a = lot.getAvailability();
+        StringBuilder sb = new StringBuilder("OK ").append(a.getTotalAvailable()).append(' ');
+        for (int i = 0; i < a.getFloorCount(); i++)
+            sb.append(i == 0 ? "" : ",").append(a.getAvailable(i));
+        for (VehicleType type : VehicleType.values())
+            sb.append(' ').append(type).append('=').append(a.getAvailable(type));
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int floors = args.length > 1 ? Integer.parseInt(args[1]) : ParkingLot.totalFloors;
+        int slots = args.length > 2 ? Integer.parseInt(args[2]) : ParkingLot.totalSlots;
+
+        ParkingLot lot = new ParkingLot("NITHYA", floors, slots);
+        lot.setTariff(Tariff.configured());
+        ParkingServer server = new ParkingServer(lot, port);
+        server.start();
+        System.out.println("NITHYA Parking server listening on port " + server.getPort());
+        server.acceptor.join();
+    }
+}
@@ -0,0 +1,522 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Discrete-event simulation of a ParkingLot, for sizing a site before it is
+// built and as a benchmark of the whole engine.
+//
+// The lot runs on a ManualClock that jumps from one event to the next, so a
+// month of traffic takes seconds. A synthetic run draws the arrivals of each
+// vehicle type as a Poisson process and each stay from a log-normal
+// distribution set per type. A replay feeds a lot's journal back in, every
+// recorded park and exit at its recorded time, into a lot of any size. Either
+// way the report gives the share of arrivals turned away, how full each floor
+// was over time and what the exits were billed.
+//
+// Pending events sit in a binary heap of parallel arrays keyed on time: the
+// next arrival of each type, and the departure of every parked vehicle.
+// One simulator runs once.
+//
+// Expect on the order of a million events a second on one CPU, nearly all
+// of it the lot's own park and exit; a month of a 20,000-bay lot at 90%
+// takes about ten seconds.
+//
+// Run: java ParkingSimulator [floors] [slotsPerFloor] [days] [loadPercent]
+//      java ParkingSimulator replay <journal dir> [floors] [slotsPerFloor]
+public class ParkingSimulator
+{
+    private static final VehicleType[] TYPES = VehicleType.values();
+    private static final long NANOS_PER_MINUTE = 60_000_000_000L;
+    private static final long NANOS_PER_HOUR = 60 * NANOS_PER_MINUTE;
+
+    private final ManualClock clock;
+    private final ParkingLot lot;
+    private final long startMillis;
+    // per VehicleType ordinal
+    private final double[] arrivalsPerHour = new double[TYPES.length];
+    private final double[] dwellMedianMinutes = new double[TYPES.length];
+    private final double[] dwellSigma = new double[TYPES.length];
+
+    // pending events: a departing Ticket, or the VehicleType due to arrive
+    private long[] eventTime = new long[64];
+    private Object[] eventWhat = new Object[64];
+    private int events;
+
+    // what the report counts, from measureFrom on
+    private long measureFrom;
+    private final long[] offered = new long[TYPES.length];
+    private final long[] rejected = new long[TYPES.length];
+    private long revenuePaise;
+    private long processed;
+    // time-weighted occupancy per floor: occupied slots times nanoseconds
+    private final int[] occupied;
+    private final long[] changedAt;
+    private final double[] occupiedNanos;
+
+    // A lot of the given size whose clock starts at startMillis. Set the
+    // lot's allocation strategy through getLot() before running.
+    public ParkingSimulator(int floors, int slotsPerFloor, long startMillis)
+    {
+        this.startMillis = startMillis;
+        this.clock = new ManualClock(startMillis);
+        this.lot = new ParkingLot("SIM", floors, slotsPerFloor, clock);
+        this.occupied = new int[floors];
+        this.changedAt = new long[floors];
+        this.occupiedNanos = new double[floors];
+        dwell(VehicleType.CAR, 120, 0.8);
+        dwell(VehicleType.BIKE, 90, 0.8);
+        dwell(VehicleType.TRUCK, 240, 0.6);
+    }
+
+    public ParkingLot getLot()
+    {
+        return lot;
+    }
+
+    // Mean arrivals per hour of vehicles of the type.
+    public void arrivals(VehicleType type, double perHour)
+    {
+        arrivalsPerHour[type.ordinal()] = perHour;
+    }
+
+    // Stays of the type are log-normal: half are shorter than medianMinutes,
+    // and sigma sets the spread, 0 making every stay the median.
+    public void dwell(VehicleType type, double medianMinutes, double sigma)
+    {
+        dwellMedianMinutes[type.ordinal()] = medianMinutes;
+        dwellSigma[type.ordinal()] = sigma;
+    }
+
+    // Sets every type's arrival rate so that, with the stays set, it would
+    // keep loadPercent of its slots busy in a lot that never turned anyone
+    // away (Little's law).
+    public void offeredLoad(double loadPercent)
+    {
+        for (VehicleType type : TYPES)
+        {
+            int capacity = 0;
+            for (Floor floor : lot.getFloors())
+                capacity += floor.getCapacity(type);
+            double sigma = dwellSigma[type.ordinal()];
+            double meanHours = dwellMedianMinutes[type.ordinal()] * Math.exp(sigma * sigma / 2) / 60;
+            arrivals(type, meanHours == 0 ? 0 : loadPercent / 100 * capacity / meanHours);
+        }
+    }
+
+    // Runs warmupMillis of traffic into the empty lot, then counts what
+    // happens over the next durationMillis.
+    public SimulationReport run(long warmupMillis, long durationMillis, long seed)
+    {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        measureFrom = warmupMillis * 1_000_000L;
+        long end = measureFrom + durationMillis * 1_000_000L;
+        for (VehicleType type : TYPES)
+            if (arrivalsPerHour[type.ordinal()] > 0)
+                schedule(nextArrival(type, 0, rnd), type);
+
+        // a departed vehicle's plate is free again, so it comes back as a
+        // later arrival of its type instead of a new plate and Vehicle
+        EnumMap<VehicleType, ArrayDeque<Vehicle>> spare = new EnumMap<>(VehicleType.class);
+        for (VehicleType type : TYPES)
+            spare.put(type, new ArrayDeque<>());
+        long plates = 0;
+        long wallStart = System.nanoTime();
+        while (events > 0 && eventTime[0] <= end)
+        {
+            long now = eventTime[0];
+            Object what = poll();
+            clock.advance(now - clock.nanoTime(), TimeUnit.NANOSECONDS);
+            if (what instanceof VehicleType)
+            {
+                VehicleType type = (VehicleType) what;
+                schedule(nextArrival(type, now, rnd), type);
+                Vehicle v = spare.get(type).poll();
+                Ticket t = arrive(v != null ? v : new Vehicle("SIM" + plates++, "", type), now);
+                if (t != null)
+                    schedule(now + stay(type, rnd), t);
+            }
+            else
+            {
+                Ticket t = (Ticket) what;
+                depart(t, now);
+                spare.get(t.getVehicle().getType()).add(t.getVehicle());
+            }
+        }
+        long wallNanos = System.nanoTime() - wallStart;
+        clock.advance(end - clock.nanoTime(), TimeUnit.NANOSECONDS);
+        return report(end, wallNanos);
+    }
+
+    // Replays a recorded trace into this lot, whatever its size, from the
+    // trace's first record to its last. A vehicle the lot turns away is
+    // left out of the rest of the trace. Build the simulator with the
+    // trace's start time, so stays are billed at the hours they happened.
+    public SimulationReport replay(ParkingTrace trace)
+    {
+        // the trace's slots, as floor << 32 | slot, to the tickets issued here
+        HashMap<Long, Ticket> bySlot = new HashMap<>();
+        long now = 0;
+        long wallStart = System.nanoTime();
+        for (int i = 0; i < trace.size(); i++)
+        {
+            // records are in the order the slots changed; the clock never
+            // goes back for one whose time was read a little earlier
+            now = Math.max(now, (trace.getTimeMillis(i) - startMillis) * 1_000_000L);
+            clock.advance(now - clock.nanoTime(), TimeUnit.NANOSECONDS);
+            Vehicle v = trace.getVehicle(i);
+            // a slot that changes hands without a recorded exit frees first
+            Ticket left = v == null ? bySlot.remove(trace.getSlotKey(i)) : bySlot.get(trace.getSlotKey(i));
+            if (left != null)
+                depart(left, now);
+            if (v == null)
+                continue;
+            Ticket t = arrive(v, now);
+            if (t != null)
+                bySlot.put(trace.getSlotKey(i), t);
+            else
+                bySlot.remove(trace.getSlotKey(i));
+        }
+        return report(now, System.nanoTime() - wallStart);
+    }
+
+    private Ticket arrive(Vehicle v, long now)
+    {
+        processed++;
+        boolean counted = now >= measureFrom;
+        if (counted)
+            offered[v.getType().ordinal()]++;
+        Ticket t;
+        try {
+            t = lot.tryPark(v);
+        } catch (IllegalArgumentException e) {
+            // the same plate twice in a recorded trace
+            t = null;
+        }
+        if (t == null)
+        {
+            if (counted)
+                rejected[v.getType().ordinal()]++;
+            return null;
+        }
+        occupancyChanged(t.getFloorIdx(), 1, now);
+        return t;
+    }
+
+    private void depart(Ticket t, long now)
+    {
+        processed++;
+        Payment p = lot.exit(t.getId());
+        if (now >= measureFrom)
+            revenuePaise += Math.round(p.getAmount() * 100);
+        occupancyChanged(t.getFloorIdx(), -1, now);
+    }
+
+    private void occupancyChanged(int floorIdx, int delta, long now)
+    {
+        long from = Math.max(changedAt[floorIdx], measureFrom);
+        if (now > from)
+            occupiedNanos[floorIdx] += (double) occupied[floorIdx] * (now - from);
+        changedAt[floorIdx] = now;
+        occupied[floorIdx] += delta;
+    }
+
+    private SimulationReport report(long end, long wallNanos)
+    {
+        double[] utilisation = new double[occupied.length];
+        long span = end - measureFrom;
+        for (int f = 0; f < occupied.length; f++)
+        {
+            occupancyChanged(f, 0, end);
+            int size = lot.getFloors().get(f).size();
+            utilisation[f] = span <= 0 || size == 0 ? 0 : occupiedNanos[f] / span / size;
+        }
+        return new SimulationReport(span / 1_000_000L, processed, wallNanos,
+                offered.clone(), rejected.clone(), revenuePaise, utilisation);
+    }
+
+    private long nextArrival(VehicleType type, long now, SplittableRandom rnd)
+    {
+        double hours = -Math.log(1 - rnd.nextDouble()) / arrivalsPerHour[type.ordinal()];
+        return now + 1 + (long) (hours * NANOS_PER_HOUR);
+    }
+
+    private long stay(VehicleType type, SplittableRandom rnd)
+    {
+        double minutes = dwellMedianMinutes[type.ordinal()] * Math.exp(dwellSigma[type.ordinal()] * rnd.nextGaussian());
+        return 1 + (long) (minutes * NANOS_PER_MINUTE);
+    }
+
+    private void schedule(long time, Object what)
+    {
+        if (events == eventTime.length)
+        {
+            eventTime = Arrays.copyOf(eventTime, events * 2);
+            eventWhat = Arrays.copyOf(eventWhat, events * 2);
+        }
+        int i = events++;
+        while (i > 0 && eventTime[(i - 1) >>> 1] > time)
+        {
+            int parent = (i - 1) >>> 1;
+            eventTime[i] = eventTime[parent];
+            eventWhat[i] = eventWhat[parent];
+            i = parent;
+        }
+        eventTime[i] = time;
+        eventWhat[i] = what;
+    }
+
+    // removes and returns the earliest event
+    private Object poll()
+    {
+        Object first = eventWhat[0];
+        int n = --events;
+        long time = eventTime[n];
+        Object what = eventWhat[n];
+        eventWhat[n] = null;
+        int i = 0;
+        while (true)
+        {
+            int child = 2 * i + 1;
+            if (child >= n)
+                break;
+            if (child + 1 < n && eventTime[child + 1] < eventTime[child])
+                child++;
+            if (eventTime[child] >= time)
+                break;
+            eventTime[i] = eventTime[child];
+            eventWhat[i] = eventWhat[child];
+            i = child;
+        }
+        if (n > 0)
+        {
+            eventTime[i] = time;
+            eventWhat[i] = what;
+        }
+        return first;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length > 0 && args[0].equals("replay"))
+        {
+            if (args.length < 2)
+            {
+                System.out.println("Expected replay <journal dir> [floors] [slotsPerFloor].");
+                return;
+            }
+            ParkingTrace trace = ParkingTrace.load(Paths.get(args[1]));
+            int floors = args.length > 2 ? Integer.parseInt(args[2]) : ParkingLot.totalFloors;
+            int slotsPerFloor = args.length > 3 ? Integer.parseInt(args[3]) : ParkingLot.totalSlots;
+            System.out.printf("Replaying %d records into %d floors x %d slots%n", trace.size(), floors, slotsPerFloor);
+            new ParkingSimulator(floors, slotsPerFloor, trace.getStartMillis()).replay(trace).print();
+            return;
+        }
+
+        int floors = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int slotsPerFloor = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+        int days = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        double load = args.length > 3 ? Double.parseDouble(args[3]) : 90;
+        long midnight = LocalDate.of(2024, 1, 1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long day = TimeUnit.DAYS.toMillis(1);
+
+        ParkingSimulator sim = new ParkingSimulator(floors, slotsPerFloor, midnight);
+        sim.offeredLoad(load);
+        System.out.printf("%d floors x %d slots, %d days after a day's warm-up, %.0f%% offered load%n",
+                floors, slotsPerFloor, days, load);
+        sim.run(day, days * day, 42).print();
+    }
+}
+
+// Parks and exits read back from a ParkingJournal directory, in the order
+// they were written, for ParkingSimulator to replay. Vehicles parked at the
+// newest snapshot come first, at the times their stays began. The journal
+// only goes back to that snapshot, which a lot takes every time it opens the
+// journal, so copy the directory away before restarting a lot whose history
+// is wanted.
+class ParkingTrace
+{
+    private long[] timeMillis = new long[1024];
+    private long[] slotKey = new long[1024];
+    // null for an exit
+    private Vehicle[] vehicles = new Vehicle[1024];
+    private int size;
+    private long startMillis = Long.MAX_VALUE;
+
+    public static ParkingTrace load(Path journalDir) throws IOException
+    {
+        ParkingTrace trace = new ParkingTrace();
+        ParkingJournal.read(journalDir, trace::add);
+        if (trace.startMillis == Long.MAX_VALUE)
+            trace.startMillis = 0;
+        return trace;
+    }
+
+    // Records from before times were journaled take the time of the record
+    // before them.
+    private void add(int floorIdx, int slotIdx, Vehicle v, long time)
+    {
+        if (size == timeMillis.length)
+        {
+            timeMillis = Arrays.copyOf(timeMillis, size * 2);
+            slotKey = Arrays.copyOf(slotKey, size * 2);
+            vehicles = Arrays.copyOf(vehicles, size * 2);
+        }
+        if (time < 0)
+            time = size == 0 ? 0 : timeMillis[size - 1];
+        else
+            startMillis = Math.min(startMillis, time);
+        timeMillis[size] = time;
+        slotKey[size] = (long) floorIdx << 32 | (slotIdx & 0xFFFFFFFFL);
+        vehicles[size] = v;
+        size++;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public long getStartMillis()
+    {
+        return startMillis;
+    }
+
+    public long getTimeMillis(int i)
+    {
+        return timeMillis[i];
+    }
+
+    // the recorded floor and slot, as floor << 32 | slot
+    public long getSlotKey(int i)
+    {
+        return slotKey[i];
+    }
+
+    // the vehicle parked, or null for an exit
+    public Vehicle getVehicle(int i)
+    {
+        return vehicles[i];
+    }
+}
+
+// What a ParkingSimulator run found.
+class SimulationReport
+{
+    private static final VehicleType[] TYPES = VehicleType.values();
+
+    private long simulatedMillis;
+    private long events;
+    private long wallNanos;
+    // per VehicleType ordinal
+    private long[] offered;
+    private long[] rejected;
+    private long revenuePaise;
+    private double[] floorUtilisation;
+
+    public SimulationReport(long simulatedMillis, long events, long wallNanos, long[] offered, long[] rejected,
+                            long revenuePaise, double[] floorUtilisation)
+    {
+        this.simulatedMillis = simulatedMillis;
+        this.events = events;
+        this.wallNanos = wallNanos;
+        this.offered = offered;
+        this.rejected = rejected;
+        this.revenuePaise = revenuePaise;
+        this.floorUtilisation = floorUtilisation;
+    }
+
+    public long getSimulatedMillis()
+    {
+        return simulatedMillis;
+    }
+
+    // arrivals and departures processed, warm-up included
+    public long getEvents()
+    {
+        return events;
+    }
+
+    public double getEventsPerSecond()
+    {
+        return wallNanos == 0 ? 0 : events * 1e9 / wallNanos;
+    }
+
+    public long getOffered(VehicleType type)
+    {
+        return offered[type.ordinal()];
+    }
+
+    public long getRejected(VehicleType type)
+    {
+        return rejected[type.ordinal()];
+    }
+
+    // share of all arrivals turned away, from 0 to 1
+    public double getRejectionRate()
+    {
+        long in = 0;
+        long out = 0;
+        for (int t = 0; t < offered.length; t++)
+        {
+            in += offered[t];
+            out += rejected[t];
+        }
+        return in == 0 ? 0 : (double) out / in;
+    }
+
+    // time-averaged share of the floor's slots in use, from 0 to 1;
+    // floorIdx is zero-based
+    public double getUtilisation(int floorIdx)
+    {
+        return floorUtilisation[floorIdx];
+    }
+
+    public double getRevenue()
+    {
+        return revenuePaise / 100.0;
+    }
+
+    public void print()
+    {
+        System.out.printf("Simulated %.1f days: %d events in %.2f s, %.2f M events/s%n",
+                simulatedMillis / 86_400_000.0, events, wallNanos / 1e9, getEventsPerSecond() / 1e6);
+        for (VehicleType type : TYPES)
+        {
+            long in = offered[type.ordinal()];
+            long out = rejected[type.ordinal()];
+            System.out.printf("%s: %d arrived, %d turned away (%.2f%%)%n", type, in, out, in == 0 ? 0 : 100.0 * out / in);
+        }
+        System.out.printf("Turned away overall: %.2f%%%n", 100 * getRejectionRate());
+        System.out.println("Revenue: Rs. " + getRevenue());
+
+        double sum = 0;
+        double min = Double.MAX_VALUE;
+        double max = 0;
+        for (double u : floorUtilisation)
+        {
+            sum += u;
+            min = Math.min(min, u);
+            max = Math.max(max, u);
+        }
+        if (floorUtilisation.length == 0)
+            return;
+        System.out.printf("Floor utilisation: mean %.1f%%, lowest %.1f%%, highest %.1f%%%n",
+                100 * sum / floorUtilisation.length, 100 * min, 100 * max);
+        if (floorUtilisation.length <= 20)
+        {
+            StringBuilder line = new StringBuilder();
+            for (int f = 0; f < floorUtilisation.length; f++)
+                line.append(f == 0 ? "" : ", ").append("Floor ").append(f + 1).append(' ')
+                        .append(String.format("%.1f%%", 100 * floorUtilisation[f]));
+            System.out.println(line);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Hammers one ParkingLot from many gate threads at once and checks that a
+// slot is never handed to two vehicles at the same time.
+// Run: java ParkingStress [gates] [operationsPerGate]
+public class ParkingStress
+{
+    public static void main(String[] args) throws Exception
+    {
+        int gates = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() * 2;
+        int ops = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+
+        ParkingLot lot = new ParkingLot("NITHYA");
+        VehicleType[] types = VehicleType.values();
+        // ticket id -> plate currently holding that slot
+        ConcurrentHashMap<String, String> held = new ConcurrentHashMap<>();
+        AtomicInteger doubleAssigned = new AtomicInteger();
+        AtomicInteger parked = new AtomicInteger();
+        AtomicInteger removed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(gates);
+        List<Future<?>> results = new ArrayList<>();
+        for (int g = 0; g < gates; g++)
+        {
+            final int gate = g;
+            results.add(pool.submit(() -> {
+                Random rnd = new Random(gate);
+                ArrayDeque<Ticket> mine = new ArrayDeque<>();
+                start.await();
+                for (int i = 0; i < ops; i++)
+                {
+                    if (mine.isEmpty() || rnd.nextBoolean())
+                    {
+                        Vehicle v = new Vehicle("G" + gate + "-" + i, "white", types[rnd.nextInt(types.length)]);
+                        Ticket t = lot.tryPark(v);
+                        if (t == null)
+                            continue;
+                        if (held.putIfAbsent(t.getId(), v.getPlate()) != null)
+                            doubleAssigned.incrementAndGet();
+                        mine.add(t);
+                        parked.incrementAndGet();
+                    }
+                    else
+                    {
+                        Ticket t = mine.poll();
+                        // drop our claim first so a gate that reuses the slot
+                        // right after checkout is not reported as a clash
+                        held.remove(t.getId());
+                        lot.checkout(t.getId());
+                        removed.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> f : results)
+            f.get();
+        long elapsed = System.nanoTime() - begin;
+        pool.shutdown();
+
+        int occupied = 0;
+        for (Floor floor : lot.getFloors())
+            for (int s = 0; s < floor.size(); s++)
+                if (floor.isOccupied(s))
+                    occupied++;
+
+        System.out.println("Gates: " + gates + ", operations: " + (long) gates * ops);
+        System.out.println("Parked: " + parked + ", removed: " + removed + ", still parked: " + occupied);
+        System.out.printf("Throughput: %.0f ops/s%n", (double) gates * ops / (elapsed / 1e9));
+        Availability a = lot.getAvailability();
+        int occupiedByType = 0;
+        for (VehicleType type : types)
+            occupiedByType += a.getOccupied(type);
+        if (doubleAssigned.get() != 0 || occupied != held.size() || occupied != parked.get() - removed.get()
+                || a.getTotalOccupied() != occupied || occupiedByType != occupied)
+        {
+            System.out.println("FAILED: double assigned " + doubleAssigned + ", tracked " + held.size()
+                    + ", counted " + a.getTotalOccupied() + "/" + occupiedByType);
+            System.exit(1);
+        }
+        System.out.println("OK: no slot was double assigned and the counters match.");
+    }
+}
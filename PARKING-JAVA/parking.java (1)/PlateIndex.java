@@ -0,0 +1,320 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.StampedLock;
+
+// Parked vehicles by number plate, for "where is my car" at the pay station
+// and for turning away a plate that is already inside.
+//
+// Plates are compared ignoring case, spaces and punctuation, so "KA 01 AB
+// 1234" and "ka01ab1234" are the same car. They are kept in a trie over the
+// 36 letters and digits, which answers the start of a plate, and a hash map
+// from each whole plate to its trie node, so parking, leaving and looking up
+// a whole plate cost one hash lookup rather than a walk down the trie.
+//
+// A gate claims the plate before it looks for a slot, binds the ticket once
+// it has one, and the lot unbinds it when the car leaves. A plate's state is
+// one field of its trie node, moved from empty to claimed by compare-and-set,
+// so two gates can never both let in the same plate. Gates change the trie
+// at the same time without waiting on each other; a child node is added with
+// compare-and-set too. A plate's node outlives its car, so a returning car
+// finds it in the map; emptied branches are cut away once there have been
+// twice as many exits as parked cars, under the write side of a StampedLock
+// that gates adding nodes otherwise share.
+class PlateIndex
+{
+    private static final int ALPHABET = 36;
+    // plates this long or longer are kept in a hash map instead, so the trie
+    // and its recursion stay shallow whatever a client sends
+    private static final int MAX_TRIE_KEY = 32;
+    private static final int MIN_PRUNE_AT = 1024;
+    // a customer's search lists other plates only from this many
+    // characters on, so a letter or two cannot page through the lot
+    static final int MIN_SEARCH_PREFIX = 4;
+    // held while the claiming gate looks for a slot
+    private static final Ticket PENDING = new Ticket("", null, -1, -1, 0);
+
+    // Most nodes are the last character of a plate, so a node gets its
+    // child array with its first child, and the ticket is a plain field
+    // swapped through an updater rather than another object per node.
+    private static final class Node
+    {
+        volatile AtomicReferenceArray<Node> children;
+        volatile Ticket ticket;
+
+        Node child(int c)
+        {
+            AtomicReferenceArray<Node> kids = children;
+            return kids == null ? null : kids.get(c);
+        }
+
+        // the child for c, added if there is none yet
+        Node addChild(int c)
+        {
+            AtomicReferenceArray<Node> kids = children;
+            if (kids == null)
+            {
+                CHILDREN.compareAndSet(this, null, new AtomicReferenceArray<Node>(ALPHABET));
+                kids = children;
+            }
+            Node child = kids.get(c);
+            if (child == null)
+            {
+                Node fresh = new Node();
+                child = kids.compareAndSet(c, null, fresh) ? fresh : kids.get(c);
+            }
+            return child;
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Node, AtomicReferenceArray> CHILDREN =
+            AtomicReferenceFieldUpdater.newUpdater(Node.class, AtomicReferenceArray.class, "children");
+    private static final AtomicReferenceFieldUpdater<Node, Ticket> TICKET =
+            AtomicReferenceFieldUpdater.newUpdater(Node.class, Ticket.class, "ticket");
+
+    private final Node root = new Node();
+    private final ConcurrentHashMap<String, Node> nodes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Ticket> longPlates = new ConcurrentHashMap<>();
+    private final StampedLock pruning = new StampedLock();
+    // exits since the last prune, which bounds the emptied nodes
+    private final AtomicInteger exits = new AtomicInteger();
+    private volatile int pruneAt = MIN_PRUNE_AT;
+
+    // Upper case letters and digits only; the plate itself when it is
+    // already in that form.
+    static String normalize(String plate)
+    {
+        if (plate == null)
+            return "";
+        int i = 0;
+        while (i < plate.length() && index(plate.charAt(i)) >= 0)
+            i++;
+        if (i == plate.length())
+            return plate;
+
+        StringBuilder key = new StringBuilder(plate.length());
+        key.append(plate, 0, i);
+        for (; i < plate.length(); i++)
+        {
+            char c = Character.toUpperCase(plate.charAt(i));
+            if (index(c) >= 0)
+                key.append(c);
+        }
+        return key.toString();
+    }
+
+    // False when the plate is already parked or being parked. A plate with
+    // no letters or digits cannot be told apart from others and is let
+    // through.
+    public boolean claim(String key)
+    {
+        if (key.isEmpty())
+            return true;
+        if (key.length() >= MAX_TRIE_KEY)
+            return longPlates.putIfAbsent(key, PENDING) == null;
+
+        long stamp = pruning.readLock();
+        try {
+            return TICKET.compareAndSet(node(key), null, PENDING);
+        } finally {
+            pruning.unlockRead(stamp);
+        }
+    }
+
+    // Gives up a claim that did not end in a ticket.
+    public void unclaim(String key)
+    {
+        unbind(key, PENDING);
+    }
+
+    // Records the ticket for the plate; claimed by this gate, or being
+    // restored from the journal.
+    public void bind(String key, Ticket t)
+    {
+        if (key.isEmpty())
+            return;
+        if (key.length() >= MAX_TRIE_KEY)
+        {
+            longPlates.put(key, t);
+            return;
+        }
+
+        // a claimed node is never pruned, so binding it needs no lock
+        Node n = nodes.get(key);
+        if (n != null && n.ticket == PENDING)
+        {
+            n.ticket = t;
+            return;
+        }
+        long stamp = pruning.readLock();
+        try {
+            node(key).ticket = t;
+        } finally {
+            pruning.unlockRead(stamp);
+        }
+    }
+
+    // Drops the ticket, unless the plate has since been bound to another.
+    public void unbind(String key, Ticket t)
+    {
+        if (key.isEmpty())
+            return;
+        if (key.length() >= MAX_TRIE_KEY)
+        {
+            longPlates.remove(key, t);
+            return;
+        }
+
+        // a node holding a ticket is never pruned, so this needs no lock
+        Node n = nodes.get(key);
+        if (n != null && TICKET.compareAndSet(n, t, null) && exits.incrementAndGet() >= pruneAt)
+            prune();
+    }
+
+    // the ticket of the parked vehicle with this plate, or null
+    public Ticket find(String plate)
+    {
+        String key = normalize(plate);
+        Ticket t;
+        if (key.isEmpty())
+            return null;
+        if (key.length() >= MAX_TRIE_KEY)
+        {
+            t = longPlates.get(key);
+        }
+        else
+        {
+            Node n = nodes.get(key);
+            t = n == null ? null : n.ticket;
+        }
+        return t == PENDING ? null : t;
+    }
+
+    // Up to limit parked vehicles whose plate starts with prefix, in plate
+    // order. Plates too long for the trie are only found whole.
+    public List<Ticket> findPrefix(String prefix, int limit)
+    {
+        String key = normalize(prefix);
+        List<Ticket> found = new ArrayList<>();
+        if (key.length() >= MAX_TRIE_KEY)
+        {
+            Ticket t = find(key);
+            if (t != null && limit > 0)
+                found.add(t);
+            return found;
+        }
+
+        Node n = root;
+        for (int i = 0; i < key.length() && n != null; i++)
+            n = n.child(index(key.charAt(i)));
+        if (n != null)
+            collect(n, found, limit);
+        return found;
+    }
+
+    // What a customer may look up: up to limit parked vehicles whose plate
+    // starts with text when it has at least MIN_SEARCH_PREFIX letters and
+    // digits, otherwise only the vehicle with exactly that plate.
+    public List<Ticket> search(String text, int limit)
+    {
+        String key = normalize(text);
+        if (key.length() >= MIN_SEARCH_PREFIX)
+            return findPrefix(key, limit);
+        List<Ticket> found = new ArrayList<>();
+        Ticket t = find(key);
+        if (t != null && limit > 0)
+            found.add(t);
+        return found;
+    }
+
+    // The node for a whole plate, added to the trie along with any missing
+    // parents the first time. Caller holds the read side of the pruning lock.
+    private Node node(String key)
+    {
+        Node n = nodes.get(key);
+        if (n != null)
+            return n;
+        n = root;
+        for (int i = 0; i < key.length(); i++)
+            n = n.addChild(index(key.charAt(i)));
+        nodes.putIfAbsent(key, n);
+        return n;
+    }
+
+    private static void collect(Node n, List<Ticket> found, int limit)
+    {
+        Ticket t = n.ticket;
+        if (t != null && t != PENDING && found.size() < limit)
+            found.add(t);
+        AtomicReferenceArray<Node> kids = n.children;
+        for (int c = 0; kids != null && c < ALPHABET && found.size() < limit; c++)
+        {
+            Node child = kids.get(c);
+            if (child != null)
+                collect(child, found, limit);
+        }
+    }
+
+    // Cuts every branch with no ticket left in it, and forgets the plates
+    // that were in them. Costs a walk of the trie, so it waits until there
+    // have been twice as many exits as parked cars; that keeps the trie
+    // within a few times its live size and the pruning cost per exit
+    // constant.
+    private void prune()
+    {
+        long stamp = pruning.writeLock();
+        try {
+            if (exits.get() < pruneAt)
+                return;
+            int live = prune(root, new char[MAX_TRIE_KEY], 0);
+            exits.set(0);
+            pruneAt = Math.max(MIN_PRUNE_AT, 2 * live);
+        } finally {
+            pruning.unlockWrite(stamp);
+        }
+    }
+
+    // Tickets at or below n, the node for the plate in path[0, depth).
+    // Children with none are unlinked.
+    private int prune(Node n, char[] path, int depth)
+    {
+        int live = n.ticket != null ? 1 : 0;
+        AtomicReferenceArray<Node> kids = n.children;
+        if (kids == null)
+            return live;
+        int left = 0;
+        for (int c = 0; c < ALPHABET; c++)
+        {
+            Node child = kids.get(c);
+            if (child == null)
+                continue;
+            path[depth] = (char) (c < 10 ? '0' + c : 'A' + c - 10);
+            int below = prune(child, path, depth + 1);
+            if (below == 0)
+            {
+                kids.set(c, null);
+                nodes.remove(new String(path, 0, depth + 1), child);
+            }
+            else
+                left++;
+            live += below;
+        }
+        if (left == 0)
+            n.children = null;
+        return live;
+    }
+
+    // digits sort before letters, as in ASCII
+    private static int index(char c)
+    {
+        if (c >= '0' && c <= '9')
+            return c - '0';
+        if (c >= 'A' && c <= 'Z')
+            return c - 'A' + 10;
+        return -1;
+    }
+}
@@ -0,0 +1,231 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Checks the plate index behind findByPlate(), findByPlatePrefix() and the
+// double-park check: lookups against a sorted map of the same plates, the
+// customer search that needs a few characters before it lists others, a
+// parked plate turned away however it is written, plates let go on exit,
+// gates racing on a few hundred plates, and a network of lots sharing one
+// index.
+// Run: java PlateIndexCheck [gates] [operationsPerGate]
+public class PlateIndexCheck
+{
+    private static int failures;
+
+    public static void main(String[] args) throws Exception
+    {
+        int gates = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int ops = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+
+        lookups();
+        rejections();
+        racing(gates, ops);
+        network();
+        if (failures > 0)
+        {
+            System.out.println("FAILED: " + failures + " plate lookup(s) wrong.");
+            System.exit(1);
+        }
+        System.out.println("OK: every plate lookup matches the parked vehicles.");
+    }
+
+    // random plates in and out, then every lookup against a TreeMap of the
+    // plates, written without spaces and in capitals
+    private static void lookups()
+    {
+        ParkingLot lot = new ParkingLot("L", 10, 1000);
+        TreeMap<String, Ticket> parked = new TreeMap<>();
+        Random rnd = new Random(17);
+        String[] states = {"KA", "KL", "MH", "TN"};
+        for (int i = 0; i < 3000; i++)
+        {
+            String plate = states[rnd.nextInt(states.length)] + " " + rnd.nextInt(100) + " "
+                    + (char) ('A' + rnd.nextInt(3)) + " " + rnd.nextInt(10_000);
+            String key = plate.replace(" ", "");
+            if (parked.containsKey(key))
+            {
+                lot.exit(parked.remove(key).getId());
+                continue;
+            }
+            Ticket t = lot.tryPark(new Vehicle(i % 2 == 0 ? plate : plate.toLowerCase(), "", VehicleType.CAR));
+            if (t != null)
+                parked.put(key, t);
+        }
+
+        for (Map.Entry<String, Ticket> e : parked.entrySet())
+            if (lot.findByPlate(e.getKey()) != e.getValue())
+                fail("findByPlate(" + e.getKey() + ")");
+        check("findByPlate, not parked", lot.findByPlate("ZZ99Z9999") == null);
+
+        String[] prefixes = {"", "K", "KA", "ka 1", "MH9", "TN 42 B", "Q"};
+        for (String prefix : prefixes)
+        {
+            String key = prefix.replace(" ", "").toUpperCase();
+            for (int limit : new int[] {0, 1, 10, 5000})
+            {
+                List<Ticket> want = new ArrayList<>();
+                for (Ticket p : parked.tailMap(key).values())
+                {
+                    if (want.size() == limit || !PlateIndex.normalize(p.getVehicle().getPlate()).startsWith(key))
+                        break;
+                    want.add(p);
+                }
+                if (!lot.findByPlatePrefix(prefix, limit).equals(want))
+                    fail("findByPlatePrefix(\"" + prefix + "\", " + limit + ")");
+            }
+            // a customer's search is the same from MIN_SEARCH_PREFIX on, and
+            // below it only the exact plate, which none of these is
+            List<Ticket> want = key.length() >= PlateIndex.MIN_SEARCH_PREFIX
+                    ? lot.findByPlatePrefix(prefix, 10) : Collections.emptyList();
+            if (!lot.searchPlates(prefix, 10).equals(want))
+                fail("searchPlates(\"" + prefix + "\", 10)");
+        }
+        check("every parked plate listed", lot.findByPlatePrefix("", Integer.MAX_VALUE).size() == lot.getOccupied());
+
+        // too long for the trie, so only found whole
+        String longPlate = "TEMPORARY REGISTRATION 2024 0000 1111 2222";
+        Ticket t = lot.tryPark(new Vehicle(longPlate, "", VehicleType.CAR));
+        check("findByPlate, long plate with punctuation", t != null
+                && lot.findByPlate("temporary-registration-2024-0000-1111-2222") == t);
+        check("findByPlatePrefix, whole long plate", lot.findByPlatePrefix(longPlate, 5).equals(Collections.singletonList(t)));
+        rejected("long plate again", () -> lot.tryPark(new Vehicle(longPlate.toLowerCase(), "", VehicleType.CAR)));
+        lot.exit(t.getId());
+        check("long plate let go on exit", lot.findByPlate(longPlate) == null);
+    }
+
+    private static void rejections()
+    {
+        ParkingLot lot = new ParkingLot("R", 2, 10);
+        Ticket t = lot.tryPark(new Vehicle("KA 01 AB 1234", "red", VehicleType.CAR));
+        rejected("same plate written another way", () -> lot.tryPark(new Vehicle("ka01-ab-1234", "", VehicleType.BIKE)));
+
+        List<BatchResult<Ticket>> batch = lot.parkAll(Arrays.asList(
+                new Vehicle("Z1", "", VehicleType.CAR),
+                new Vehicle("z 1", "", VehicleType.CAR),
+                new Vehicle("KA01AB1234", "", VehicleType.CAR)));
+        check("parkAll, first of a plate", batch.get(0).isOk());
+        check("parkAll, same plate again in the batch", !batch.get(1).isOk()
+                && "Vehicle is already parked.".equals(batch.get(1).getError()));
+        check("parkAll, plate already parked", !batch.get(2).isOk()
+                && "Vehicle is already parked.".equals(batch.get(2).getError()));
+        check("search by a short whole plate", lot.searchPlates("z-1", 10).equals(Collections.singletonList(batch.get(0).getValue())));
+        check("search by too short a prefix", lot.searchPlates("K", 10).isEmpty() && lot.searchPlates("ka0", 10).isEmpty());
+        check("search by a long enough prefix", lot.searchPlates("ka 01", 10).equals(Collections.singletonList(t)));
+
+        lot.exit(t.getId());
+        check("plate let go on exit", lot.findByPlate("KA01AB1234") == null);
+        Ticket back = lot.tryPark(new Vehicle("KA01AB1234", "", VehicleType.CAR));
+        check("plate parks again after exit", back != null && lot.findByPlate("ka 01 ab 1234") == back);
+
+        lot.removeAll(Arrays.asList(new ExitRequest(back.getId()), new ExitRequest(batch.get(0).getValue().getId())));
+        check("plates let go on removeAll", lot.findByPlate("KA01AB1234") == null && lot.findByPlate("Z1") == null);
+
+        // a plate claimed for a full lot is let go again
+        ParkingLot full = new ParkingLot("F", 1, 3);
+        check("full lot turns the truck away", full.tryPark(new Vehicle("T1", "", VehicleType.TRUCK)) != null
+                && full.tryPark(new Vehicle("T2", "", VehicleType.TRUCK)) == null);
+        check("turned away plate not held", full.findByPlate("T2") == null
+                && full.findByPlatePrefix("T", 10).size() == 1);
+    }
+
+    // Gates park and leave with a few hundred plates between them, so the
+    // same plate often reaches two gates at once; at most one may hold it.
+    private static void racing(int gates, int ops) throws Exception
+    {
+        ParkingLot lot = new ParkingLot("B", 10, 1000);
+        ConcurrentHashMap<String, Ticket> held = new ConcurrentHashMap<>();
+        AtomicInteger doubleParked = new AtomicInteger();
+        AtomicInteger turnedAway = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(gates);
+        List<Future<?>> results = new ArrayList<>();
+        for (int g = 0; g < gates; g++)
+        {
+            final int gate = g;
+            results.add(pool.submit(() -> {
+                Random rnd = new Random(gate);
+                ArrayDeque<Ticket> mine = new ArrayDeque<>();
+                for (int i = 0; i < ops; i++)
+                {
+                    if (mine.isEmpty() || rnd.nextBoolean())
+                    {
+                        Ticket t;
+                        try {
+                            t = lot.tryPark(new Vehicle("P" + rnd.nextInt(300), "", VehicleType.CAR));
+                        } catch (IllegalArgumentException e) {
+                            turnedAway.incrementAndGet();
+                            continue;
+                        }
+                        if (held.putIfAbsent(t.getVehicle().getPlate(), t) != null)
+                            doubleParked.incrementAndGet();
+                        mine.add(t);
+                    }
+                    else
+                    {
+                        Ticket t = mine.poll();
+                        held.remove(t.getVehicle().getPlate());
+                        lot.checkout(t.getId());
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : results)
+            f.get();
+        pool.shutdown();
+
+        System.out.println("Gates: " + gates + ", operations: " + (long) gates * ops
+                + ", turned away as parked: " + turnedAway + ", still parked: " + held.size());
+        check("no plate parked twice at once", doubleParked.get() == 0);
+        check("index holds the parked plates", lot.findByPlatePrefix("", Integer.MAX_VALUE).size() == held.size()
+                && lot.getOccupied() == held.size());
+        for (Map.Entry<String, Ticket> e : held.entrySet())
+            if (lot.findByPlate(e.getKey()) != e.getValue())
+                fail("findByPlate(" + e.getKey() + ") after the race");
+
+        // many plates that come and go once, so emptied branches are cut away
+        for (int i = 0; i < 50_000; i++)
+            lot.checkout(lot.tryPark(new Vehicle("Q" + i, "", VehicleType.CAR)).getId());
+        check("plates gone after churn", lot.findByPlatePrefix("Q", 10).isEmpty());
+        check("racing plates kept through churn", lot.findByPlatePrefix("P", Integer.MAX_VALUE).size() == held.size());
+    }
+
+    private static void network()
+    {
+        ParkingNetwork net = new ParkingNetwork();
+        net.addLot(new ParkingLot("A", 1, 4), 0, 0);
+        net.addLot(new ParkingLot("B", 1, 10), 5, 0);
+        net.addGate("g", 0, 0);
+        Ticket first = net.tryPark(new Vehicle("N1", "", VehicleType.CAR), "g");
+        Ticket second = net.tryPark(new Vehicle("N2", "", VehicleType.CAR), "g");
+        check("network fills the near lot, then the next", first.getId().startsWith("A_") && second.getId().startsWith("B_"));
+        rejected("plate parked at another lot", () -> net.tryPark(new Vehicle("n 2", "", VehicleType.CAR), "g"));
+        check("network finds plates in every lot", net.findByPlate("n1") == first && net.findByPlate("N2") == second
+                && net.findByPlatePrefix("N", 10).size() == 2);
+        net.checkout(second.getId());
+        check("network lets the plate go on exit", net.findByPlate("N2") == null);
+    }
+
+    private static void rejected(String what, Runnable action)
+    {
+        try {
+            action.run();
+            fail(what + ": not rejected");
+        } catch (IllegalArgumentException e) {
+            check(what + ": " + e.getMessage(), "Vehicle is already parked.".equals(e.getMessage()));
+        }
+    }
+
+    private static void check(String what, boolean ok)
+    {
+        if (!ok)
+            fail(what);
+    }
+
+    private static void fail(String what)
+    {
+        if (failures < 10)
+            System.out.println("FAILED: " + what);
+        failures++;
+    }
+}
@@ -0,0 +1,115 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+// Checks the history ParkingJournal.read() gives tools like the simulator.
+// Gates park and exit while a tiny snapshot threshold makes the journal
+// rotate under them; the records read back must park each vehicle once and
+// only free slots that are taken, and a ParkingSimulator replay of them must
+// end with the same vehicles parked as the lot itself.
+// Run: java ReplayCheck [runs] [gates] [operationsPerGate]
+public class ReplayCheck
+{
+    private static int failures;
+
+    public static void main(String[] args) throws Exception
+    {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int gates = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int ops = args.length > 2 ? Integer.parseInt(args[2]) : 3000;
+
+        long records = 0;
+        for (int run = 0; run < runs; run++)
+        {
+            Path dir = Files.createTempDirectory("replay-check");
+            try {
+                records += run(dir, run, gates, ops);
+            } finally {
+                delete(dir);
+            }
+        }
+        System.out.println("Runs: " + runs + ", records read: " + records);
+        if (failures > 0)
+        {
+            System.out.println("FAILED: " + failures + " problem(s) in the replayed history.");
+            System.exit(1);
+        }
+        System.out.println("OK: every park was read once and the replay ended where the lot did.");
+    }
+
+    private static int run(Path dir, int run, int gates, int ops) throws Exception
+    {
+        ParkingJournal journal = new ParkingJournal(dir, 1, 200, false);
+        ParkingLot lot = new ParkingLot("N", journal);
+        Thread[] threads = new Thread[gates];
+        for (int g = 0; g < gates; g++)
+        {
+            final int gate = g;
+            threads[g] = new Thread(() -> {
+                ArrayDeque<Ticket> mine = new ArrayDeque<>();
+                for (int i = 0; i < ops; i++)
+                {
+                    Ticket t = lot.tryPark(new Vehicle("G" + gate + "-" + i, "", VehicleType.CAR));
+                    if (t != null)
+                        mine.add(t);
+                    if (mine.size() > 3)
+                        lot.checkout(mine.poll().getId());
+                }
+            });
+            threads[g].start();
+        }
+        for (Thread t : threads)
+            t.join();
+        journal.close();
+
+        // floor << 32 | slot -> plate parked there
+        Map<Long, String> slots = new HashMap<>();
+        Set<String> seen = new HashSet<>();
+        ParkingJournal.read(dir, (floorIdx, slotIdx, v, time) -> {
+            long key = (long) floorIdx << 32 | slotIdx;
+            if (v == null)
+            {
+                if (slots.remove(key) == null)
+                    fail("run " + run + ": slot " + (floorIdx + 1) + "_" + (slotIdx + 1) + " freed while free");
+            }
+            else
+            {
+                if (!seen.add(v.getPlate()))
+                    fail("run " + run + ": " + v.getPlate() + " parked twice");
+                if (slots.put(key, v.getPlate()) != null)
+                    fail("run " + run + ": slot " + (floorIdx + 1) + "_" + (slotIdx + 1) + " taken while taken");
+            }
+        });
+
+        ParkingTrace trace = ParkingTrace.load(dir);
+        ParkingSimulator sim = new ParkingSimulator(ParkingLot.totalFloors, ParkingLot.totalSlots, trace.getStartMillis());
+        SimulationReport report = sim.replay(trace);
+        if (report.getRejectionRate() != 0)
+            fail("run " + run + ": the replay turned vehicles away");
+        ParkingLot replayed = sim.getLot();
+        if (replayed.getOccupied() != lot.getOccupied() || slots.size() != lot.getOccupied())
+            fail("run " + run + ": " + lot.getOccupied() + " parked, " + slots.size() + " in the records, "
+                    + replayed.getOccupied() + " after the replay");
+        for (String plate : slots.values())
+            if (lot.findByPlate(plate) == null || replayed.findByPlate(plate) == null)
+                fail("run " + run + ": " + plate + " is not parked in both lots");
+        return trace.size();
+    }
+
+    private static void fail(String message)
+    {
+        if (failures < 10)
+            System.out.println("FAILED: " + message);
+        failures++;
+    }
+
+    private static void delete(Path dir) throws IOException
+    {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir))
+        {
+            for (Path p : files)
+                Files.delete(p);
+        }
+        Files.delete(dir);
+    }
+}
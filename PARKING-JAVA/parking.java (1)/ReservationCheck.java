@@ -0,0 +1,144 @@
+import java.util.concurrent.TimeUnit;
+
+// Checks reservations on a manual clock: windows book the lowest open slot
+// and free up again at their end or on cancel, walk-ins are kept out of
+// slots held for the next hour, and parkReserved() only lets the holder in
+// during the window.
+// Run: java ReservationCheck
+public class ReservationCheck
+{
+    private static final long HOUR = 3_600_000L;
+    // a whole 15-minute bucket, so windows are not widened
+    private static final long START = 1_700_006_400_000L;
+
+    private static int failures;
+
+    public static void main(String[] args)
+    {
+        booking();
+        holding();
+        arriving();
+        if (failures > 0)
+        {
+            System.out.println("FAILED: " + failures + " reservation check(s).");
+            System.exit(1);
+        }
+        System.out.println("OK: reservations book, hold and release the right slots.");
+    }
+
+    // 3 floors of 10 slots: 7 car slots per floor, from slot 4
+    private static void booking()
+    {
+        ParkingLot lot = new ParkingLot("N", 3, 10, new ManualClock(START));
+        long from = START + 24 * HOUR;
+        long to = from + 3 * HOUR;
+
+        expect("first open car slot", lot.findReservable(VehicleType.CAR, from, to), "N_1_4");
+        Reservation first = null;
+        for (int k = 0; k < 21; k++)
+        {
+            Reservation r = lot.reserve(VehicleType.CAR, from, to);
+            if (r == null)
+            {
+                fail("reservation " + k + " found no slot");
+                return;
+            }
+            expect("reservation " + k, "N_" + (r.getFloorIdx() + 1) + "_" + (r.getSlotIdx() + 1),
+                    "N_" + (k / 7 + 1) + "_" + (k % 7 + 4));
+            if (k == 0)
+                first = r;
+        }
+        expect("overlapping window when fully booked", lot.reserve(VehicleType.CAR, from + HOUR, from + 2 * HOUR), null);
+        expect("window starting as the others end", lot.findReservable(VehicleType.CAR, to, to + HOUR), "N_1_4");
+        expect("bikes are not booked by car windows", lot.findReservable(VehicleType.BIKE, from, to), "N_1_2");
+        expect("walk-in a day early", lot.tryPark(new Vehicle("W1", "", VehicleType.CAR)).getId(), "N_1_4");
+
+        String id = first.getId();
+        lot.cancelReservation(id);
+        expect("slot open again after cancel", lot.findReservable(VehicleType.CAR, from, to), "N_1_4");
+        rejected("second cancel", () -> lot.cancelReservation(id), "Reservation not found.");
+        rejected("window in the past", () -> lot.reserve(VehicleType.CAR, START - HOUR, START),
+                "Reservation cannot start in the past.");
+        rejected("window past seven days", () -> lot.reserve(VehicleType.CAR, START, START + 8 * 24 * HOUR),
+                "Reservations can only be made up to 7 days ahead.");
+        rejected("window ending before it starts", () -> lot.reserve(VehicleType.CAR, to, from),
+                "Reservation must end after it starts.");
+    }
+
+    // a slot reserved within the hold period is kept from walk-ins, but still
+    // counts as free
+    private static void holding()
+    {
+        ParkingLot lot = new ParkingLot("Q", 1, 10, new ManualClock(START));
+        for (int k = 0; k < 7; k++)
+            lot.reserve(VehicleType.CAR, START + 30 * 60_000L, START + HOUR);
+        expect("walk-in with every car slot held", lot.tryPark(new Vehicle("W", "", VehicleType.CAR)), null);
+        check("held slots still free", lot.getAvailable(VehicleType.CAR), 7);
+
+        ParkingLot later = new ParkingLot("L", 1, 10, new ManualClock(START));
+        for (int k = 0; k < 7; k++)
+            later.reserve(VehicleType.CAR, START + 3 * HOUR, START + 4 * HOUR);
+        Ticket t = later.tryPark(new Vehicle("W", "", VehicleType.CAR));
+        expect("walk-in with the slots booked hours ahead", t == null ? null : t.getId(), "L_1_4");
+        expect("window starting now needs a slot free now", later.reserve(VehicleType.CAR, START, START + HOUR),
+                "L_1_5");
+    }
+
+    private static void arriving()
+    {
+        ManualClock clock = new ManualClock(START);
+        ParkingLot lot = new ParkingLot("M", 1, 10, clock);
+        Reservation r = lot.reserve(VehicleType.CAR, START + 3 * HOUR, START + 4 * HOUR);
+        Reservation gone = lot.reserve(VehicleType.CAR, START + HOUR, START + 2 * HOUR);
+
+        rejected("holder two hours early", () -> lot.parkReserved(r.getId(), new Vehicle("R", "", VehicleType.CAR)),
+                "Too early for this reservation.");
+        rejected("holder in a bike", () -> lot.parkReserved(r.getId(), new Vehicle("R", "", VehicleType.BIKE)),
+                "Reservation is for a CAR.");
+        clock.advance(150, TimeUnit.MINUTES);
+        rejected("holder after the window", () -> lot.parkReserved(gone.getId(), new Vehicle("G", "", VehicleType.CAR)),
+                "Reservation not found.");
+
+        Ticket t = lot.parkReserved(r.getId(), new Vehicle("R", "", VehicleType.CAR));
+        expect("holder within the hold period", t.getId(), "M_1_4");
+        rejected("reservation used twice", () -> lot.parkReserved(r.getId(), new Vehicle("S", "", VehicleType.CAR)),
+                "Reservation not found.");
+        check("car slots left", lot.getAvailable(VehicleType.CAR), 6);
+        lot.exit(t.getId());
+        expect("slot open after the holder leaves", lot.findReservable(VehicleType.CAR, START + 3 * HOUR, START + 4 * HOUR),
+                "M_1_4");
+    }
+
+    private static void rejected(String what, Runnable action, String message)
+    {
+        try {
+            action.run();
+            fail(what + ": not rejected");
+        } catch (IllegalArgumentException e) {
+            expect(what, e.getMessage(), message);
+        }
+    }
+
+    private static void expect(String what, Object got, Object want)
+    {
+        if (got instanceof Reservation)
+        {
+            Reservation r = (Reservation) got;
+            got = r.getId().substring(0, r.getId().indexOf('_')) + "_" + (r.getFloorIdx() + 1) + "_" + (r.getSlotIdx() + 1);
+        }
+        if (got == null ? want != null : !got.equals(want))
+            fail(what + ": got " + got + ", expected " + want);
+    }
+
+    private static void check(String what, long got, long want)
+    {
+        if (got != want)
+            fail(what + ": got " + got + ", expected " + want);
+    }
+
+    private static void fail(String message)
+    {
+        System.out.println("FAILED: " + message);
+        failures++;
+    }
+}
@@ -0,0 +1,151 @@
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Decides where a lot puts a walk-in vehicle: which floor the search for a
+// free slot starts from, and which free slot to take once a floor is locked.
+// The lot walks on from the start floor to the top and wraps round to the
+// floors below it, skipping floors its bitmap says are full, so a strategy
+// only has to name a good first choice.
+//
+// Every choice comes from an index kept up to date as slots change hands,
+// never from looking at every floor or slot. One instance serves one lot;
+// calls come from the gate threads.
+interface SlotAllocationStrategy
+{
+    // floor to try first for the type
+    int startFloor(VehicleType type);
+
+    // Free slot to claim on a floor, or -1 if none suits. Caller holds the
+    // floor lock.
+    default int pickSlot(Floor floor, VehicleType type)
+    {
+        return floor.findSlot(type);
+    }
+
+    // Called once with the lot's floors, before the lot is shared.
+    default void attach(List<Floor> floors)
+    {
+    }
+
+    // A floor's free slots for the type are now 'free'. Caller holds that
+    // floor's lock.
+    default void freeCountChanged(int floorIdx, VehicleType type, int free)
+    {
+    }
+}
+
+// Lowest free slot on the lowest floor with space; what the lot has always
+// done. Fills the ground floor first.
+class FirstFitStrategy implements SlotAllocationStrategy
+{
+    public int startFloor(VehicleType type)
+    {
+        return 0;
+    }
+}
+
+// Each vehicle starts looking one floor above the last, whatever its type,
+// which spreads the gates' lock traffic over all the floors.
+class RoundRobinStrategy implements SlotAllocationStrategy
+{
+    private final AtomicInteger next = new AtomicInteger();
+    private int floorCount = 1;
+
+    public void attach(List<Floor> floors)
+    {
+        floorCount = Math.max(1, floors.size());
+    }
+
+    public int startFloor(VehicleType type)
+    {
+        return Math.floorMod(next.getAndIncrement(), floorCount);
+    }
+}
+
+// The floor with the most free slots for the type, the lower one on a tie.
+//
+// Per type, a tournament tree over the floors in an AtomicLongArray: leaf
+// n + f holds floor f's key and each inner node the larger of its children,
+// so the root is the answer and a change costs log(floors) steps up from
+// its leaf. A key packs the free count above the inverted floor number, so
+// comparing keys compares counts first and prefers lower floors on a tie.
+//
+// Gates on different floors update the tree at once without a lock: each
+// inner node is refreshed with compare-and-set, retried once when another
+// gate got there first, after which that gate's refresh has seen our leaf.
+// The tree steers, it does not decide, so a refresh lost to a rare race only
+// costs a less even spread until the next change under that node.
+class LeastLoadedStrategy implements SlotAllocationStrategy
+{
+    private AtomicLongArray[] trees;
+    private int leaves;
+
+    public void attach(List<Floor> floors)
+    {
+        leaves = Integer.highestOneBit(Math.max(1, floors.size() - 1)) << 1;
+        trees = new AtomicLongArray[VehicleType.values().length];
+        for (VehicleType type : VehicleType.values())
+        {
+            AtomicLongArray tree = new AtomicLongArray(2 * leaves);
+            trees[type.ordinal()] = tree;
+            for (int f = 0; f < floors.size(); f++)
+                tree.set(leaves + f, key(f, floors.get(f).getFreeCount(type)));
+            for (int n = leaves - 1; n >= 1; n--)
+                tree.set(n, Math.max(tree.get(2 * n), tree.get(2 * n + 1)));
+        }
+    }
+
+    public int startFloor(VehicleType type)
+    {
+        long root = trees[type.ordinal()].get(1);
+        return root >>> 32 == 0 ? 0 : (int) (0xFFFFFFFFL - (root & 0xFFFFFFFFL));
+    }
+
+    public void freeCountChanged(int floorIdx, VehicleType type, int free)
+    {
+        AtomicLongArray tree = trees[type.ordinal()];
+        int n = leaves + floorIdx;
+        tree.set(n, key(floorIdx, free));
+        for (n >>>= 1; n >= 1; n >>>= 1)
+        {
+            for (int attempt = 0; attempt < 2; attempt++)
+            {
+                long old = tree.get(n);
+                long max = Math.max(tree.get(2 * n), tree.get(2 * n + 1));
+                if (old == max || tree.compareAndSet(n, old, max))
+                    break;
+            }
+        }
+    }
+
+    private static long key(int floorIdx, int free)
+    {
+        return (long) free << 32 | (0xFFFFFFFFL - floorIdx);
+    }
+}
+
+// Fills the floors from the ground up, and on each floor takes the free slot
+// closest to the exit, found by searching the floor's bitmap outward from
+// the exit's slot a word at a time.
+class NearestExitStrategy implements SlotAllocationStrategy
+{
+    private final int exitSlot;
+
+    // exitSlot is the slot number, counting from 0, the exit is beside on
+    // every floor
+    public NearestExitStrategy(int exitSlot)
+    {
+        this.exitSlot = exitSlot;
+    }
+
+    public int startFloor(VehicleType type)
+    {
+        return 0;
+    }
+
+    public int pickSlot(Floor floor, VehicleType type)
+    {
+        return floor.findSlotNear(type, exitSlot);
+    }
+}
@@ -0,0 +1,134 @@
+import java.util.Arrays;
+
+// Reservations on one floor, kept as a ring of 15-minute time buckets that
+// covers the next seven days. A bucket holds a bitmap of the slots reserved
+// at any time inside it, 64 slots per word like Floor's free bitmaps, plus
+// how many slots of each vehicle type that is. Buckets are allocated the
+// first time a reservation touches them, so a floor nobody books costs
+// nothing.
+//
+// Reservations are booked in whole buckets, which makes the bitmaps exact:
+// a slot's bit is clear in every bucket of a window exactly when no
+// reservation on it overlaps the window. Whether a slot is free for a window
+// is then an OR of the window's bucket words, and a bucket's count tells
+// whether a floor has any room at all without looking at its slots.
+//
+// Not thread-safe; guarded by the owning floor's lock.
+class SlotCalendar
+{
+    static final long BUCKET_MILLIS = 15 * 60_000L;
+    static final int HORIZON_BUCKETS = 7 * 24 * 4;
+    // walk-in vehicles are kept out of slots reserved from now until this
+    // much later
+    static final long HOLD_MILLIS = 60 * 60_000L;
+    // buckets that cover the hold from anywhere inside the current one
+    static final int HOLD_BUCKETS = (int) (HOLD_MILLIS / BUCKET_MILLIS) + 1;
+
+    private static final int TYPES = VehicleType.values().length;
+
+    private final int words;
+    // the bucket number each ring entry currently stands for; an entry left
+    // over from an earlier bucket reads as empty
+    private final long[] bucketOf = new long[HORIZON_BUCKETS];
+    private final long[][] reserved = new long[HORIZON_BUCKETS][];
+    private final int[][] countByType = new int[HORIZON_BUCKETS][];
+    // reservations booked and not yet released, and the bucket the last of them ends in
+    private int active;
+    private long lastEndBucket = Long.MIN_VALUE;
+
+    public SlotCalendar(int slots)
+    {
+        words = (slots + 63) / 64;
+        Arrays.fill(bucketOf, -1);
+    }
+
+    static long bucket(long millis)
+    {
+        return Math.floorDiv(millis, BUCKET_MILLIS);
+    }
+
+    // first bucket that starts at or after millis
+    static long bucketAfter(long millis)
+    {
+        return Math.floorDiv(millis + BUCKET_MILLIS - 1, BUCKET_MILLIS);
+    }
+
+    public boolean isEmpty()
+    {
+        return active == 0;
+    }
+
+    // true while some reservation still ends after the given bucket starts
+    public boolean hasReservations(long fromBucket)
+    {
+        return active > 0 && lastEndBucket > fromBucket;
+    }
+
+    // slots of one 64-slot word reserved anywhere in [fromBucket, toBucket)
+    public long reservedWord(int w, long fromBucket, long toBucket)
+    {
+        long word = 0;
+        for (long b = fromBucket; b < toBucket; b++)
+        {
+            int idx = (int) (b % HORIZON_BUCKETS);
+            if (bucketOf[idx] == b && reserved[idx] != null)
+                word |= reserved[idx][w];
+        }
+        return word;
+    }
+
+    // most slots of the type reserved in any one bucket of [fromBucket, toBucket)
+    public int maxReserved(int type, long fromBucket, long toBucket)
+    {
+        int max = 0;
+        for (long b = fromBucket; b < toBucket; b++)
+        {
+            int idx = (int) (b % HORIZON_BUCKETS);
+            if (bucketOf[idx] == b && countByType[idx] != null)
+                max = Math.max(max, countByType[idx][type]);
+        }
+        return max;
+    }
+
+    // The caller has checked the slot is unreserved for the window.
+    public void book(int slotIdx, int type, long fromBucket, long toBucket)
+    {
+        for (long b = fromBucket; b < toBucket; b++)
+        {
+            int idx = (int) (b % HORIZON_BUCKETS);
+            if (bucketOf[idx] != b)
+            {
+                bucketOf[idx] = b;
+                if (reserved[idx] == null)
+                {
+                    reserved[idx] = new long[words];
+                    countByType[idx] = new int[TYPES];
+                }
+                else
+                {
+                    Arrays.fill(reserved[idx], 0);
+                    Arrays.fill(countByType[idx], 0);
+                }
+            }
+            reserved[idx][slotIdx >>> 6] |= 1L << slotIdx;
+            countByType[idx][type]++;
+        }
+        active++;
+        lastEndBucket = Math.max(lastEndBucket, toBucket);
+    }
+
+    // Undoes book(); buckets that have since been reused are left alone.
+    public void release(int slotIdx, int type, long fromBucket, long toBucket)
+    {
+        for (long b = fromBucket; b < toBucket; b++)
+        {
+            int idx = (int) (b % HORIZON_BUCKETS);
+            if (bucketOf[idx] == b)
+            {
+                reserved[idx][slotIdx >>> 6] &= ~(1L << slotIdx);
+                countByType[idx][type]--;
+            }
+        }
+        active--;
+    }
+}
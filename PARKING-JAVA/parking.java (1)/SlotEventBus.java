@@ -0,0 +1,222 @@
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Flow publisher of SlotEvents with a bounded buffer per subscriber.
+//
+// publish() is called from the gate threads and never waits: the event goes
+// into each subscriber's buffer, or is dropped for that subscriber if the
+// buffer is full. A subscriber receives events on a background thread, only
+// as many as it has asked for with request(n), so a slow subscriber holds back
+// nobody but itself.
+//
+// Unlike SubmissionPublisher, a full buffer costs two volatile reads: no lock,
+// no wake-up of the consumer, and the event is not even built unless some
+// subscriber has room for it. That keeps a lagging subscriber off the gates'
+// hot path.
+class SlotEventBus implements Flow.Publisher<SlotEvent>
+{
+    private final CopyOnWriteArrayList<Sub> subs = new CopyOnWriteArrayList<>();
+    private final ExecutorService executor;
+    private final int bufferSize;
+    private final LongAdder dropped = new LongAdder();
+    private final ParkingClock clock;
+
+    // bufferSize is rounded up to a power of two
+    public SlotEventBus(int bufferSize, ParkingClock clock)
+    {
+        this.clock = clock;
+        this.bufferSize = Integer.highestOneBit(Math.max(1, bufferSize - 1)) << 1;
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "slot-events");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super SlotEvent> subscriber)
+    {
+        Sub s = new Sub(subscriber);
+        subs.add(s);
+        subscriber.onSubscribe(s);
+    }
+
+    public boolean hasSubscribers()
+    {
+        return !subs.isEmpty();
+    }
+
+    // The event is built once, and only if some subscriber has room for it.
+    public void publish(Ticket t, boolean parked)
+    {
+        SlotEvent e = null;
+        for (Sub s : subs)
+        {
+            if (s.isFull())
+            {
+                dropped.increment();
+                continue;
+            }
+            if (e == null)
+                e = new SlotEvent(t.getId(), t.getFloorIdx(), t.getSlotIdx(),
+                        t.getVehicle().getType(), parked, clock.currentTimeMillis());
+            if (!s.offer(e))
+                dropped.increment();
+        }
+    }
+
+    // events thrown away because a subscriber's buffer was full
+    public long getDropped()
+    {
+        return dropped.sum();
+    }
+
+    // Completes every subscriber once it has drained its buffer.
+    public void close()
+    {
+        for (Sub s : subs)
+            s.complete();
+        subs.clear();
+        executor.shutdown();
+    }
+
+    private class Sub implements Flow.Subscription, Runnable
+    {
+        private final Flow.Subscriber<? super SlotEvent> subscriber;
+        // ring of bufferSize slots; gates claim a slot by moving tail, the
+        // drain frees it by moving head
+        private final AtomicReferenceArray<SlotEvent> buffer = new AtomicReferenceArray<>(bufferSize);
+        private final AtomicLong tail = new AtomicLong();
+        private volatile long head;
+        private final AtomicLong demand = new AtomicLong();
+        // non-zero while a drain is scheduled or running; counts missed signals
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile boolean completed;
+        private volatile Throwable error;
+
+        Sub(Flow.Subscriber<? super SlotEvent> subscriber)
+        {
+            this.subscriber = subscriber;
+        }
+
+        boolean isFull()
+        {
+            return tail.get() - head >= bufferSize;
+        }
+
+        boolean offer(SlotEvent e)
+        {
+            long at;
+            do {
+                at = tail.get();
+                if (cancelled || at - head >= bufferSize)
+                    return false;
+            } while (!tail.compareAndSet(at, at + 1));
+            buffer.lazySet((int) at & (bufferSize - 1), e);
+            signal();
+            return true;
+        }
+
+        // null when empty, or when the gate that claimed the next slot has
+        // not stored into it yet; its signal() will run the drain again
+        private SlotEvent poll()
+        {
+            int idx = (int) head & (bufferSize - 1);
+            SlotEvent e = buffer.get(idx);
+            if (e != null)
+            {
+                buffer.lazySet(idx, null);
+                head = head + 1;
+            }
+            return e;
+        }
+
+        void complete()
+        {
+            completed = true;
+            signal();
+        }
+
+        @Override
+        public void request(long n)
+        {
+            if (n <= 0)
+            {
+                error = new IllegalArgumentException("request must be positive: " + n);
+                signal();
+                return;
+            }
+            demand.getAndUpdate(d -> d + n < 0 ? Long.MAX_VALUE : d + n);
+            signal();
+        }
+
+        @Override
+        public void cancel()
+        {
+            cancelled = true;
+            subs.remove(this);
+        }
+
+        private void signal()
+        {
+            if (wip.getAndIncrement() == 0)
+            {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    wip.set(0);
+                }
+            }
+        }
+
+        // Delivers what demand allows, one drain at a time per subscriber.
+        @Override
+        public void run()
+        {
+            int missed = 1;
+            while (true)
+            {
+                if (error != null && !cancelled)
+                {
+                    cancel();
+                    subscriber.onError(error);
+                    return;
+                }
+
+                long sent = 0;
+                long want = demand.get();
+                while (sent < want && !cancelled)
+                {
+                    SlotEvent e = poll();
+                    if (e == null)
+                        break;
+                    try {
+                        subscriber.onNext(e);
+                    } catch (Throwable t) {
+                        cancel();
+                        subscriber.onError(t);
+                        return;
+                    }
+                    sent++;
+                }
+                if (sent > 0 && want != Long.MAX_VALUE)
+                    demand.addAndGet(-sent);
+
+                if (completed && tail.get() == head && !cancelled)
+                {
+                    cancelled = true;
+                    subscriber.onComplete();
+                    return;
+                }
+
+                missed = wip.addAndGet(-missed);
+                if (missed == 0)
+                    return;
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+// Parking prices, precomputed so that working out a fee is a few array reads
+// and no allocation.
+//
+// A stay is charged by the hour, rounded up to at least one hour, and split
+// into 24-hour days counted from entry. Within the stay:
+//   - the first hour costs 'first', later hours cost 'hourly', and 'tiers'
+//     can raise or lower the hourly price from a given hour of the stay
+//     onwards (tiers only reach into the first day; later days use the last
+//     tier's price),
+//   - every hour is scaled by the time-of-day percentage of the clock hour it
+//     falls in,
+//   - each 24-hour day is capped at 'dailyCap'.
+//
+// Amounts are held in paise so the tables stay exact.
+//
+// Config file (java.util.Properties), one block per vehicle type:
+//   CAR.first=40
+//   CAR.hourly=10
+//   CAR.tiers=4:15,8:20      hours 5-8 cost 15, hours 9+ cost 20
+//   CAR.dailyCap=300
+//   timeOfDay=8-10:150,17-19:150,22-6:50   clock hours [from, to) and percent
+class Tariff
+{
+    private static final int HOURS_PER_DAY = 24;
+    private static final int TYPES = VehicleType.values().length;
+
+    private static final Tariff STANDARD = standardTariff();
+
+    // cumulative price of the first n hours of a day, flattened as
+    // [(type * 24 + startHour) * 25 + n]; firstDay has the tier prices,
+    // laterDay the price of every day after the first
+    private final long[] firstDay;
+    private final long[] laterDay;
+    private final long[] dailyCap;
+
+    private Tariff(long[] first, long[] hourly, int[][] tierFrom, long[][] tierPrice,
+                   long[] dailyCap, int[] percentByHour)
+    {
+        this.dailyCap = dailyCap;
+        this.firstDay = new long[TYPES * HOURS_PER_DAY * (HOURS_PER_DAY + 1)];
+        this.laterDay = new long[firstDay.length];
+
+        for (int type = 0; type < TYPES; type++)
+        {
+            // price of each hour of the first day, before time-of-day scaling
+            long[] hourPrice = new long[HOURS_PER_DAY];
+            hourPrice[0] = first[type];
+            for (int h = 1; h < HOURS_PER_DAY; h++)
+            {
+                hourPrice[h] = hourly[type];
+                for (int t = 0; t < tierFrom[type].length; t++)
+                    if (h >= tierFrom[type][t])
+                        hourPrice[h] = tierPrice[type][t];
+            }
+            long laterPrice = tierPrice[type].length == 0 ? hourly[type] : tierPrice[type][tierPrice[type].length - 1];
+
+            for (int start = 0; start < HOURS_PER_DAY; start++)
+            {
+                int base = index(type, start, 0);
+                for (int n = 1; n <= HOURS_PER_DAY; n++)
+                {
+                    int pct = percentByHour[(start + n - 1) % HOURS_PER_DAY];
+                    firstDay[base + n] = firstDay[base + n - 1] + hourPrice[n - 1] * pct / 100;
+                    laterDay[base + n] = laterDay[base + n - 1] + laterPrice * pct / 100;
+                }
+            }
+        }
+    }
+
+    // 40/20/60 for the first hour and 10 for every hour after, at any time of day
+    public static Tariff standard()
+    {
+        return STANDARD;
+    }
+
+    // The tariff named by -Dparking.tariff=<file>, or the standard one when
+    // the property is not set.
+    public static Tariff configured() throws IOException
+    {
+        String file = System.getProperty("parking.tariff");
+        return file == null || file.isEmpty() ? STANDARD : load(Paths.get(file));
+    }
+
+    public static Tariff load(Path file) throws IOException
+    {
+        Properties p = new Properties();
+        try (Reader in = Files.newBufferedReader(file))
+        {
+            p.load(in);
+        }
+
+        long[] first = new long[TYPES];
+        long[] hourly = new long[TYPES];
+        int[][] tierFrom = new int[TYPES][];
+        long[][] tierPrice = new long[TYPES][];
+        long[] cap = new long[TYPES];
+        for (VehicleType type : VehicleType.values())
+        {
+            int t = type.ordinal();
+            first[t] = paise(p.getProperty(type + ".first", Integer.toString(standardFirstHour(type))));
+            hourly[t] = paise(p.getProperty(type + ".hourly", "10"));
+            String capValue = p.getProperty(type + ".dailyCap");
+            cap[t] = capValue == null ? Long.MAX_VALUE : paise(capValue);
+
+            String[] tiers = p.getProperty(type + ".tiers", "").trim().isEmpty()
+                    ? new String[0] : p.getProperty(type + ".tiers").split(",");
+            tierFrom[t] = new int[tiers.length];
+            tierPrice[t] = new long[tiers.length];
+            for (int i = 0; i < tiers.length; i++)
+            {
+                String[] kv = tiers[i].trim().split(":");
+                if (kv.length != 2)
+                    throw new IllegalArgumentException("Bad tier for " + type + ": " + tiers[i]);
+                tierFrom[t][i] = Integer.parseInt(kv[0].trim());
+                tierPrice[t][i] = paise(kv[1]);
+                if (i > 0 && tierFrom[t][i] <= tierFrom[t][i - 1])
+                    throw new IllegalArgumentException("Tiers for " + type + " must be in increasing hour order");
+            }
+        }
+
+        int[] percent = flatDay();
+        String tod = p.getProperty("timeOfDay", "").trim();
+        if (!tod.isEmpty())
+        {
+            for (String band : tod.split(","))
+            {
+                String[] kv = band.trim().split(":");
+                String[] range = kv[0].split("-");
+                if (kv.length != 2 || range.length != 2)
+                    throw new IllegalArgumentException("Bad time-of-day band: " + band);
+                int from = Integer.parseInt(range[0].trim());
+                int to = Integer.parseInt(range[1].trim());
+                int pct = Integer.parseInt(kv[1].trim());
+                if (from < 0 || from > 23 || to < 0 || to > 24)
+                    throw new IllegalArgumentException("Bad time-of-day band: " + band);
+                // a band like 22-6 wraps past midnight; from == to is the whole day
+                int h = from;
+                do {
+                    percent[h] = pct;
+                    h = (h + 1) % HOURS_PER_DAY;
+                } while (h != to % HOURS_PER_DAY);
+            }
+        }
+        return new Tariff(first, hourly, tierFrom, tierPrice, cap, percent);
+    }
+
+    // Fee in paise for a stay of 'hours' hours that began in clock hour
+    // startHour (0-23). Does not allocate.
+    public long fee(VehicleType type, int startHour, int hours)
+    {
+        int t = type.ordinal();
+        int start = Math.floorMod(startHour, HOURS_PER_DAY);
+        if (hours < 1)
+            hours = 1;
+
+        long cap = dailyCap[t];
+        int base = index(t, start, 0);
+        if (hours <= HOURS_PER_DAY)
+            return Math.min(cap, firstDay[base + hours]);
+
+        int rest = hours - HOURS_PER_DAY;
+        long total = Math.min(cap, firstDay[base + HOURS_PER_DAY]);
+        total += (rest / HOURS_PER_DAY) * Math.min(cap, laterDay[base + HOURS_PER_DAY]);
+        total += Math.min(cap, laterDay[base + rest % HOURS_PER_DAY]);
+        return total;
+    }
+
+    private static Tariff standardTariff()
+    {
+        long[] first = new long[TYPES];
+        long[] hourly = new long[TYPES];
+        long[] cap = new long[TYPES];
+        for (VehicleType type : VehicleType.values())
+        {
+            first[type.ordinal()] = standardFirstHour(type) * 100L;
+            hourly[type.ordinal()] = 1000;
+            cap[type.ordinal()] = Long.MAX_VALUE;
+        }
+        return new Tariff(first, hourly, new int[TYPES][0], new long[TYPES][0], cap, flatDay());
+    }
+
+    private static int standardFirstHour(VehicleType type)
+    {
+        switch (type) {
+            case BIKE:
+                return 20;
+            case TRUCK:
+                return 60;
+            default:
+                return 40;
+        }
+    }
+
+    private static int index(int type, int startHour, int n)
+    {
+        return (type * HOURS_PER_DAY + startHour) * (HOURS_PER_DAY + 1) + n;
+    }
+
+    private static int[] flatDay()
+    {
+        int[] percent = new int[HOURS_PER_DAY];
+        Arrays.fill(percent, 100);
+        return percent;
+    }
+
+    private static long paise(String rupees)
+    {
+        return Math.round(Double.parseDouble(rupees.trim()) * 100);
+    }
+}
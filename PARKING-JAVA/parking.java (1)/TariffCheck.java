@@ -0,0 +1,150 @@
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// Checks the fees a lot charges: the standard tariff through exit(), a
+// loaded tariff's tiers, daily cap and time-of-day bands through fee(), and
+// a tariff set on the lot through exit() and removeAll().
+// Run: java TariffCheck
+public class TariffCheck
+{
+    private static int failures;
+
+    public static void main(String[] args) throws Exception
+    {
+        standardFees();
+        loadedFees();
+        lotTariff();
+        if (failures > 0)
+        {
+            System.out.println("FAILED: " + failures + " fee(s) wrong.");
+            System.exit(1);
+        }
+        System.out.println("OK: every fee matches the tariff.");
+    }
+
+    // 40/20/60 for the first hour and 10 for every hour after; every started
+    // hour is billed
+    private static void standardFees()
+    {
+        ManualClock clock = new ManualClock(0);
+        ParkingLot lot = new ParkingLot("CHECK", 1, 10, clock);
+        Ticket car = lot.tryPark(new Vehicle("CAR-1", "red", VehicleType.CAR));
+        Ticket car2 = lot.tryPark(new Vehicle("CAR-2", "red", VehicleType.CAR));
+        Ticket bike = lot.tryPark(new Vehicle("BIKE-1", "red", VehicleType.BIKE));
+        Ticket truck = lot.tryPark(new Vehicle("TRUCK-1", "red", VehicleType.TRUCK));
+
+        clock.advance(30, TimeUnit.MINUTES);
+        expect("car, 30 minutes", lot.exit(car.getId()), 1, 40);
+        clock.advance(90, TimeUnit.MINUTES);
+        expect("car, exactly 2 hours", lot.exit(car2.getId()), 2, 50);
+        clock.advance(1, TimeUnit.SECONDS);
+        expect("bike, 2 hours and a second", lot.exit(bike.getId()), 3, 40);
+        clock.advance(2, TimeUnit.DAYS);
+        expect("truck, 2 days and change", lot.exit(truck.getId()), 51, 560);
+        check("revenue", lot.getRevenuePaise(), (40 + 50 + 40 + 560) * 100L);
+    }
+
+    private static void loadedFees() throws Exception
+    {
+        Path file = Files.createTempFile("tariff", ".properties");
+        try {
+            Files.write(file, Arrays.asList(
+                    "CAR.first=40",
+                    "CAR.hourly=10",
+                    "CAR.tiers=4:15,8:20",
+                    "CAR.dailyCap=300",
+                    "timeOfDay=22-6:50"));
+            Tariff t = Tariff.load(file);
+            // from 10:00 the first 12 hours are before the 22-6 band
+            check("1 hour", t.fee(VehicleType.CAR, 10, 1), 4000);
+            check("under an hour", t.fee(VehicleType.CAR, 10, 0), 4000);
+            check("4 hours", t.fee(VehicleType.CAR, 10, 4), 7000);
+            check("5 hours, first tier", t.fee(VehicleType.CAR, 10, 5), 8500);
+            check("8 hours", t.fee(VehicleType.CAR, 10, 8), 13000);
+            check("9 hours, second tier", t.fee(VehicleType.CAR, 10, 9), 15000);
+            check("12 hours", t.fee(VehicleType.CAR, 10, 12), 21000);
+            check("13 hours, into the night band", t.fee(VehicleType.CAR, 10, 13), 22000);
+            check("24 hours, capped", t.fee(VehicleType.CAR, 10, 24), 30000);
+            check("30 hours, capped day and 6 hours", t.fee(VehicleType.CAR, 10, 30), 30000 + 6 * 2000);
+            check("1 hour from 22:00", t.fee(VehicleType.CAR, 22, 1), 2000);
+            check("1 hour from 05:00", t.fee(VehicleType.CAR, 5, 1), 2000);
+            check("1 hour from 06:00", t.fee(VehicleType.CAR, 6, 1), 4000);
+            // types the file leaves out keep the standard prices
+            check("bike, 3 hours", t.fee(VehicleType.BIKE, 10, 3), 4000);
+            check("truck, 1 hour from 23:00", t.fee(VehicleType.TRUCK, 23, 1), 3000);
+
+            check("configured without the property", Tariff.configured() == Tariff.standard() ? 1 : 0, 1);
+            System.setProperty("parking.tariff", file.toString());
+            try {
+                check("configured from the property", Tariff.configured().fee(VehicleType.CAR, 10, 9), 15000);
+            } finally {
+                System.clearProperty("parking.tariff");
+            }
+
+            Files.write(file, Arrays.asList("CAR.tiers=8:20,4:15"));
+            try {
+                Tariff.load(file);
+                check("tiers out of order rejected", 0, 1);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // no time-of-day bands, so the time zone does not matter
+    private static void lotTariff() throws Exception
+    {
+        Path file = Files.createTempFile("tariff", ".properties");
+        Tariff t;
+        try {
+            Files.write(file, Arrays.asList("CAR.first=100", "CAR.hourly=50"));
+            t = Tariff.load(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        ManualClock clock = new ManualClock(0);
+        ParkingLot lot = new ParkingLot("CHECK", 2, 10, clock);
+        lot.setTariff(t);
+        List<ExitRequest> exits = new ArrayList<>();
+        Ticket first = lot.tryPark(new Vehicle("CAR-1", "red", VehicleType.CAR));
+        for (int i = 0; i < 3; i++)
+            exits.add(new ExitRequest(lot.tryPark(new Vehicle("BATCH-" + i, "red", VehicleType.CAR)).getId()));
+        exits.add(new ExitRequest(lot.tryPark(new Vehicle("BIKE-1", "red", VehicleType.BIKE)).getId()));
+
+        clock.advance(3, TimeUnit.HOURS);
+        expect("exit() with the lot's tariff", lot.exit(first.getId()), 3, 200);
+        clock.advance(1, TimeUnit.MINUTES);
+        long batch = 0;
+        for (BatchResult<Payment> r : lot.removeAll(exits))
+        {
+            if (!r.isOk())
+            {
+                check("removeAll: " + r.getError(), 0, 1);
+                continue;
+            }
+            batch += Math.round(r.getValue().getAmount() * 100);
+        }
+        // three cars at 100 + 3 * 50, and a bike at the standard 20 + 3 * 10
+        check("removeAll() with the lot's tariff", batch, (3 * 250 + 50) * 100L);
+        check("revenue", lot.getRevenuePaise(), (200 + 3 * 250 + 50) * 100L);
+    }
+
+    private static void expect(String what, Payment p, int hours, long rupees)
+    {
+        check(what + ", hours", p.getHours(), hours);
+        check(what + ", paise", Math.round(p.getAmount() * 100), rupees * 100);
+    }
+
+    private static void check(String what, long got, long want)
+    {
+        if (got != want)
+        {
+            System.out.println("FAILED: " + what + ": got " + got + ", expected " + want);
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Copies a file, or a stream, a block at a time, optionally changing the
+// bytes on the way, instead of the one-read()-per-byte loops in demoBuffer
+// and DemoBais.
+//
+//   BYTE     read() and write() one byte at a time through buffered streams,
+//            as the demos do; only here to compare against
+//   BLOCK    read(byte[]) and write(byte[]) 256 KB at a time
+//   CHANNEL  FileChannel.transferTo, which lets the kernel copy without the
+//            bytes passing through Java; with a transform, FileChannel reads
+//            and writes through one direct buffer
+//   MAPPED   maps both files in windows of up to 1 GB and copies memory to
+//            memory, transforming the destination in place
+//
+// choose() picks CHANNEL for a plain copy and BLOCK for a transform, which
+// BlockCopyBench found fastest on a 2 GB file. MAPPED pays a page fault for
+// every 4 KB of the destination, so it loses a straight copy; it suits a
+// caller that goes on to read the mapped bytes, or a file too large to
+// stream twice.
+class BlockCopy {
+    enum Mode { BYTE, BLOCK, CHANNEL, MAPPED }
+
+    // Changes the bytes between the buffer's position and limit in place.
+    // The buffer may be a heap array, a direct buffer or part of a mapped file.
+    interface Transform {
+        void apply(ByteBuffer chunk);
+    }
+
+    static final int BLOCK_SIZE = 256 << 10;
+    static final long MAP_WINDOW = 1L << 30;
+
+    // ASCII letters to upper case; everything else is left alone. Works
+    // eight bytes at a time: each byte's top bit is used as a flag for
+    // "between 'a' and 'z'", and the flag shifted down to 0x20 is the bit
+    // that tells the cases apart.
+    static final Transform UPPER_CASE = chunk -> {
+        final long ones = 0x0101010101010101L;
+        final long highs = 0x8080808080808080L;
+        int i = chunk.position();
+        int end = chunk.limit();
+        for (; i + 8 <= end; i += 8) {
+            long x = chunk.getLong(i);
+            long low7 = x & ~highs;
+            // no byte carries into the next: at most 0x7F + 0x1F
+            long atLeastA = low7 + ones * (0x80 - 'a');
+            long pastZ = low7 + ones * (0x80 - 'z' - 1);
+            long lower = atLeastA & ~pastZ & ~x & highs;
+            if (lower != 0)
+                chunk.putLong(i, x ^ (lower >>> 2));
+        }
+        for (; i < end; i++) {
+            byte b = chunk.get(i);
+            if (b >= 'a' && b <= 'z')
+                chunk.put(i, (byte) (b - 32));
+        }
+    };
+
+    static Mode choose(Transform transform) {
+        return transform == null ? Mode.CHANNEL : Mode.BLOCK;
+    }
+
+    // Copies src to dst, replacing dst, and returns the bytes copied.
+    // transform may be null.
+    static long copy(Path src, Path dst, Transform transform) throws IOException {
+        return copy(src, dst, choose(transform), transform);
+    }
+
+    static long copy(Path src, Path dst, Mode mode, Transform transform) throws IOException {
+        switch (mode) {
+            case BYTE:
+                try (InputStream in = new BufferedInputStream(new FileInputStream(src.toFile()));
+                     OutputStream out = new BufferedOutputStream(new FileOutputStream(dst.toFile()))) {
+                    return copyBytes(in, out, transform);
+                }
+            case BLOCK:
+                try (InputStream in = new FileInputStream(src.toFile());
+                     OutputStream out = new FileOutputStream(dst.toFile())) {
+                    return copy(in, out, transform);
+                }
+            case CHANNEL:
+                try (FileChannel in = FileChannel.open(src, StandardOpenOption.READ);
+                     FileChannel out = openForWrite(dst, false)) {
+                    return transform == null ? transfer(in, out) : copyDirect(in, out, transform);
+                }
+            default:
+                try (FileChannel in = FileChannel.open(src, StandardOpenOption.READ);
+                     FileChannel out = openForWrite(dst, true)) {
+                    return copyMapped(in, out, transform);
+                }
+        }
+    }
+
+    // Copies a stream a block at a time, as demoBuffer and DemoBais now do.
+    // Neither stream is closed.
+    static long copy(InputStream in, OutputStream out, Transform transform) throws IOException {
+        byte[] block = new byte[BLOCK_SIZE];
+        ByteBuffer chunk = ByteBuffer.wrap(block);
+        long total = 0;
+        int n;
+        while ((n = in.read(block)) != -1) {
+            if (transform != null) {
+                chunk.limit(n).position(0);
+                transform.apply(chunk);
+            }
+            out.write(block, 0, n);
+            total += n;
+        }
+        out.flush();
+        return total;
+    }
+
+    private static long copyBytes(InputStream in, OutputStream out, Transform transform) throws IOException {
+        ByteBuffer one = ByteBuffer.allocate(1);
+        long total = 0;
+        int b;
+        while ((b = in.read()) != -1) {
+            if (transform != null) {
+                one.clear();
+                one.put(0, (byte) b);
+                transform.apply(one);
+                b = one.get(0);
+            }
+            out.write(b);
+            total++;
+        }
+        return total;
+    }
+
+    // transferTo may move less than asked, so loop until it is all across.
+    // It moves nothing at all once the source has been cut short below
+    // 'done', so then the copy ends with what there was.
+    private static long transfer(FileChannel in, FileChannel out) throws IOException {
+        long size = in.size();
+        long done = 0;
+        while (done < size) {
+            long n = in.transferTo(done, size - done, out);
+            if (n == 0) {
+                size = Math.min(size, in.size());
+                if (done < size)
+                    throw new IOException("transferTo made no progress at byte " + done + " of " + size);
+            }
+            done += n;
+        }
+        return done;
+    }
+
+    private static long copyDirect(FileChannel in, FileChannel out, Transform transform) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocateDirect(BLOCK_SIZE);
+        long total = 0;
+        while (in.read(buf) != -1) {
+            buf.flip();
+            transform.apply(buf);
+            total += buf.remaining();
+            while (buf.hasRemaining())
+                out.write(buf);
+            buf.clear();
+        }
+        return total;
+    }
+
+    // A mapping stays until the buffer is collected, so the windows are kept
+    // to 1 GB and there are only a few of them even for a large file.
+    private static long copyMapped(FileChannel in, FileChannel out, Transform transform) throws IOException {
+        long size = in.size();
+        for (long at = 0; at < size; at += MAP_WINDOW) {
+            long len = Math.min(MAP_WINDOW, size - at);
+            MappedByteBuffer from = in.map(FileChannel.MapMode.READ_ONLY, at, len);
+            MappedByteBuffer to = out.map(FileChannel.MapMode.READ_WRITE, at, len);
+            if (transform == null) {
+                to.put(from);
+                continue;
+            }
+            // a block at a time, transformed while it is still in the cache
+            for (int p = 0; p < len; p += BLOCK_SIZE) {
+                int end = (int) Math.min(p + BLOCK_SIZE, len);
+                from.limit(end);
+                to.put(from);
+                to.limit(end).position(p);
+                transform.apply(to);
+                to.limit((int) len).position(end);
+            }
+        }
+        return size;
+    }
+
+    private static FileChannel openForWrite(Path dst, boolean read) throws IOException {
+        return read
+                ? FileChannel.open(dst, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(dst, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE);
+    }
+}
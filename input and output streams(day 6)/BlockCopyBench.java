@@ -0,0 +1,81 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+// Throughput of every BlockCopy mode on one large file, as a plain copy and
+// with the upper-case transform.
+//
+// The source is written first and is usually still in the page cache, so
+// this measures the cost of each way of moving the bytes rather than the
+// disk. Needs twice the file size free in the directory.
+// Run: java BlockCopyBench [sizeMB] [directory]
+class BlockCopyBench {
+    public static void main(String[] args) throws IOException {
+        long sizeMB = args.length > 0 ? Long.parseLong(args[0]) : 2048;
+        Path dir = Paths.get(args.length > 1 ? args[1] : ".");
+        Path src = dir.resolve("blockcopy-src.bin");
+        Path dst = dir.resolve("blockcopy-dst.bin");
+
+        writeSource(src, sizeMB << 20);
+        System.out.printf("%d MB file%n", sizeMB);
+        System.out.printf("%-8s %-10s %10s %10s%n", "mode", "transform", "seconds", "MB/s");
+        try {
+            for (BlockCopy.Mode mode : BlockCopy.Mode.values()) {
+                run(mode, null, src, dst, sizeMB);
+                run(mode, BlockCopy.UPPER_CASE, src, dst, sizeMB);
+            }
+        } finally {
+            Files.deleteIfExists(src);
+            Files.deleteIfExists(dst);
+        }
+    }
+
+    private static void run(BlockCopy.Mode mode, BlockCopy.Transform transform, Path src, Path dst, long sizeMB)
+            throws IOException {
+        long t0 = System.nanoTime();
+        long copied = BlockCopy.copy(src, dst, mode, transform);
+        double seconds = (System.nanoTime() - t0) / 1e9;
+        if (copied != Files.size(src) || Files.size(dst) != copied || !sameStart(src, dst, transform))
+            throw new IOException(mode + " copy does not match the source");
+        System.out.printf("%-8s %-10s %10.2f %10.0f%n", mode, transform == null ? "none" : "upper", seconds,
+                sizeMB / seconds);
+        Files.delete(dst);
+    }
+
+    // lower-case text, so the transform has work to do
+    private static void writeSource(Path src, long size) throws IOException {
+        byte[] text = new byte[1 << 20];
+        Random rnd = new Random(7);
+        for (int i = 0; i < text.length; i++)
+            text[i] = (byte) (i % 64 == 63 ? '\n' : rnd.nextInt(8) == 0 ? ' ' : 'a' + rnd.nextInt(26));
+        try (FileChannel out = FileChannel.open(src, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer block = ByteBuffer.wrap(text);
+            for (long at = 0; at < size; at += text.length) {
+                block.clear().limit((int) Math.min(text.length, size - at));
+                while (block.hasRemaining())
+                    out.write(block);
+            }
+        }
+    }
+
+    // checks the first block of the copy against the source
+    private static boolean sameStart(Path src, Path dst, BlockCopy.Transform transform) throws IOException {
+        ByteBuffer a = ByteBuffer.allocate(64 << 10);
+        ByteBuffer b = ByteBuffer.allocate(64 << 10);
+        try (FileChannel in = FileChannel.open(src); FileChannel out = FileChannel.open(dst)) {
+            in.read(a);
+            out.read(b);
+        }
+        a.flip();
+        b.flip();
+        if (transform != null)
+            transform.apply(a);
+        return a.equals(b);
+    }
+}
@@ -0,0 +1,512 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// A file of many numeric records, stored a column at a time, for when
+// DemoData's one writeInt at a time will not do.
+//
+// Rows go in groups of ROWS_PER_PAGE. In each group every column is one
+// page: its values back to back, big-endian as DataOutputStream writes
+// them, so a page of ints is always ROWS_PER_PAGE * 4 bytes. A page may
+// be deflated instead when that makes it smaller. The footer lists every
+// page with its offset, length and the smallest and largest value in it,
+// so a reader can tell from the footer alone which pages a range query
+// needs, and read only those.
+//
+//   header   int MAGIC
+//   pages    group 0 column 0, group 0 column 1, ..., group 1 column 0, ...
+//   footer   int columns, per column: byte type, UTF name
+//            int rows per page, long rows, int groups
+//            per group, per column: long offset, int length, byte codec,
+//            long min, long max
+//   trailer  long footer offset, int MAGIC
+class ColumnFile {
+    static final int MAGIC = 0x434F4C31; // "COL1"
+    static final byte INT = 1;
+    static final byte LONG = 2;
+    static final byte RAW = 0;
+    static final byte DEFLATE = 1;
+    static final int ROWS_PER_PAGE = 16 << 10;
+    static final int MAX_COLUMNS = 1024;
+
+    static int width(byte type) {
+        return type == INT ? 4 : 8;
+    }
+}
+
+// Writes rows to a column file. Declare the columns first, then for each
+// row set every column and call endRow():
+//
+//   ColumnWriter w = new ColumnWriter(path, true).intColumn("id").longColumn("time");
+//   w.setInt(0, id).setLong(1, time).endRow();
+//
+// A column left unset in a row keeps whatever that slot held before, so
+// set them all. The file is not readable until close() writes the footer.
+class ColumnWriter implements Closeable {
+    private final DataOutputStream out;
+    private final boolean compress;
+    private final Deflater deflater;
+    private final ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+    private final DataOutputStream index = new DataOutputStream(indexBytes);
+    private final ByteBuffer page = ByteBuffer.allocate(ColumnFile.ROWS_PER_PAGE * 8);
+    private byte[] packed = new byte[1024];
+
+    private String[] names = new String[0];
+    private byte[] types = new byte[0];
+    private int[][] ints = new int[0][];
+    private long[][] longs = new long[0][];
+
+    private int rows;       // in the group being filled
+    private long totalRows;
+    private int groups;
+    // bytes written so far; DataOutputStream.size() stops counting at 2 GB
+    private long written;
+    private boolean closed;
+
+    ColumnWriter(Path file, boolean compress) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+        this.compress = compress;
+        this.deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+        out.writeInt(ColumnFile.MAGIC);
+        written = 4;
+    }
+
+    ColumnWriter intColumn(String name) {
+        return addColumn(name, ColumnFile.INT);
+    }
+
+    ColumnWriter longColumn(String name) {
+        return addColumn(name, ColumnFile.LONG);
+    }
+
+    private ColumnWriter addColumn(String name, byte type) {
+        if (totalRows > 0 || rows > 0)
+            throw new IllegalStateException("Columns must be declared before the first row.");
+        if (names.length == ColumnFile.MAX_COLUMNS)
+            throw new IllegalStateException("At most " + ColumnFile.MAX_COLUMNS + " columns.");
+        int n = names.length;
+        names = Arrays.copyOf(names, n + 1);
+        types = Arrays.copyOf(types, n + 1);
+        ints = Arrays.copyOf(ints, n + 1);
+        longs = Arrays.copyOf(longs, n + 1);
+        names[n] = name;
+        types[n] = type;
+        if (type == ColumnFile.INT)
+            ints[n] = new int[ColumnFile.ROWS_PER_PAGE];
+        else
+            longs[n] = new long[ColumnFile.ROWS_PER_PAGE];
+        return this;
+    }
+
+    ColumnWriter setInt(int column, int value) {
+        if (types[column] != ColumnFile.INT)
+            throw new IllegalArgumentException("Column " + names[column] + " is not an int column.");
+        ints[column][rows] = value;
+        return this;
+    }
+
+    ColumnWriter setLong(int column, long value) {
+        if (types[column] != ColumnFile.LONG)
+            throw new IllegalArgumentException("Column " + names[column] + " is not a long column.");
+        longs[column][rows] = value;
+        return this;
+    }
+
+    void endRow() throws IOException {
+        if (names.length == 0)
+            throw new IllegalStateException("No columns declared.");
+        if (++rows == ColumnFile.ROWS_PER_PAGE)
+            writeGroup();
+    }
+
+    long rows() {
+        return totalRows + rows;
+    }
+
+    private void writeGroup() throws IOException {
+        for (int c = 0; c < names.length; c++) {
+            long min, max;
+            page.clear();
+            if (types[c] == ColumnFile.INT) {
+                int[] v = ints[c];
+                int lo = v[0], hi = v[0];
+                for (int i = 1; i < rows; i++) {
+                    lo = Math.min(lo, v[i]);
+                    hi = Math.max(hi, v[i]);
+                }
+                min = lo;
+                max = hi;
+                page.asIntBuffer().put(v, 0, rows);
+                page.limit(rows * 4);
+            } else {
+                long[] v = longs[c];
+                min = v[0];
+                max = v[0];
+                for (int i = 1; i < rows; i++) {
+                    min = Math.min(min, v[i]);
+                    max = Math.max(max, v[i]);
+                }
+                page.asLongBuffer().put(v, 0, rows);
+                page.limit(rows * 8);
+            }
+            writePage(min, max);
+        }
+        totalRows += rows;
+        groups++;
+        rows = 0;
+    }
+
+    // Deflates the page if asked to, and keeps it raw when that does not
+    // make it smaller.
+    private void writePage(long min, long max) throws IOException {
+        byte[] bytes = page.array();
+        int length = page.limit();
+        byte codec = ColumnFile.RAW;
+        if (compress) {
+            deflater.reset();
+            deflater.setInput(bytes, 0, length);
+            deflater.finish();
+            int n = 0;
+            while (!deflater.finished() && n < length) {
+                if (n == packed.length)
+                    packed = Arrays.copyOf(packed, packed.length * 2);
+                n += deflater.deflate(packed, n, packed.length - n);
+            }
+            if (deflater.finished() && n < length) {
+                bytes = packed;
+                length = n;
+                codec = ColumnFile.DEFLATE;
+            }
+        }
+        out.write(bytes, 0, length);
+        index.writeLong(written);
+        index.writeInt(length);
+        index.writeByte(codec);
+        index.writeLong(min);
+        index.writeLong(max);
+        written += length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            if (rows > 0)
+                writeGroup();
+            long footer = written;
+            out.writeInt(names.length);
+            for (int c = 0; c < names.length; c++) {
+                out.writeByte(types[c]);
+                out.writeUTF(names[c]);
+            }
+            out.writeInt(ColumnFile.ROWS_PER_PAGE);
+            out.writeLong(totalRows);
+            out.writeInt(groups);
+            indexBytes.writeTo(out);
+            out.writeLong(footer);
+            out.writeInt(ColumnFile.MAGIC);
+        } finally {
+            if (deflater != null)
+                deflater.end();
+            out.close();
+        }
+    }
+}
+
+// Reads a column file. Opening reads only the footer; intPage and longPage
+// then read one page and return a view of its values, and min and max say
+// from the footer whether a page can hold a value at all. count and sum
+// are range scans built on those: they skip pages whose min and max lie
+// outside the range, and take pages that lie wholly inside it without
+// looking at the filter column's values.
+//
+// A page view stays valid until the next page of the same column is read.
+// A damaged file throws StreamCorruptedException.
+class ColumnReader implements Closeable {
+    private final FileChannel channel;
+    private final String[] names;
+    private final byte[] types;
+    private final int rowsPerPage;
+    private final long rows;
+    private final int groups;
+    // per page, at [group * columns + column]
+    private final long[] offset;
+    private final int[] length;
+    private final byte[] codec;
+    private final long[] min;
+    private final long[] max;
+
+    // one buffer per column, so a filter column and the column being
+    // summed can both be in hand
+    private final ByteBuffer[] buffers;
+    private final Inflater inflater = new Inflater();
+    private byte[] packed = new byte[1024];
+    private final int[] selected;
+    private long pagesRead;
+
+    ColumnReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < 16 || readAt(0, 4).getInt() != ColumnFile.MAGIC)
+                throw new StreamCorruptedException("Not a column file.");
+            ByteBuffer trailer = readAt(size - 12, 12);
+            long footer = trailer.getLong();
+            if (trailer.getInt() != ColumnFile.MAGIC || footer < 4 || footer > size - 12
+                    || size - 12 - footer > Integer.MAX_VALUE)
+                throw new StreamCorruptedException("Column file has no footer; was it closed?");
+            ByteBuffer f = readAt(footer, (int) (size - 12 - footer));
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(f.array()));
+
+            int columns = in.readInt();
+            if (columns < 1 || columns > ColumnFile.MAX_COLUMNS)
+                throw new StreamCorruptedException("Bad column count " + columns + ".");
+            names = new String[columns];
+            types = new byte[columns];
+            for (int c = 0; c < columns; c++) {
+                types[c] = in.readByte();
+                names[c] = in.readUTF();
+                if (types[c] != ColumnFile.INT && types[c] != ColumnFile.LONG)
+                    throw new StreamCorruptedException("Column " + names[c] + " has an unknown type.");
+            }
+            rowsPerPage = in.readInt();
+            rows = in.readLong();
+            groups = in.readInt();
+            if (rowsPerPage < 1 || rowsPerPage > 1 << 20 || rows < 0 || groups < 0
+                    || (rows + rowsPerPage - 1) / rowsPerPage != groups)
+                throw new StreamCorruptedException("Row and page counts do not agree.");
+            // offset, length, codec, min and max: 29 bytes a page
+            if ((long) groups * columns * 29 > in.available())
+                throw new StreamCorruptedException("Column file footer is cut short.");
+
+            int pages = groups * columns;
+            offset = new long[pages];
+            length = new int[pages];
+            codec = new byte[pages];
+            min = new long[pages];
+            max = new long[pages];
+            for (int p = 0; p < pages; p++) {
+                offset[p] = in.readLong();
+                length[p] = in.readInt();
+                codec[p] = in.readByte();
+                min[p] = in.readLong();
+                max[p] = in.readLong();
+                int full = rowsIn(p / columns) * ColumnFile.width(types[p % columns]);
+                if (offset[p] < 4 || length[p] < 0 || offset[p] + length[p] > footer
+                        || (codec[p] == ColumnFile.RAW ? length[p] != full : codec[p] != ColumnFile.DEFLATE))
+                    throw new StreamCorruptedException("Page " + p + " is out of place.");
+            }
+        } catch (EOFException e) {
+            inflater.end();
+            channel.close();
+            throw new StreamCorruptedException("Column file footer is cut short.");
+        } catch (UTFDataFormatException e) {
+            inflater.end();
+            channel.close();
+            throw new StreamCorruptedException("Column name is not valid UTF-8.");
+        } catch (IOException | RuntimeException e) {
+            inflater.end();
+            channel.close();
+            throw e;
+        }
+        buffers = new ByteBuffer[names.length];
+        selected = new int[rowsPerPage];
+    }
+
+    int columns() {
+        return names.length;
+    }
+
+    // index of the named column, or -1
+    int column(String name) {
+        for (int c = 0; c < names.length; c++)
+            if (names[c].equals(name))
+                return c;
+        return -1;
+    }
+
+    String columnName(int column) {
+        return names[column];
+    }
+
+    long rows() {
+        return rows;
+    }
+
+    int groups() {
+        return groups;
+    }
+
+    int rowsIn(int group) {
+        return (int) Math.min(rowsPerPage, rows - (long) group * rowsPerPage);
+    }
+
+    long min(int group, int column) {
+        return min[group * names.length + column];
+    }
+
+    long max(int group, int column) {
+        return max[group * names.length + column];
+    }
+
+    // whether the page can hold a value from lo to hi
+    boolean mayContain(int group, int column, long lo, long hi) {
+        int p = group * names.length + column;
+        return max[p] >= lo && min[p] <= hi;
+    }
+
+    // pages read since the file was opened, for seeing what a scan skipped
+    long pagesRead() {
+        return pagesRead;
+    }
+
+    IntBuffer intPage(int group, int column) throws IOException {
+        if (types[column] != ColumnFile.INT)
+            throw new IllegalArgumentException("Column " + names[column] + " is not an int column.");
+        return page(group, column).asIntBuffer();
+    }
+
+    LongBuffer longPage(int group, int column) throws IOException {
+        if (types[column] != ColumnFile.LONG)
+            throw new IllegalArgumentException("Column " + names[column] + " is not a long column.");
+        return page(group, column).asLongBuffer();
+    }
+
+    // rows whose value in column lies from lo to hi
+    long count(int column, long lo, long hi) throws IOException {
+        long n = 0;
+        for (int g = 0; g < groups; g++) {
+            if (!mayContain(g, column, lo, hi))
+                continue;
+            n += min(g, column) >= lo && max(g, column) <= hi ? rowsIn(g) : select(g, column, lo, hi);
+        }
+        return n;
+    }
+
+    // sum of column over the rows whose value in where lies from lo to hi
+    long sum(int column, int where, long lo, long hi) throws IOException {
+        long total = 0;
+        for (int g = 0; g < groups; g++) {
+            if (!mayContain(g, where, lo, hi))
+                continue;
+            if (min(g, where) >= lo && max(g, where) <= hi) {
+                total += sumPage(g, column);
+                continue;
+            }
+            int n = select(g, where, lo, hi);
+            if (n == 0)
+                continue;
+            if (types[column] == ColumnFile.INT) {
+                IntBuffer v = intPage(g, column);
+                for (int i = 0; i < n; i++)
+                    total += v.get(selected[i]);
+            } else {
+                LongBuffer v = longPage(g, column);
+                for (int i = 0; i < n; i++)
+                    total += v.get(selected[i]);
+            }
+        }
+        return total;
+    }
+
+    private long sumPage(int group, int column) throws IOException {
+        long total = 0;
+        if (types[column] == ColumnFile.INT) {
+            IntBuffer v = intPage(group, column);
+            for (int i = 0, n = v.limit(); i < n; i++)
+                total += v.get(i);
+        } else {
+            LongBuffer v = longPage(group, column);
+            for (int i = 0, n = v.limit(); i < n; i++)
+                total += v.get(i);
+        }
+        return total;
+    }
+
+    // fills selected with the rows of the page whose value lies from lo to
+    // hi, and returns how many there are
+    private int select(int group, int column, long lo, long hi) throws IOException {
+        int n = 0;
+        if (types[column] == ColumnFile.INT) {
+            IntBuffer v = intPage(group, column);
+            for (int i = 0, end = v.limit(); i < end; i++) {
+                int x = v.get(i);
+                if (x >= lo && x <= hi)
+                    selected[n++] = i;
+            }
+        } else {
+            LongBuffer v = longPage(group, column);
+            for (int i = 0, end = v.limit(); i < end; i++) {
+                long x = v.get(i);
+                if (x >= lo && x <= hi)
+                    selected[n++] = i;
+            }
+        }
+        return n;
+    }
+
+    // Reads a raw page straight into the column's direct buffer, or inflates
+    // a deflated one into it.
+    private ByteBuffer page(int group, int column) throws IOException {
+        int p = group * names.length + column;
+        int full = rowsIn(group) * ColumnFile.width(types[column]);
+        ByteBuffer buf = buffers[column];
+        if (buf == null)
+            buf = buffers[column] = ByteBuffer.allocateDirect(rowsPerPage * ColumnFile.width(types[column]));
+        buf.clear().limit(full);
+        pagesRead++;
+        if (codec[p] == ColumnFile.RAW) {
+            readFully(buf, offset[p]);
+            return buf.flip();
+        }
+        if (packed.length < length[p])
+            packed = new byte[Math.max(length[p], packed.length * 2)];
+        readFully(ByteBuffer.wrap(packed, 0, length[p]), offset[p]);
+        inflater.reset();
+        inflater.setInput(packed, 0, length[p]);
+        try {
+            while (buf.hasRemaining() && !inflater.finished())
+                if (inflater.inflate(buf) == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+        } catch (DataFormatException e) {
+            throw new StreamCorruptedException("Page " + p + " does not inflate: " + e.getMessage());
+        }
+        if (buf.hasRemaining() || !inflater.finished())
+            throw new StreamCorruptedException("Page " + p + " inflates to the wrong size.");
+        return buf.flip();
+    }
+
+    private ByteBuffer readAt(long at, int n) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(n);
+        readFully(buf, at);
+        return buf.flip();
+    }
+
+    private void readFully(ByteBuffer buf, long at) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, at);
+            if (n < 0)
+                throw new StreamCorruptedException("Column file ends early.");
+            at += n;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        channel.close();
+    }
+}
@@ -0,0 +1,117 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+// Ten million parking records (id, time, floor, amount) written the
+// DemoData way, one writeInt/writeLong after another, and as a column file
+// raw and deflated; then the same queries against each:
+//
+//   all      total amount over every row
+//   window   total amount for 1% of the time range; time only grows, so
+//            the column file reads only the pages that overlap it
+//   floor    rows on one floor; floors are random, so no page can be
+//            skipped, but only the floor column is read
+//
+// The files are written first and are likely still in the page cache, so
+// this compares the cost of decoding rather than of the disk.
+// Run: java ColumnFileBench [rows] [directory]
+class ColumnFileBench {
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        Path dir = Paths.get(args.length > 1 ? args[1] : ".");
+        Path rowFile = dir.resolve("columnbench-rows.bin");
+        Path rawFile = dir.resolve("columnbench-raw.col");
+        Path packedFile = dir.resolve("columnbench-deflate.col");
+
+        long start = 1_700_000_000_000L;
+        long end = start + rows * 100L;
+        long from = start + (end - start) / 2;
+        long to = from + (end - start) / 100;
+
+        System.out.printf("%d rows%n", rows);
+        System.out.printf("%-14s %10s %10s %10s %10s %10s%n", "", "write s", "MB", "all s", "window s", "floor s");
+        try {
+            long t0 = System.nanoTime();
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(rowFile.toFile()), 1 << 16))) {
+                Random rnd = new Random(3);
+                for (int i = 0; i < rows; i++) {
+                    out.writeInt(i);
+                    out.writeLong(start + i * 100L + rnd.nextInt(100));
+                    out.writeInt(rnd.nextInt(5));
+                    out.writeInt(rnd.nextInt(100_000));
+                }
+            }
+            double write = seconds(t0);
+            long[] expect = new long[3];
+            double[] times = new double[3];
+            for (int q = 0; q < 3; q++) {
+                t0 = System.nanoTime();
+                try (DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(new FileInputStream(rowFile.toFile()), 1 << 16))) {
+                    for (int i = 0; i < rows; i++) {
+                        in.readInt();
+                        long time = in.readLong();
+                        int floor = in.readInt();
+                        int amount = in.readInt();
+                        if (q == 0 || q == 1 && time >= from && time <= to)
+                            expect[q] += amount;
+                        else if (q == 2 && floor == 2)
+                            expect[q]++;
+                    }
+                }
+                times[q] = seconds(t0);
+            }
+            print("row stream", write, rowFile, times);
+
+            for (boolean compress : new boolean[] {false, true}) {
+                Path file = compress ? packedFile : rawFile;
+                t0 = System.nanoTime();
+                try (ColumnWriter out = new ColumnWriter(file, compress)
+                        .intColumn("id").longColumn("time").intColumn("floor").intColumn("amount")) {
+                    Random rnd = new Random(3);
+                    for (int i = 0; i < rows; i++)
+                        out.setInt(0, i)
+                                .setLong(1, start + i * 100L + rnd.nextInt(100))
+                                .setInt(2, rnd.nextInt(5))
+                                .setInt(3, rnd.nextInt(100_000))
+                                .endRow();
+                }
+                write = seconds(t0);
+                String pages = "";
+                for (int q = 0; q < 3; q++) {
+                    t0 = System.nanoTime();
+                    try (ColumnReader in = new ColumnReader(file)) {
+                        int time = in.column("time");
+                        int floor = in.column("floor");
+                        int amount = in.column("amount");
+                        long got = q == 0 ? in.sum(amount, time, Long.MIN_VALUE, Long.MAX_VALUE)
+                                : q == 1 ? in.sum(amount, time, from, to)
+                                : in.count(floor, 2, 2);
+                        if (got != expect[q])
+                            throw new IllegalStateException("query " + q + " got " + got + ", expected " + expect[q]);
+                        pages += " " + in.pagesRead() + "/" + in.groups() * in.columns();
+                    }
+                    times[q] = seconds(t0);
+                }
+                print(compress ? "column deflate" : "column raw", write, file, times);
+                System.out.println("  pages read:" + pages);
+            }
+        } finally {
+            Files.deleteIfExists(rowFile);
+            Files.deleteIfExists(rawFile);
+            Files.deleteIfExists(packedFile);
+        }
+    }
+
+    private static double seconds(long t0) {
+        return (System.nanoTime() - t0) / 1e9;
+    }
+
+    private static void print(String what, double write, Path file, double[] times) throws IOException {
+        System.out.printf("%-14s %10.2f %10.1f %10.3f %10.3f %10.3f%n", what, write, Files.size(file) / 1e6,
+                times[0], times[1], times[2]);
+    }
+}
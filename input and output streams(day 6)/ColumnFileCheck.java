@@ -0,0 +1,183 @@
+import java.io.*;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+// Checks ColumnWriter and ColumnReader, raw and deflated: every page reads
+// back as written, count() and sum() agree with a loop over the same values
+// in memory while skipping the pages a range rules out, and a damaged file,
+// cut short or with bytes changed, is only ever rejected with
+// StreamCorruptedException.
+// Run: java ColumnFileCheck [damagedCopies]
+class ColumnFileCheck {
+    // three full groups and part of a fourth
+    private static final int ROWS = 3 * ColumnFile.ROWS_PER_PAGE + 1234;
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        int copies = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        Random rnd = new Random(23);
+        int[] id = new int[ROWS];
+        int[] day = new int[ROWS];
+        long[] amount = new long[ROWS];
+        long[] time = new long[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            id[i] = i;
+            day[i] = i % 7;
+            amount[i] = rnd.nextLong() >> rnd.nextInt(64);
+            time[i] = 1_700_000_000_000L + i * 1000L + rnd.nextInt(1000);
+        }
+
+        Path file = Files.createTempFile("column-check", ".col");
+        try {
+            for (boolean compress : new boolean[] {false, true}) {
+                try (ColumnWriter w = new ColumnWriter(file, compress)
+                        .intColumn("id").intColumn("day").longColumn("amount").longColumn("time")) {
+                    for (int i = 0; i < ROWS; i++)
+                        w.setInt(0, id[i]).setInt(1, day[i]).setLong(2, amount[i]).setLong(3, time[i]).endRow();
+                }
+                String mode = compress ? "deflated" : "raw";
+                try (ColumnReader r = new ColumnReader(file)) {
+                    pages(mode, r, id, day, amount, time);
+                    queries(mode, r, rnd, new long[][] {toLong(id), toLong(day), amount, time});
+                    skipping(mode, r);
+                }
+                damaged(mode, file, Files.readAllBytes(file), copies, rnd);
+            }
+
+            // no rows
+            new ColumnWriter(file, true).intColumn("id").close();
+            try (ColumnReader r = new ColumnReader(file)) {
+                check("empty file rows", r.rows(), 0);
+                check("empty file count", r.count(0, Long.MIN_VALUE, Long.MAX_VALUE), 0);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        if (failures > 0) {
+            System.out.println("FAILED: " + failures + " check(s).");
+            System.exit(1);
+        }
+        System.out.println("OK: column files read back, query right and reject damage cleanly.");
+    }
+
+    private static void pages(String mode, ColumnReader r, int[] id, int[] day, long[] amount, long[] time)
+            throws IOException {
+        check(mode + " rows", r.rows(), ROWS);
+        check(mode + " groups", r.groups(), 4);
+        check(mode + " column", r.column("amount"), 2);
+        for (int g = 0; g < r.groups(); g++) {
+            int from = g * ColumnFile.ROWS_PER_PAGE;
+            int n = r.rowsIn(g);
+            IntBuffer ids = r.intPage(g, 0);
+            int[] gotIds = new int[ids.remaining()];
+            ids.get(gotIds);
+            IntBuffer days = r.intPage(g, 1);
+            int[] gotDays = new int[days.remaining()];
+            days.get(gotDays);
+            LongBuffer amounts = r.longPage(g, 2);
+            long[] gotAmounts = new long[amounts.remaining()];
+            amounts.get(gotAmounts);
+            LongBuffer times = r.longPage(g, 3);
+            long[] gotTimes = new long[times.remaining()];
+            times.get(gotTimes);
+            if (!Arrays.equals(gotIds, Arrays.copyOfRange(id, from, from + n))
+                    || !Arrays.equals(gotDays, Arrays.copyOfRange(day, from, from + n))
+                    || !Arrays.equals(gotAmounts, Arrays.copyOfRange(amount, from, from + n))
+                    || !Arrays.equals(gotTimes, Arrays.copyOfRange(time, from, from + n)))
+                fail(mode + " group " + g + " reads back different");
+            check(mode + " group " + g + " min", r.min(g, 2), Arrays.stream(gotAmounts).min().getAsLong());
+            check(mode + " group " + g + " max", r.max(g, 2), Arrays.stream(gotAmounts).max().getAsLong());
+        }
+    }
+
+    private static void queries(String mode, ColumnReader r, Random rnd, long[][] columns) throws IOException {
+        for (int q = 0; q < 200; q++) {
+            int column = rnd.nextInt(columns.length);
+            int where = rnd.nextInt(columns.length);
+            long a = columns[where][rnd.nextInt(ROWS)];
+            long b = q % 10 == 0 ? a : columns[where][rnd.nextInt(ROWS)];
+            long lo = Math.min(a, b);
+            long hi = Math.max(a, b);
+            long count = 0;
+            long sum = 0;
+            for (int i = 0; i < ROWS; i++) {
+                if (columns[where][i] >= lo && columns[where][i] <= hi) {
+                    count++;
+                    sum += columns[column][i];
+                }
+            }
+            check(mode + " count(" + where + ", " + lo + ", " + hi + ")", r.count(where, lo, hi), count);
+            check(mode + " sum(" + column + ", " + where + ", " + lo + ", " + hi + ")", r.sum(column, where, lo, hi), sum);
+        }
+        check(mode + " count over nothing", r.count(1, 7, 100), 0);
+        check(mode + " count over everything", r.count(2, Long.MIN_VALUE, Long.MAX_VALUE), ROWS);
+    }
+
+    // ids are in order, so a range inside one group reads that group's
+    // pages only: the id page to select the rows, then the page summed
+    private static void skipping(String mode, ColumnReader r) throws IOException {
+        long lo = ColumnFile.ROWS_PER_PAGE + 100;
+        long hi = lo + 1000;
+        long before = r.pagesRead();
+        check(mode + " sum of ids in one group", r.sum(0, 0, lo, hi), (lo + hi) * (hi - lo + 1) / 2);
+        check(mode + " pages read for one group", r.pagesRead() - before, 2);
+        before = r.pagesRead();
+        r.sum(2, 0, lo, hi);
+        check(mode + " pages read for one group, another column", r.pagesRead() - before, 2);
+        before = r.pagesRead();
+        check(mode + " count of a whole group", r.count(0, 0, ColumnFile.ROWS_PER_PAGE - 1), ColumnFile.ROWS_PER_PAGE);
+        check(mode + " pages read for a count the footer answers", r.pagesRead() - before, 0);
+    }
+
+    // Cuts the file short or changes a byte or three, over and over, near
+    // the footer half the time; opening and querying may succeed or
+    // throw StreamCorruptedException, and nothing else.
+    private static void damaged(String mode, Path file, byte[] good, int copies, Random rnd) throws IOException {
+        int rejected = 0;
+        for (int k = 0; k < copies; k++) {
+            byte[] copy = rnd.nextInt(4) == 0 ? Arrays.copyOf(good, rnd.nextInt(good.length)) : good.clone();
+            int changes = 1 + rnd.nextInt(3);
+            for (int j = 0; j < changes && copy.length > 0; j++) {
+                int at = rnd.nextBoolean() ? copy.length - 1 - rnd.nextInt(Math.min(copy.length, 400))
+                        : rnd.nextInt(copy.length);
+                copy[at] = (byte) rnd.nextInt();
+            }
+            Files.write(file, copy);
+            try (ColumnReader r = new ColumnReader(file)) {
+                for (int c = 0; c < r.columns(); c++)
+                    r.sum(c, c, Long.MIN_VALUE, Long.MAX_VALUE);
+                r.count(0, 2, 3);
+                r.sum(0, 1, 100, 5000);
+            } catch (StreamCorruptedException e) {
+                rejected++;
+            } catch (Exception | Error e) {
+                fail(mode + " damaged copy " + k + " threw " + e);
+            }
+        }
+        System.out.println(mode + ": damaged copies: " + copies + ", rejected: " + rejected);
+    }
+
+    private static long[] toLong(int[] values) {
+        long[] out = new long[values.length];
+        for (int i = 0; i < values.length; i++)
+            out[i] = values[i];
+        return out;
+    }
+
+    private static void check(String what, long got, long want) {
+        if (got != want)
+            fail(what + ": got " + got + ", expected " + want);
+    }
+
+    private static void fail(String message) {
+        if (failures < 10)
+            System.out.println("FAILED: " + message);
+        failures++;
+    }
+}
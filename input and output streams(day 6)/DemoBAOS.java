@@ -7,6 +7,10 @@ class DemoBais {
             FileOutputStream focus1 = new FileOutputStream("s1.txt");
             FileOutputStream focus2 = new FileOutputStream("s2.txt");
 
+            // One stream over both files: the bytes are copied once and
+            // both files are written at the same time
+            TeeOutputStream tee = new TeeOutputStream(focus1.getChannel(), focus2.getChannel());
+
             // Create a ByteArrayOutputStream
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
 
@@ -16,8 +20,8 @@ class DemoBais {
             baos.write(str.getBytes()); // Writes the bytes of the string
 
             // Write the content of ByteArrayOutputStream to both files
-            baos.writeTo(focus1);
-            baos.writeTo(focus2);
+            baos.writeTo(tee);
+            tee.flush();
 
             // Convert ByteArrayOutputStream to byte array
             byte[] byteArray = baos.toByteArray();
@@ -25,15 +29,14 @@ class DemoBais {
             // Create a ByteArrayInputStream from the byte array
             ByteArrayInputStream bais = new ByteArrayInputStream(byteArray);
 
-            // Read and print the content from ByteArrayInputStream
-            int data;
-            while ((data = bais.read()) != -1) {
-                System.out.print((char) data);
-            }
+            // Read and print the content from ByteArrayInputStream, a block
+            // at a time rather than a byte
+            BlockCopy.copy(bais, System.out, null);
             System.out.println();
 
             // Close all streams
             baos.close();
+            tee.close();
             focus1.close();
             focus2.close();
             bais.close();
@@ -1,7 +1,17 @@
 
 import java.io.*;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
 class Student implements Serializable {
+    // name then city, as RecordWriter and RecordReader lay a Student out
+    static final RecordCodec<Student> CODEC =
+            new RecordCodec<Student>(r -> new Student(r.getString(0), r.getString(1)))
+                    .string("name", s -> s.name)
+                    .string("city", s -> s.city);
+
     String name;
     String city;
 
@@ -15,15 +25,18 @@ class DemoObj {
     public static void main(String[] args) throws Exception {
         Student s1 = new Student("Nithya", "Udumalpet");
 
-        try (FileOutputStream fout = new FileOutputStream("Data.txt");
-             ObjectOutputStream os = new ObjectOutputStream(fout)) {
+        // RecordWriter instead of ObjectOutputStream: a few bytes per
+        // Student, and nothing in the file can make the reader build
+        // anything but a Student
+        try (RecordWriter<Student> os = new RecordWriter<>(Student.CODEC, new FileOutputStream("Data.txt"))) {
 
-            os.writeObject(s1);
-            System.out.println("Object has been serialized and written to Data.txt");
+            os.write(s1);
             os.close();
-            ObjectInputStream ois=new ObjectInputStream(new FileInputStream("Data.txt"));
-           // System.out.print(ois.readObject());
-            Student s2=(Student)ois.readObject();
+            System.out.println("Object has been serialized and written to Data.txt");
+            RecordReader<Student> ois = new RecordReader<>(Student.CODEC,
+                    ByteBuffer.wrap(Files.readAllBytes(Paths.get("Data.txt"))));
+            ois.next();
+            Student s2 = ois.read();
             System.out.print(s2.name+" reside in "+s2.city);
 
         } catch (IOException e) {
@@ -0,0 +1,151 @@
+import java.io.*;
+
+// Moves the same chars and bytes from one thread to another through the
+// JDK pipes and through RingPipe, writing 8 KB at a time and 64 at a time,
+// and prints MB/s for each.
+//
+// The JDK pipes run with their default 1 KB buffer and with 64 KB, the
+// ring pipes with 64 KB. SPIN_THEN_PARK is only worth having with a CPU
+// for each thread; with fewer, expect it to trail PARK.
+//
+// Both kinds wake a waiting reader only when the buffer is full, on flush,
+// on close, or when its one-second poll runs out, so on one CPU the threads
+// take turns a whole buffer at a time. Machines shared with other work move
+// these numbers a lot from run to run; compare runs, not single lines. The
+// char pipes are no contest: PipedWriter hands over one char at a time.
+// Run: java PipeBench [MB]
+class PipeBench {
+    private static final int RING = 64 << 10;
+
+    interface Pipe {
+        Writer writer();
+        Reader reader();
+    }
+
+    interface BytePipe {
+        OutputStream output();
+        InputStream input();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int mb = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        System.out.printf("%d MB per run, %d CPUs%n", mb, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-32s %12s %12s%n", "", "8 KB writes", "64 B writes");
+        for (int round = 0; round < 2; round++) {
+            boolean print = round == 1;
+            chars(print, "PipedWriter/Reader 1 KB", mb, () -> jdkPipe(1024));
+            chars(print, "PipedWriter/Reader 64 KB", mb, () -> jdkPipe(RING));
+            chars(print, "CharRingPipe PARK", mb, () -> ringPipe(RingPipe.Wait.PARK));
+            chars(print, "CharRingPipe SPIN_THEN_PARK", mb, () -> ringPipe(RingPipe.Wait.SPIN_THEN_PARK));
+            bytes(print, "PipedOutput/InputStream 1 KB", mb, () -> jdkBytePipe(1024));
+            bytes(print, "PipedOutput/InputStream 64 KB", mb, () -> jdkBytePipe(RING));
+            bytes(print, "ByteRingPipe PARK", mb, () -> ringBytePipe(RingPipe.Wait.PARK));
+            bytes(print, "ByteRingPipe SPIN_THEN_PARK", mb, () -> ringBytePipe(RingPipe.Wait.SPIN_THEN_PARK));
+        }
+    }
+
+    interface Maker<P> {
+        P make() throws IOException;
+    }
+
+    private static Pipe jdkPipe(int size) throws IOException {
+        PipedReader reader = new PipedReader(size);
+        PipedWriter writer = new PipedWriter(reader);
+        return new Pipe() {
+            public Writer writer() { return writer; }
+            public Reader reader() { return reader; }
+        };
+    }
+
+    private static Pipe ringPipe(RingPipe.Wait wait) {
+        CharRingPipe pipe = new CharRingPipe(RING, wait);
+        return new Pipe() {
+            public Writer writer() { return pipe.writer(); }
+            public Reader reader() { return pipe.reader(); }
+        };
+    }
+
+    private static BytePipe jdkBytePipe(int size) throws IOException {
+        PipedInputStream input = new PipedInputStream(size);
+        PipedOutputStream output = new PipedOutputStream(input);
+        return new BytePipe() {
+            public OutputStream output() { return output; }
+            public InputStream input() { return input; }
+        };
+    }
+
+    private static BytePipe ringBytePipe(RingPipe.Wait wait) {
+        ByteRingPipe pipe = new ByteRingPipe(RING, wait);
+        return new BytePipe() {
+            public OutputStream output() { return pipe.output(); }
+            public InputStream input() { return pipe.input(); }
+        };
+    }
+
+    // MB here is 2^20 chars, so the same count as the byte runs
+    private static void chars(boolean print, String what, int mb, Maker<Pipe> maker) throws Exception {
+        double[] rates = new double[2];
+        int[] chunks = {8 << 10, 64};
+        for (int k = 0; k < 2; k++) {
+            Pipe pipe = maker.make();
+            long total = (long) mb << 20;
+            char[] out = new char[chunks[k]];
+            Thread writer = new Thread(() -> {
+                try (Writer w = pipe.writer()) {
+                    for (long sent = 0; sent < total; sent += out.length)
+                        w.write(out, 0, (int) Math.min(out.length, total - sent));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            long t0 = System.nanoTime();
+            writer.start();
+            char[] in = new char[8 << 10];
+            long got = 0;
+            int n;
+            try (Reader r = pipe.reader()) {
+                while ((n = r.read(in, 0, in.length)) > 0)
+                    got += n;
+            }
+            writer.join();
+            if (got != total)
+                throw new IllegalStateException(what + " moved " + got + " of " + total);
+            rates[k] = mb / ((System.nanoTime() - t0) / 1e9);
+        }
+        if (print)
+            System.out.printf("%-32s %12.0f %12.0f%n", what, rates[0], rates[1]);
+    }
+
+    private static void bytes(boolean print, String what, int mb, Maker<BytePipe> maker) throws Exception {
+        double[] rates = new double[2];
+        int[] chunks = {8 << 10, 64};
+        for (int k = 0; k < 2; k++) {
+            BytePipe pipe = maker.make();
+            long total = (long) mb << 20;
+            byte[] out = new byte[chunks[k]];
+            Thread writer = new Thread(() -> {
+                try (OutputStream o = pipe.output()) {
+                    for (long sent = 0; sent < total; sent += out.length)
+                        o.write(out, 0, (int) Math.min(out.length, total - sent));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            long t0 = System.nanoTime();
+            writer.start();
+            byte[] in = new byte[8 << 10];
+            long got = 0;
+            int n;
+            try (InputStream i = pipe.input()) {
+                while ((n = i.read(in, 0, in.length)) > 0)
+                    got += n;
+            }
+            writer.join();
+            if (got != total)
+                throw new IllegalStateException(what + " moved " + got + " of " + total);
+            rates[k] = mb / ((System.nanoTime() - t0) / 1e9);
+        }
+        if (print)
+            System.out.printf("%-32s %12.0f %12.0f%n", what, rates[0], rates[1]);
+    }
+}
@@ -0,0 +1,261 @@
+import java.io.*;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Checks RingPipe: bytes and chars arrive intact and in order through rings
+// from one slot up, with either wait mode and a mix of single and bulk
+// reads and writes; flush() hands a parked reader what is there at once; a
+// second writer thread can carry on after the first has ended; and closing
+// or interrupting one end stops the other as it should.
+// Run: java PipeCheck [MB]
+class PipeCheck {
+    // a flushed byte must get to the reader well inside the one-second poll
+    private static final long FLUSH_MILLIS = 500;
+
+    private static int failures;
+
+    interface Task {
+        void run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int mb = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        for (RingPipe.Wait wait : RingPipe.Wait.values()) {
+            for (int capacity : new int[] {1, 3, 64, 64 << 10}) {
+                // a small ring costs a thread switch every few bytes
+                long total = capacity < 64 ? 20_000 : capacity < 4096 ? 1 << 20 : (long) mb << 20;
+                bytes(wait, capacity, total);
+                chars(wait, capacity, total / 4);
+            }
+        }
+        flush();
+        handOver();
+        closing();
+
+        if (failures > 0) {
+            System.out.println("FAILED: " + failures + " check(s).");
+            System.exit(1);
+        }
+        System.out.println("OK: everything written came through intact.");
+    }
+
+    // byte i of the stream is (byte) i
+    private static void bytes(RingPipe.Wait wait, int capacity, long total) throws Exception {
+        ByteRingPipe pipe = new ByteRingPipe(capacity, wait);
+        Thread writer = start(() -> {
+            try (OutputStream out = pipe.output()) {
+                Random rnd = new Random(capacity);
+                byte[] b = new byte[5000];
+                for (long i = 0; i < total; ) {
+                    int n = (int) Math.min(total - i, 1 + rnd.nextInt(b.length));
+                    if (rnd.nextInt(10) == 0) {
+                        out.write((byte) i++);
+                        continue;
+                    }
+                    for (int j = 0; j < n; j++)
+                        b[j] = (byte) (i + j);
+                    out.write(b, 0, n);
+                    i += n;
+                    if (rnd.nextInt(100) == 0)
+                        out.flush();
+                }
+            }
+        });
+
+        Random rnd = new Random(1);
+        byte[] b = new byte[7000];
+        long i = 0;
+        try (InputStream in = pipe.input()) {
+            while (true) {
+                if (rnd.nextInt(8) == 0) {
+                    int x = in.read();
+                    if (x < 0)
+                        break;
+                    if ((byte) x != (byte) i) {
+                        fail(wait + " ring of " + capacity + ": byte " + i + " is wrong");
+                        break;
+                    }
+                    i++;
+                    continue;
+                }
+                int n = in.read(b, 0, 1 + rnd.nextInt(b.length - 1));
+                if (n < 0)
+                    break;
+                for (int j = 0; j < n; j++) {
+                    if (b[j] != (byte) (i + j)) {
+                        fail(wait + " ring of " + capacity + ": byte " + (i + j) + " is wrong");
+                        break;
+                    }
+                }
+                i += n;
+            }
+        }
+        writer.join();
+        if (i != total)
+            fail(wait + " ring of " + capacity + ": " + i + " of " + total + " bytes came through");
+    }
+
+    // char i of the stream is (char) i; every other write is a String
+    private static void chars(RingPipe.Wait wait, int capacity, long total) throws Exception {
+        CharRingPipe pipe = new CharRingPipe(capacity, wait);
+        Thread writer = start(() -> {
+            try (Writer out = pipe.writer()) {
+                Random rnd = new Random(capacity);
+                char[] c = new char[3000];
+                for (long i = 0; i < total; ) {
+                    int n = (int) Math.min(total - i, 1 + rnd.nextInt(c.length));
+                    for (int j = 0; j < n; j++)
+                        c[j] = (char) (i + j);
+                    if (rnd.nextBoolean())
+                        out.write(new String(c, 0, n));
+                    else
+                        out.write(c, 0, n);
+                    i += n;
+                }
+            }
+        });
+
+        char[] c = new char[4000];
+        long i = 0;
+        int n;
+        try (Reader in = pipe.reader()) {
+            while ((n = in.read(c, 0, c.length)) > 0) {
+                for (int j = 0; j < n; j++) {
+                    if (c[j] != (char) (i + j)) {
+                        fail(wait + " char ring of " + capacity + ": char " + (i + j) + " is wrong");
+                        break;
+                    }
+                }
+                i += n;
+            }
+        }
+        writer.join();
+        if (i != total)
+            fail(wait + " char ring of " + capacity + ": " + i + " of " + total + " chars came through");
+    }
+
+    // A parked reader is not woken by a write that leaves room in the ring,
+    // only by flush(), so this is timed from the flush.
+    private static void flush() throws Exception {
+        ByteRingPipe pipe = new ByteRingPipe(64 << 10, RingPipe.Wait.PARK);
+        long[] got = new long[1];
+        Thread reader = start(() -> {
+            if (pipe.input().read() != 7)
+                fail("flush: wrong byte");
+            got[0] = System.nanoTime();
+        });
+        Thread.sleep(100);
+        long t0 = System.nanoTime();
+        pipe.output().write(7);
+        pipe.output().flush();
+        reader.join();
+        long millis = (got[0] - t0) / 1_000_000;
+        System.out.println("Flushed byte read after " + millis + " ms");
+        if (millis > FLUSH_MILLIS)
+            fail("flush: the reader waited " + millis + " ms");
+
+        // without a flush the reader still finds it by itself
+        Thread poller = start(() -> {
+            if (pipe.input().read() != 8)
+                fail("poll: wrong byte");
+        });
+        Thread.sleep(100);
+        pipe.output().write(8);
+        poller.join(5000);
+        if (poller.isAlive())
+            fail("poll: an unflushed byte was never read");
+    }
+
+    // Unlike the JDK pipes, the pipe does not belong to the thread that
+    // wrote last: a new writer can carry on once the old one has ended.
+    private static void handOver() throws Exception {
+        CharRingPipe pipe = new CharRingPipe(8, RingPipe.Wait.PARK);
+        StringBuilder got = new StringBuilder();
+        Thread reader = start(() -> {
+            char[] c = new char[5];
+            int n;
+            while ((n = pipe.reader().read(c)) > 0)
+                got.append(c, 0, n);
+        });
+        start(() -> pipe.writer().write("Hello from the first writer, ")).join();
+        start(() -> {
+            try (Writer out = pipe.writer()) {
+                out.write("and the second after it ended.");
+            }
+        }).join();
+        reader.join();
+        if (!got.toString().equals("Hello from the first writer, and the second after it ended."))
+            fail("hand-over: read \"" + got + "\"");
+    }
+
+    private static void closing() throws Exception {
+        // a writer waiting on a full ring gives up when the reader closes
+        ByteRingPipe full = new ByteRingPipe(4, RingPipe.Wait.PARK);
+        AtomicReference<Exception> thrown = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                full.output().write(new byte[100]);
+            } catch (Exception e) {
+                thrown.set(e);
+            }
+        });
+        writer.start();
+        Thread.sleep(100);
+        full.input().close();
+        writer.join();
+        if (!(thrown.get() instanceof IOException))
+            fail("closed reader: the writer got " + thrown.get());
+
+        // a parked reader gives up when interrupted, and keeps the interrupt
+        ByteRingPipe empty = new ByteRingPipe(4, RingPipe.Wait.PARK);
+        thrown.set(null);
+        boolean[] interrupted = new boolean[1];
+        Thread reader = new Thread(() -> {
+            try {
+                empty.input().read();
+            } catch (Exception e) {
+                thrown.set(e);
+                interrupted[0] = Thread.currentThread().isInterrupted();
+            }
+        });
+        reader.start();
+        Thread.sleep(100);
+        reader.interrupt();
+        reader.join();
+        if (!(thrown.get() instanceof InterruptedIOException) || !interrupted[0])
+            fail("interrupted reader got " + thrown.get());
+
+        // what was written before close is still read, then end of stream
+        ByteRingPipe closed = new ByteRingPipe(4, RingPipe.Wait.PARK);
+        closed.output().write(new byte[] {1, 2, 3});
+        closed.output().close();
+        byte[] b = new byte[4];
+        if (closed.input().read(b) != 3 || closed.input().read() != -1)
+            fail("closed writer: data or end of stream lost");
+        try {
+            closed.output().write(4);
+            fail("closed writer: a write after close went through");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    // runs the task on a new thread, counting anything it throws as a failure
+    private static Thread start(Task task) {
+        Thread t = new Thread(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                fail("thread threw " + e);
+            }
+        });
+        t.start();
+        return t;
+    }
+
+    private static synchronized void fail(String message) {
+        if (failures < 10)
+            System.out.println("FAILED: " + message);
+        failures++;
+    }
+}
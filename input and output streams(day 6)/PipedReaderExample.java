@@ -1,9 +1,9 @@
 import java.io.*;
 
 class WriterThread extends Thread {
-    private final PipedWriter writer;
+    private final Writer writer;
 
-    public WriterThread(PipedWriter writer) {
+    public WriterThread(Writer writer) {
         this.writer = writer;
     }
 
@@ -19,9 +19,9 @@ class WriterThread extends Thread {
 }
 
 class ReaderThread extends Thread {
-    private final PipedReaderEx reader;
+    private final Reader reader;
 
-    public ReaderThread(PipedReaderEx reader) {
+    public ReaderThread(Reader reader) {
         this.reader = reader;
     }
 
@@ -41,17 +41,15 @@ class ReaderThread extends Thread {
 
 public class PipedReaderExample {
     public static void main(String[] args) {
-        try {
-            PipedWriter writer = new PipedWriter();
-            PipedReaderEx reader = new PipedReaderEx(writer);
+        // a CharRingPipe in place of PipedWriter and PipedReader: the
+        // reader sees the end of the text when the writer closes, whether or
+        // not the writer thread is still alive by then
+        CharRingPipe pipe = new CharRingPipe(1024, RingPipe.Wait.PARK);
 
-            WriterThread writerThread = new WriterThread(writer);
-            ReaderThread readerThread = new ReaderThread(reader);
+        WriterThread writerThread = new WriterThread(pipe.writer());
+        ReaderThread readerThread = new ReaderThread(pipe.reader());
 
-            writerThread.start();
-            readerThread.start();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        writerThread.start();
+        readerThread.start();
     }
 }
@@ -0,0 +1,410 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+// A binary layout for simple records such as Student, to use in place of
+// ObjectOutputStream: no class descriptors, no reflection, and a reader that
+// only ever builds the records its schema describes, so a damaged or hostile
+// file can at worst be rejected.
+//
+// The schema is the list of fields, in order, each a string, an int or a
+// long. A stream starts with a header naming the fields, which the reader
+// checks against its own schema, then holds any number of records. A stream
+// may have more fields than the reader knows, as long as the reader's come
+// first, as written by a newer schema that added fields at the end:
+//
+//   header   "REC1", varint field count, then per field: type byte, name
+//   record   varint length of the body, then each field in schema order
+//   string   varint length in bytes, then UTF-8
+//   int/long zigzag varint, so small negative numbers stay short too
+//
+// The length in front of each record lets a reader check a record lies
+// inside the buffer before it looks at any field, and skip it whole.
+class RecordCodec<T> {
+    static final byte STRING = 1;
+    static final byte INT = 2;
+    static final byte LONG = 3;
+
+    static final byte[] MAGIC = {'R', 'E', 'C', '1'};
+    // a record bigger than this is taken as a damaged length
+    static final int MAX_RECORD = 1 << 20;
+
+    // Builds a record from the reader's current position. Called once per
+    // record by RecordReader.read().
+    interface Factory<T> {
+        T create(RecordReader<T> record) throws IOException;
+    }
+
+    private final Factory<T> factory;
+    private final List<String> names = new ArrayList<>();
+    private final List<Byte> types = new ArrayList<>();
+    private final List<Object> getters = new ArrayList<>();
+
+    RecordCodec(Factory<T> factory) {
+        this.factory = factory;
+    }
+
+    RecordCodec<T> string(String name, Function<T, String> getter) {
+        return add(name, STRING, getter);
+    }
+
+    RecordCodec<T> int32(String name, ToIntFunction<T> getter) {
+        return add(name, INT, getter);
+    }
+
+    RecordCodec<T> int64(String name, ToLongFunction<T> getter) {
+        return add(name, LONG, getter);
+    }
+
+    private RecordCodec<T> add(String name, byte type, Object getter) {
+        names.add(name);
+        types.add(type);
+        getters.add(getter);
+        return this;
+    }
+
+    int fieldCount() {
+        return names.size();
+    }
+
+    String fieldName(int field) {
+        return names.get(field);
+    }
+
+    byte fieldType(int field) {
+        return types.get(field);
+    }
+
+    // index of the named field, or -1
+    int field(String name) {
+        return names.indexOf(name);
+    }
+
+    Factory<T> factory() {
+        return factory;
+    }
+
+    // the header, as RecordWriter writes it first
+    byte[] header() {
+        Bytes b = new Bytes(64);
+        for (byte m : MAGIC)
+            b.put(m);
+        b.putVarint(names.size());
+        for (int f = 0; f < names.size(); f++) {
+            b.put(types.get(f));
+            b.putString(names.get(f));
+        }
+        return Arrays.copyOf(b.array, b.length);
+    }
+
+    // Appends one record, length first, to b. The body is written after a
+    // one-byte length, which is widened afterwards in the rare case the body
+    // needs more. Throws IllegalArgumentException, leaving b as it was, for
+    // a record too big for a reader to accept.
+    @SuppressWarnings("unchecked")
+    void encode(T value, Bytes b) {
+        int start = b.length;
+        b.put((byte) 0);
+        for (int f = 0; f < names.size(); f++) {
+            Object getter = getters.get(f);
+            switch (types.get(f)) {
+                case STRING:
+                    String s = ((Function<T, String>) getter).apply(value);
+                    b.putString(s == null ? "" : s);
+                    break;
+                case INT:
+                    b.putVarint(zigzag(((ToIntFunction<T>) getter).applyAsInt(value)));
+                    break;
+                default:
+                    b.putVarint(zigzag(((ToLongFunction<T>) getter).applyAsLong(value)));
+            }
+        }
+        int size = b.length - start - 1;
+        if (size > MAX_RECORD) {
+            b.length = start;
+            throw new IllegalArgumentException("Record is larger than " + MAX_RECORD + " bytes.");
+        }
+        b.patchLength(start, size);
+    }
+
+    static long zigzag(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+
+    static long unzigzag(long n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    static int varintSize(long n) {
+        int size = 1;
+        while ((n & ~0x7FL) != 0) {
+            n >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    // A growing byte array that records are encoded into.
+    static class Bytes {
+        byte[] array;
+        int length;
+
+        Bytes(int capacity) {
+            array = new byte[capacity];
+        }
+
+        void clear() {
+            length = 0;
+        }
+
+        void put(byte b) {
+            room(1);
+            array[length++] = b;
+        }
+
+        void putVarint(long n) {
+            room(10);
+            while ((n & ~0x7FL) != 0) {
+                array[length++] = (byte) (n | 0x80);
+                n >>>= 7;
+            }
+            array[length++] = (byte) n;
+        }
+
+        // Copies chars straight in while they are plain ASCII, and starts
+        // again through the JDK's UTF-8 encoder at the first that is not.
+        void putString(String s) {
+            int start = length;
+            int n = s.length();
+            putVarint(n);
+            room(n);
+            for (int i = 0; i < n; i++) {
+                char c = s.charAt(i);
+                if (c >= 0x80) {
+                    length = start;
+                    byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+                    putVarint(utf8.length);
+                    room(utf8.length);
+                    System.arraycopy(utf8, 0, array, length, utf8.length);
+                    length += utf8.length;
+                    return;
+                }
+                array[length + i] = (byte) c;
+            }
+            length += n;
+        }
+
+        // Writes size into the byte at 'at', moving what follows along when
+        // it takes more than one.
+        void patchLength(int at, int size) {
+            int extra = varintSize(size) - 1;
+            if (extra > 0) {
+                room(extra);
+                System.arraycopy(array, at + 1, array, at + 1 + extra, length - at - 1);
+                length += extra;
+            }
+            int end = length;
+            length = at;
+            putVarint(size);
+            length = end;
+        }
+
+        private void room(int n) {
+            if (length + n > array.length)
+                array = Arrays.copyOf(array, Math.max(array.length * 2, length + n));
+        }
+    }
+}
+
+// Writes records through a RecordCodec to a stream, header first, and sends
+// them on in blocks of about 64 KB.
+class RecordWriter<T> implements Closeable, Flushable {
+    private static final int BLOCK = 64 << 10;
+
+    private final RecordCodec<T> codec;
+    private final OutputStream out;
+    private final RecordCodec.Bytes buf = new RecordCodec.Bytes(BLOCK + 1024);
+
+    RecordWriter(RecordCodec<T> codec, OutputStream out) throws IOException {
+        this.codec = codec;
+        this.out = out;
+        out.write(codec.header());
+    }
+
+    void write(T value) throws IOException {
+        codec.encode(value, buf);
+        if (buf.length >= BLOCK)
+            flushBuffer();
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buf.array, 0, buf.length);
+        buf.clear();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+}
+
+// Reads records straight out of a ByteBuffer, heap, direct or a mapped file.
+// next() moves to the next record and checks where each of its fields is
+// without copying anything; the get methods then read one field, and
+// stringEquals compares one without building a String, so a scan that
+// filters on a field only decodes the records it keeps.
+//
+// Every length is checked against the record and the record against the
+// buffer, and a varint may not run past ten bytes; anything else throws
+// StreamCorruptedException, as ObjectInputStream does for a damaged stream.
+class RecordReader<T> {
+    private final RecordCodec<T> codec;
+    private final ByteBuffer buf;
+    private final byte[] types;
+    // for the current record: where each string starts and how long it is,
+    // or each number's value
+    private final int[] at;
+    private final int[] len;
+    private final long[] values;
+    private byte[] scratch = new byte[64];
+    private int pos;
+
+    RecordReader(RecordCodec<T> codec, ByteBuffer buf) throws StreamCorruptedException {
+        this.codec = codec;
+        this.buf = buf;
+        this.pos = buf.position();
+        int n = codec.fieldCount();
+        this.types = new byte[n];
+        this.at = new int[n];
+        this.len = new int[n];
+        this.values = new long[n];
+        readHeader();
+    }
+
+    // Moves to the next record; false when the buffer is used up.
+    boolean next() throws StreamCorruptedException {
+        if (pos >= buf.limit())
+            return false;
+        long size = varint();
+        if (size < 0 || size > RecordCodec.MAX_RECORD || size > buf.limit() - pos)
+            throw new StreamCorruptedException("Record runs past the end of the data.");
+        int end = pos + (int) size;
+        for (int f = 0; f < types.length; f++) {
+            if (types[f] == RecordCodec.STRING) {
+                long n = varint();
+                if (n < 0 || n > end - pos)
+                    throw new StreamCorruptedException("String runs past the end of its record.");
+                at[f] = pos;
+                len[f] = (int) n;
+                pos += (int) n;
+            } else {
+                values[f] = RecordCodec.unzigzag(varint());
+            }
+            if (pos > end)
+                throw new StreamCorruptedException("Field runs past the end of its record.");
+        }
+        // fields a newer writer added at the end, which readHeader let
+        // through, are skipped with the rest of the record
+        pos = end;
+        return true;
+    }
+
+    T read() throws IOException {
+        return codec.factory().create(this);
+    }
+
+    String getString(int field) {
+        int n = len[field];
+        if (buf.hasArray())
+            return new String(buf.array(), buf.arrayOffset() + at[field], n, StandardCharsets.UTF_8);
+        if (scratch.length < n)
+            scratch = new byte[Math.max(n, scratch.length * 2)];
+        buf.get(at[field], scratch, 0, n);
+        return new String(scratch, 0, n, StandardCharsets.UTF_8);
+    }
+
+    // UTF-8 length of a string field
+    int getStringLength(int field) {
+        return len[field];
+    }
+
+    boolean stringEquals(int field, byte[] utf8) {
+        if (len[field] != utf8.length)
+            return false;
+        int start = at[field];
+        for (int i = 0; i < utf8.length; i++)
+            if (buf.get(start + i) != utf8[i])
+                return false;
+        return true;
+    }
+
+    // Throws when the value does not fit an int, which only a damaged
+    // stream can hold, instead of quietly cutting it down.
+    int getInt(int field) throws StreamCorruptedException {
+        long v = values[field];
+        if (v != (int) v)
+            throw new StreamCorruptedException("Field " + (field + 1) + " is out of int range: " + v + ".");
+        return (int) v;
+    }
+
+    long getLong(int field) {
+        return values[field];
+    }
+
+    private void readHeader() throws StreamCorruptedException {
+        for (byte m : RecordCodec.MAGIC)
+            if (pos >= buf.limit() || buf.get(pos++) != m)
+                throw new StreamCorruptedException("Not a record stream.");
+        long n = varint();
+        if (n < codec.fieldCount())
+            throw new StreamCorruptedException("Stream has " + n + " fields, expected " + codec.fieldCount() + ".");
+        // n may still be damaged; each field takes at least two bytes, so the
+        // loop runs into the end of the header well before n
+        for (long f = 0; f < n; f++) {
+            if (pos >= buf.limit())
+                throw new StreamCorruptedException("Header is cut short.");
+            byte type = buf.get(pos++);
+            long nameLen = varint();
+            if (nameLen < 0 || nameLen > buf.limit() - pos)
+                throw new StreamCorruptedException("Header is cut short.");
+            if (f >= types.length) {
+                // a field added after ours, skipped in every record
+                pos += (int) nameLen;
+                continue;
+            }
+            byte[] name = new byte[(int) nameLen];
+            buf.get(pos, name);
+            pos += name.length;
+            int i = (int) f;
+            if (type != codec.fieldType(i) || !codec.fieldName(i).equals(new String(name, StandardCharsets.UTF_8)))
+                throw new StreamCorruptedException("Field " + (f + 1) + " does not match the schema.");
+            types[i] = type;
+        }
+    }
+
+    private long varint() throws StreamCorruptedException {
+        long n = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            if (pos >= buf.limit())
+                throw new StreamCorruptedException("Data ends inside a number.");
+            byte b = buf.get(pos++);
+            n |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return n;
+        }
+        throw new StreamCorruptedException("Number is too long.");
+    }
+}
@@ -0,0 +1,87 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Writing and reading a million Students with ObjectOutputStream against
+// RecordWriter and RecordReader, all in memory: time per record, throughput
+// and bytes per record. The last line scans the records for one city
+// without building a Student, which Serializable cannot do.
+//
+// Each Student gets its own String objects, as if read from input:
+// ObjectOutputStream writes a repeat of the same object as a back-reference,
+// which would flatter it here.
+// Run: java RecordCodecBench [records]
+class RecordCodecBench {
+    private static final String[] NAMES = {"Nithya", "Arun", "Priya", "Karthik", "Divya", "Sanjay", "Meena",
+            "Vignesh", "Lakshmi", "Ramesh", "Kavya", "Surya", "Anitha", "Gokul", "Harini", "Praveen"};
+    private static final String[] CITIES = {"Udumalpet", "Coimbatore", "Chennai", "Madurai", "Tiruppur",
+            "Salem", "Erode", "Pollachi", "Trichy", "Vellore"};
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Student[] students = new Student[n];
+        for (int i = 0; i < n; i++)
+            students[i] = new Student(NAMES[i % NAMES.length] + " " + (char) ('A' + i % 26),
+                    new String(CITIES[i % CITIES.length]));
+
+        System.out.printf("%d students%n", n);
+        System.out.printf("%-24s %10s %10s %12s%n", "", "ns/record", "MB/s", "bytes/record");
+        for (int round = 0; round < 3; round++) {
+            boolean print = round == 2;
+
+            long t0 = System.nanoTime();
+            ByteArrayOutputStream javaBytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(javaBytes))) {
+                for (Student s : students)
+                    out.writeObject(s);
+            }
+            report(print, "Serializable write", t0, n, javaBytes.size());
+
+            t0 = System.nanoTime();
+            long check = 0;
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(javaBytes.toByteArray()))) {
+                for (int i = 0; i < n; i++)
+                    check += ((Student) in.readObject()).city.length();
+            }
+            report(print, "Serializable read", t0, n, javaBytes.size());
+
+            t0 = System.nanoTime();
+            ByteArrayOutputStream codecBytes = new ByteArrayOutputStream();
+            try (RecordWriter<Student> out = new RecordWriter<>(Student.CODEC, codecBytes)) {
+                for (Student s : students)
+                    out.write(s);
+            }
+            report(print, "RecordWriter", t0, n, codecBytes.size());
+
+            ByteBuffer buf = ByteBuffer.wrap(codecBytes.toByteArray());
+            t0 = System.nanoTime();
+            RecordReader<Student> in = new RecordReader<>(Student.CODEC, buf);
+            while (in.next())
+                check -= in.read().city.length();
+            report(print, "RecordReader", t0, n, codecBytes.size());
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(buf.capacity()).put(buf.duplicate());
+            direct.flip();
+            byte[] city = "Udumalpet".getBytes(StandardCharsets.UTF_8);
+            int cityField = Student.CODEC.field("city");
+            int found = 0;
+            t0 = System.nanoTime();
+            in = new RecordReader<>(Student.CODEC, direct);
+            while (in.next())
+                if (in.stringEquals(cityField, city))
+                    found++;
+            report(print, "RecordReader city scan", t0, n, codecBytes.size());
+
+            if (check != 0 || found != (n + CITIES.length - 1) / CITIES.length)
+                throw new IllegalStateException("records read back wrong");
+        }
+    }
+
+    private static void report(boolean print, String what, long t0, int n, long bytes) {
+        if (!print)
+            return;
+        double nanos = System.nanoTime() - t0;
+        System.out.printf("%-24s %10.1f %10.0f %12.1f%n", what, nanos / n, bytes / 1e6 / (nanos / 1e9),
+                (double) bytes / n);
+    }
+}
@@ -0,0 +1,182 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// Checks RecordWriter and RecordReader: records come back as written from
+// heap and direct buffers, a stream from a newer schema with an extra field
+// reads with the older one, and damaged data, cut short or with bytes
+// changed, is only ever rejected with StreamCorruptedException.
+// Run: java RecordCodecCheck [damagedCopies]
+class RecordCodecCheck {
+    private static final String[] SAMPLES = {"", "abc", "héllo", "日本語", "😀 ok",
+            "bad\ud800x", "x".repeat(300)};
+
+    private static int failures;
+
+    static final class Row {
+        final String name;
+        final int count;
+        final long total;
+
+        Row(String name, int count, long total) {
+            this.name = name;
+            this.count = count;
+            this.total = total;
+        }
+    }
+
+    private static final RecordCodec<Row> CODEC = new RecordCodec<Row>(
+            r -> new Row(r.getString(0), r.getInt(1), r.getLong(2)))
+            .string("name", r -> r.name)
+            .int32("count", r -> r.count)
+            .int64("total", r -> r.total);
+
+    public static void main(String[] args) throws Exception {
+        int copies = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        Random rnd = new Random(22);
+        List<Row> rows = new ArrayList<>();
+        int[] ints = {0, 1, -1, Integer.MIN_VALUE, Integer.MAX_VALUE};
+        long[] longs = {0, -1, Long.MIN_VALUE, Long.MAX_VALUE, 1L << 40};
+        for (int i = 0; i < 1000; i++) {
+            int count = i < ints.length ? ints[i] : rnd.nextInt();
+            long total = i < longs.length ? longs[i] : rnd.nextLong() >> rnd.nextInt(64);
+            rows.add(new Row(SAMPLES[rnd.nextInt(SAMPLES.length)] + i, count, total));
+        }
+        byte[] bytes = write(CODEC, rows);
+
+        roundTrip(bytes, rows);
+        newerSchema(rows);
+        damaged(bytes, copies, rnd);
+        try {
+            write(CODEC, List.of(new Row("y".repeat(RecordCodec.MAX_RECORD), 0, 0)));
+            fail("a record over MAX_RECORD was written");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        if (failures > 0) {
+            System.out.println("FAILED: " + failures + " check(s).");
+            System.exit(1);
+        }
+        System.out.println("OK: records round-trip and damaged data is rejected cleanly.");
+    }
+
+    // Strings come back as their UTF-8 encoding decodes, so a lone surrogate
+    // comes back as '?'.
+    private static void roundTrip(byte[] bytes, List<Row> rows) throws IOException {
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+        for (ByteBuffer buf : new ByteBuffer[] {ByteBuffer.wrap(bytes), direct}) {
+            RecordReader<Row> reader = new RecordReader<>(CODEC, buf);
+            int i = 0;
+            while (reader.next()) {
+                Row got = reader.read();
+                Row want = rows.get(i++);
+                String name = new String(want.name.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+                if (!got.name.equals(name) || got.count != want.count || got.total != want.total)
+                    fail((buf.isDirect() ? "direct" : "heap") + " record " + i + " came back different");
+            }
+            if (i != rows.size())
+                fail((buf.isDirect() ? "direct" : "heap") + " buffer read " + i + " of " + rows.size() + " records");
+        }
+        RecordReader<Row> empty = new RecordReader<>(CODEC, ByteBuffer.wrap(write(CODEC, List.of())));
+        if (empty.next())
+            fail("a stream with no records has one");
+    }
+
+    private static void newerSchema(List<Row> rows) throws IOException {
+        RecordCodec<Row> newer = new RecordCodec<Row>(r -> null)
+                .string("name", r -> r.name)
+                .int32("count", r -> r.count)
+                .int64("total", r -> r.total)
+                .string("city", r -> "Udumalpet");
+        RecordReader<Row> reader = new RecordReader<>(CODEC, ByteBuffer.wrap(write(newer, rows)));
+        int i = 0;
+        while (reader.next()) {
+            Row got = reader.read();
+            if (got.count != rows.get(i).count || got.total != rows.get(i).total)
+                fail("newer record " + (i + 1) + " read wrong");
+            i++;
+        }
+        if (i != rows.size())
+            fail("newer stream read " + i + " of " + rows.size() + " records");
+
+        RecordCodec<Row> renamed = new RecordCodec<Row>(r -> null)
+                .string("name", r -> r.name)
+                .int32("amount", r -> r.count);
+        RecordCodec<Row> retyped = new RecordCodec<Row>(r -> null)
+                .string("name", r -> r.name)
+                .int64("count", r -> r.count);
+        RecordCodec<Row> shorter = new RecordCodec<Row>(r -> null)
+                .string("name", r -> r.name);
+        rejected("a renamed field", () -> new RecordReader<>(renamed, ByteBuffer.wrap(write(CODEC, rows))));
+        rejected("a field of another type", () -> new RecordReader<>(retyped, ByteBuffer.wrap(write(CODEC, rows))));
+        rejected("a stream with fewer fields", () -> new RecordReader<>(CODEC, ByteBuffer.wrap(write(shorter, rows))));
+        rejected("no header", () -> new RecordReader<>(CODEC, ByteBuffer.wrap(new byte[0])));
+
+        // an int field holding a long, as only a damaged stream can
+        RecordCodec<Row> wide = new RecordCodec<Row>(r -> null).int64("count", r -> r.total);
+        RecordCodec<Row> narrow = new RecordCodec<Row>(r -> new Row("", r.getInt(0), 0)).int32("count", r -> r.count);
+        byte[] bytes = write(wide, List.of(new Row("", 0, 1L << 40)));
+        bytes[RecordCodec.MAGIC.length + 1] = RecordCodec.INT;
+        rejected("an int out of range", () -> {
+            RecordReader<Row> damaged = new RecordReader<>(narrow, ByteBuffer.wrap(bytes));
+            while (damaged.next())
+                damaged.read();
+        });
+    }
+
+    // Cuts the stream short and changes a few bytes, over and over; reading
+    // may succeed or throw StreamCorruptedException, and nothing else.
+    private static void damaged(byte[] bytes, int copies, Random rnd) {
+        int rejected = 0;
+        for (int k = 0; k < copies; k++) {
+            byte[] copy = Arrays.copyOf(bytes, rnd.nextInt(bytes.length + 1));
+            for (int j = 0; j < 3 && copy.length > 0; j++)
+                copy[rnd.nextInt(copy.length)] = (byte) rnd.nextInt();
+            try {
+                RecordReader<Row> reader = new RecordReader<>(CODEC, ByteBuffer.wrap(copy));
+                while (reader.next())
+                    reader.read();
+            } catch (StreamCorruptedException e) {
+                rejected++;
+            } catch (Exception | Error e) {
+                fail("damaged copy " + k + " threw " + e);
+            }
+        }
+        System.out.println("Damaged copies: " + copies + ", rejected: " + rejected);
+    }
+
+    interface Reading {
+        void run() throws IOException;
+    }
+
+    private static void rejected(String what, Reading reading) {
+        try {
+            reading.run();
+            fail(what + " was not rejected");
+        } catch (StreamCorruptedException e) {
+            // expected
+        } catch (IOException | RuntimeException e) {
+            fail(what + " threw " + e);
+        }
+    }
+
+    private static byte[] write(RecordCodec<Row> codec, List<Row> rows) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (RecordWriter<Row> writer = new RecordWriter<>(codec, out)) {
+            for (Row r : rows)
+                writer.write(r);
+        }
+        return out.toByteArray();
+    }
+
+    private static void fail(String message) {
+        if (failures < 10)
+            System.out.println("FAILED: " + message);
+        failures++;
+    }
+}
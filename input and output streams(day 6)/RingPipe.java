@@ -0,0 +1,398 @@
+import java.io.*;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+// A pipe between one writing thread and one reading thread, in place of
+// PipedWriter/PipedReader and PipedOutputStream/PipedInputStream.
+//
+// The JDK pipes hold 1 KB by default, hand over data under a lock with
+// wait/notifyAll, and remember which thread last wrote: once that thread
+// ends, the reader gets "Write end dead" even though nothing was closed.
+// Here the buffer is a ring of any power-of-two size, and the two ends
+// share nothing but two counters, each written by one side only, so
+// neither side ever takes a lock. Only close() ends the pipe; which threads
+// do the writing and reading does not matter, as long as there is one of
+// each at a time.
+//
+// When the ring is empty (for the reader) or full (for the writer) the
+// thread either parks at once, or first spins a little in case the other
+// side is about to catch up. Spinning only pays when the two threads run
+// on different CPUs; on one CPU it burns the time slice the other thread
+// needs.
+//
+// As in the JDK pipes, a parked side is only woken once the other has done
+// all it can: the writer wakes the reader when the ring is full, on flush()
+// and on close(), and the reader wakes the writer when it has emptied the
+// ring. Waking a thread tends to hand it the CPU there and then, so waking
+// the reader on every write cost a thread switch per write; now it is two
+// per ring. A reader left waiting by a writer that neither fills the ring,
+// flushes nor closes looks again by itself after a second, as the JDK pipes
+// do. Each side stores its counter, then looks to see whether the other
+// side is parked and takes it off the parked field before unparking it.
+// Both are volatile, so a side about to park always sees the counter move,
+// or is seen and woken.
+abstract class RingPipe {
+    enum Wait { PARK, SPIN_THEN_PARK }
+
+    private static final int SPINS = 2000;
+    // how long a parked reader waits before it looks again by itself, as
+    // the JDK pipes do, in case the writer neither fills nor flushes
+    private static final long POLL_NANOS = 1_000_000_000L;
+    private static final AtomicReferenceFieldUpdater<RingPipe, Thread> PARKED_READER =
+            AtomicReferenceFieldUpdater.newUpdater(RingPipe.class, Thread.class, "parkedReader");
+    private static final AtomicReferenceFieldUpdater<RingPipe, Thread> PARKED_WRITER =
+            AtomicReferenceFieldUpdater.newUpdater(RingPipe.class, Thread.class, "parkedWriter");
+
+    final int capacity;
+    final int mask;
+    private final int spins;
+
+    // everything read so far; written by the reader only
+    volatile long head;
+    // everything written so far; written by the writer only
+    volatile long tail;
+    // each side's last look at the other's counter, so a side only reads
+    // the other's volatile when it has run out of room or data
+    long cachedHead;
+    long cachedTail;
+
+    volatile boolean writeClosed;
+    volatile boolean readClosed;
+    volatile Thread parkedReader;
+    volatile Thread parkedWriter;
+
+    // capacity is rounded up to a power of two
+    RingPipe(int capacity, Wait wait) {
+        if (capacity < 1 || capacity > 1 << 30)
+            throw new IllegalArgumentException("Capacity must be from 1 to 2^30, was " + capacity + ".");
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.spins = wait == Wait.SPIN_THEN_PARK ? SPINS : 0;
+    }
+
+    // Waits until there is something to read, and returns how much, or -1
+    // once the writer has closed and everything has been read.
+    final int awaitData() throws IOException {
+        if (readClosed)
+            throw new IOException("Pipe closed");
+        long h = head;
+        if (cachedTail != h)
+            return (int) (cachedTail - h);
+        int spun = 0;
+        while (true) {
+            long t = tail;
+            if (t != h) {
+                cachedTail = t;
+                return (int) (t - h);
+            }
+            if (writeClosed) {
+                if (tail != h)
+                    continue;
+                return -1;
+            }
+            if (spun < spins) {
+                spun++;
+                Thread.onSpinWait();
+                continue;
+            }
+            parkedReader = Thread.currentThread();
+            if (tail == h && !writeClosed && !readClosed)
+                LockSupport.parkNanos(this, POLL_NANOS);
+            parkedReader = null;
+            checkInterrupt();
+            if (readClosed)
+                throw new IOException("Pipe closed");
+        }
+    }
+
+    // Waits until there is room to write, and returns how much.
+    final int awaitSpace() throws IOException {
+        checkWritable();
+        long t = tail;
+        if (t - cachedHead < capacity)
+            return (int) (capacity - (t - cachedHead));
+        int spun = 0;
+        while (true) {
+            long h = head;
+            if (t - h < capacity) {
+                cachedHead = h;
+                return (int) (capacity - (t - h));
+            }
+            if (spun < spins) {
+                spun++;
+                Thread.onSpinWait();
+                continue;
+            }
+            parkedWriter = Thread.currentThread();
+            if (tail - head >= capacity && !readClosed && !writeClosed)
+                LockSupport.park(this);
+            parkedWriter = null;
+            checkInterrupt();
+            checkWritable();
+        }
+    }
+
+    final void wrote(int n) {
+        long t = tail + n;
+        tail = t;
+        if (parkedReader != null && t - head == capacity)
+            unpark(PARKED_READER.getAndSet(this, null));
+    }
+
+    final void read(int n) {
+        long h = head + n;
+        head = h;
+        if (parkedWriter != null && tail == h)
+            unpark(PARKED_WRITER.getAndSet(this, null));
+    }
+
+    // hands whatever has been written to a parked reader now
+    final void flushWrites() throws IOException {
+        checkWritable();
+        if (parkedReader != null)
+            unpark(PARKED_READER.getAndSet(this, null));
+    }
+
+    // what can be read now without waiting
+    final int available() throws IOException {
+        if (readClosed)
+            throw new IOException("Pipe closed");
+        return (int) (tail - head);
+    }
+
+    final void closeWrite() {
+        writeClosed = true;
+        unpark(PARKED_READER.getAndSet(this, null));
+    }
+
+    final void closeRead() {
+        readClosed = true;
+        unpark(PARKED_WRITER.getAndSet(this, null));
+    }
+
+    final void checkWritable() throws IOException {
+        if (writeClosed)
+            throw new IOException("Pipe closed");
+        if (readClosed)
+            throw new IOException("Read end closed");
+    }
+
+    private static void unpark(Thread thread) {
+        if (thread != null)
+            LockSupport.unpark(thread);
+    }
+
+    // as the JDK pipes do: keep the interrupt and give up the wait
+    private static void checkInterrupt() throws InterruptedIOException {
+        if (Thread.interrupted()) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+}
+
+// A RingPipe of chars, read through reader() and written through writer().
+class CharRingPipe extends RingPipe {
+    private final char[] ring;
+    private final Reader reader = new RingReader();
+    private final Writer writer = new RingWriter();
+
+    CharRingPipe(int capacity, Wait wait) {
+        super(capacity, wait);
+        ring = new char[this.capacity];
+    }
+
+    Reader reader() {
+        return reader;
+    }
+
+    Writer writer() {
+        return writer;
+    }
+
+    private class RingReader extends Reader {
+        @Override
+        public int read() throws IOException {
+            if (awaitData() < 0)
+                return -1;
+            char c = ring[(int) head & mask];
+            CharRingPipe.this.read(1);
+            return c;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if ((off | len) < 0 || len > cbuf.length - off)
+                throw new IndexOutOfBoundsException();
+            if (len == 0)
+                return 0;
+            int n = awaitData();
+            if (n < 0)
+                return -1;
+            n = Math.min(n, len);
+            int at = (int) head & mask;
+            int first = Math.min(n, capacity - at);
+            System.arraycopy(ring, at, cbuf, off, first);
+            System.arraycopy(ring, 0, cbuf, off + first, n - first);
+            CharRingPipe.this.read(n);
+            return n;
+        }
+
+        @Override
+        public boolean ready() throws IOException {
+            return available() > 0;
+        }
+
+        @Override
+        public void close() {
+            closeRead();
+        }
+    }
+
+    private class RingWriter extends Writer {
+        @Override
+        public void write(int c) throws IOException {
+            awaitSpace();
+            ring[(int) tail & mask] = (char) c;
+            wrote(1);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            if ((off | len) < 0 || len > cbuf.length - off)
+                throw new IndexOutOfBoundsException();
+            while (len > 0) {
+                int n = Math.min(awaitSpace(), len);
+                int at = (int) tail & mask;
+                int first = Math.min(n, capacity - at);
+                System.arraycopy(cbuf, off, ring, at, first);
+                System.arraycopy(cbuf, off + first, ring, 0, n - first);
+                wrote(n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        // straight from the String into the ring, without the copy Writer
+        // would make first
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            if ((off | len) < 0 || len > str.length() - off)
+                throw new IndexOutOfBoundsException();
+            while (len > 0) {
+                int n = Math.min(awaitSpace(), len);
+                int at = (int) tail & mask;
+                int first = Math.min(n, capacity - at);
+                str.getChars(off, off + first, ring, at);
+                str.getChars(off + first, off + n, ring, 0);
+                wrote(n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushWrites();
+        }
+
+        @Override
+        public void close() {
+            closeWrite();
+        }
+    }
+}
+
+// A RingPipe of bytes, read through input() and written through output().
+class ByteRingPipe extends RingPipe {
+    private final byte[] ring;
+    private final InputStream input = new RingInput();
+    private final OutputStream output = new RingOutput();
+
+    ByteRingPipe(int capacity, Wait wait) {
+        super(capacity, wait);
+        ring = new byte[this.capacity];
+    }
+
+    InputStream input() {
+        return input;
+    }
+
+    OutputStream output() {
+        return output;
+    }
+
+    private class RingInput extends InputStream {
+        @Override
+        public int read() throws IOException {
+            if (awaitData() < 0)
+                return -1;
+            int b = ring[(int) head & mask] & 0xFF;
+            ByteRingPipe.this.read(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if ((off | len) < 0 || len > b.length - off)
+                throw new IndexOutOfBoundsException();
+            if (len == 0)
+                return 0;
+            int n = awaitData();
+            if (n < 0)
+                return -1;
+            n = Math.min(n, len);
+            int at = (int) head & mask;
+            int first = Math.min(n, capacity - at);
+            System.arraycopy(ring, at, b, off, first);
+            System.arraycopy(ring, 0, b, off + first, n - first);
+            ByteRingPipe.this.read(n);
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return ByteRingPipe.this.available();
+        }
+
+        @Override
+        public void close() {
+            closeRead();
+        }
+    }
+
+    private class RingOutput extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            awaitSpace();
+            ring[(int) tail & mask] = (byte) b;
+            wrote(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if ((off | len) < 0 || len > b.length - off)
+                throw new IndexOutOfBoundsException();
+            while (len > 0) {
+                int n = Math.min(awaitSpace(), len);
+                int at = (int) tail & mask;
+                int first = Math.min(n, capacity - at);
+                System.arraycopy(b, off, ring, at, first);
+                System.arraycopy(b, off + first, ring, 0, n - first);
+                wrote(n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushWrites();
+        }
+
+        @Override
+        public void close() {
+            closeWrite();
+        }
+    }
+}
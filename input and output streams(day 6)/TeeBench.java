@@ -0,0 +1,94 @@
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+// Writes the same data to 1, 2 and 4 files, first the way demoBaos does,
+// one FileOutputStream after another for each 1 MB, then through one
+// TeeOutputStream, and prints MB/s of data (not of data times files).
+// "synced" runs finish with every file forced to disk, so they measure the
+// disk; the others mostly measure copying into the page cache.
+// Run: java TeeBench [sizeMB] [directory]
+class TeeBench {
+    public static void main(String[] args) throws Exception {
+        int sizeMB = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+        Path dir = Paths.get(args.length > 1 ? args[1] : ".");
+        byte[] chunk = new byte[1 << 20];
+        new Random(11).nextBytes(chunk);
+
+        System.out.printf("%d MB, %d CPUs%n", sizeMB, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-6s %-7s %12s %12s%n", "files", "", "one by one", "tee");
+        for (int round = 0; round < 2; round++) {
+            for (boolean sync : new boolean[] {false, true}) {
+                for (int n : new int[] {1, 2, 4}) {
+                    Path[] files = new Path[n];
+                    for (int i = 0; i < n; i++)
+                        files[i] = dir.resolve("teebench-" + i + ".bin");
+                    try {
+                        double serial = serial(files, chunk, sizeMB, sync);
+                        double tee = tee(files, chunk, sizeMB, sync);
+                        if (round == 1)
+                            System.out.printf("%-6d %-7s %12.0f %12.0f%n", n, sync ? "synced" : "", serial, tee);
+                    } finally {
+                        delete(files);
+                    }
+                }
+            }
+        }
+    }
+
+    private static double serial(Path[] files, byte[] chunk, int sizeMB, boolean sync) throws IOException {
+        delete(files);
+        FileOutputStream[] outs = new FileOutputStream[files.length];
+        long t0 = System.nanoTime();
+        try {
+            for (int i = 0; i < files.length; i++)
+                outs[i] = new FileOutputStream(files[i].toFile());
+            for (int mb = 0; mb < sizeMB; mb++)
+                for (FileOutputStream out : outs)
+                    out.write(chunk);
+            if (sync)
+                for (FileOutputStream out : outs)
+                    out.getChannel().force(false);
+        } finally {
+            for (FileOutputStream out : outs)
+                if (out != null)
+                    out.close();
+        }
+        return check(files, sizeMB, t0);
+    }
+
+    private static double tee(Path[] files, byte[] chunk, int sizeMB, boolean sync) throws IOException {
+        delete(files);
+        long t0 = System.nanoTime();
+        FileChannel[] channels = new FileChannel[files.length];
+        for (int i = 0; i < files.length; i++)
+            channels[i] = new FileOutputStream(files[i].toFile()).getChannel();
+        try (TeeOutputStream out = new TeeOutputStream(channels)) {
+            for (int mb = 0; mb < sizeMB; mb++)
+                out.write(chunk);
+            out.flush();
+            if (sync)
+                for (FileChannel channel : channels)
+                    channel.force(false);
+        }
+        return check(files, sizeMB, t0);
+    }
+
+    // Every run starts from no files: truncating the last run's files would
+    // put freeing their cached pages inside the timing.
+    private static void delete(Path[] files) throws IOException {
+        for (Path f : files)
+            Files.deleteIfExists(f);
+    }
+
+    private static double check(Path[] files, int sizeMB, long t0) throws IOException {
+        double seconds = (System.nanoTime() - t0) / 1e9;
+        for (Path f : files)
+            if (Files.size(f) != (long) sizeMB << 20)
+                throw new IOException(f + " has " + Files.size(f) + " bytes");
+        return sizeMB / seconds;
+    }
+}
@@ -0,0 +1,151 @@
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+// Checks TeeOutputStream: every file ends up with exactly the bytes
+// written, through single bytes, small writes and writes of several
+// blocks, and has them all after each flush; no sink thread starts until
+// there is a block to write; and a file that cannot be written is reported
+// while the others still get everything.
+// Run: java TeeCheck [files]
+class TeeCheck {
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        Path dir = Files.createTempDirectory("tee-check");
+        try {
+            Path[] files = new Path[n];
+            for (int i = 0; i < n; i++)
+                files[i] = dir.resolve("tee-" + i + ".bin");
+            copies(files, 4);
+            copies(Arrays.copyOf(files, 1), 5);
+            onDemand(files);
+            failing(files[0], files[1]);
+        } finally {
+            try (DirectoryStream<Path> left = Files.newDirectoryStream(dir)) {
+                for (Path p : left)
+                    Files.delete(p);
+            }
+            Files.delete(dir);
+        }
+
+        if (failures > 0) {
+            System.out.println("FAILED: " + failures + " check(s).");
+            System.exit(1);
+        }
+        System.out.println("OK: every file got every byte, and the failing one was reported.");
+    }
+
+    private static void copies(Path[] files, long seed) throws IOException {
+        ByteArrayOutputStream expect = new ByteArrayOutputStream();
+        Random rnd = new Random(seed);
+        try (TeeOutputStream tee = new TeeOutputStream(files)) {
+            for (int k = 0; k < 3000; k++) {
+                int kind = rnd.nextInt(20);
+                if (kind < 5) {
+                    int b = rnd.nextInt(256);
+                    tee.write(b);
+                    expect.write(b);
+                } else {
+                    // now and then more than a full block at once
+                    byte[] b = new byte[kind == 19 ? rnd.nextInt(3 * TeeOutputStream.BLOCK_SIZE) : rnd.nextInt(5000)];
+                    rnd.nextBytes(b);
+                    int off = b.length == 0 ? 0 : rnd.nextInt(b.length);
+                    tee.write(b, off, b.length - off);
+                    expect.write(b, off, b.length - off);
+                }
+                if (k % 500 == 0) {
+                    tee.flush();
+                    for (Path f : files)
+                        if (Files.size(f) != expect.size())
+                            fail(f.getFileName() + " has " + Files.size(f) + " of " + expect.size() + " bytes after flush");
+                }
+            }
+        }
+        byte[] want = expect.toByteArray();
+        for (Path f : files)
+            if (!Arrays.equals(Files.readAllBytes(f), want))
+                fail(f.getFileName() + " differs from the " + want.length + " bytes written to " + files.length + " file(s)");
+        System.out.println(files.length + " file(s), " + want.length + " bytes each");
+    }
+
+    // a few bytes stay in the caller's block, with no thread started, until
+    // flush hands them over
+    private static void onDemand(Path[] files) throws IOException {
+        try (TeeOutputStream tee = new TeeOutputStream(files)) {
+            tee.write("Hello".getBytes());
+            if (sinkThreads() != 0)
+                fail(sinkThreads() + " sink threads running before the first block");
+            tee.flush();
+            if (sinkThreads() != files.length)
+                fail(sinkThreads() + " sink threads running after flush, expected " + files.length);
+            for (Path f : files)
+                if (!new String(Files.readAllBytes(f)).equals("Hello"))
+                    fail(f.getFileName() + " does not hold the flushed bytes");
+        }
+        if (sinkThreads() != 0)
+            fail(sinkThreads() + " sink threads left after close");
+    }
+
+    // A channel opened for reading only cannot be written. The write, flush
+    // or close after the sink fails throws, and the good file still gets
+    // every byte handed over before then: all the writes that returned, and
+    // perhaps part of the one that threw.
+    private static void failing(Path good, Path bad) throws IOException {
+        Files.write(bad, new byte[0]);
+        FileChannel goodChannel = FileChannel.open(good, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        FileChannel badChannel = FileChannel.open(bad, StandardOpenOption.READ);
+        TeeOutputStream tee = new TeeOutputStream(goodChannel, badChannel);
+        byte[] block = new byte[1 << 20];
+        long written = 0;
+        IOException reported = null;
+        try {
+            for (int i = 0; i < 3; i++) {
+                tee.write(block);
+                written += block.length;
+            }
+            tee.flush();
+        } catch (IOException e) {
+            reported = e;
+        }
+        try {
+            tee.close();
+        } catch (IOException e) {
+            if (reported == null)
+                reported = e;
+        }
+        if (reported == null)
+            fail("a sink that cannot be written was not reported");
+        long size = Files.size(good);
+        if (size < written || size > written + block.length)
+            fail("the good file has " + size + " bytes, " + written + " written before the failure");
+        if (goodChannel.isOpen() || badChannel.isOpen())
+            fail("close left a channel open");
+        try {
+            tee.write(1);
+            fail("a write after close went through");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static int sinkThreads() {
+        int n = 0;
+        for (Thread t : Thread.getAllStackTraces().keySet())
+            if (t.getName().startsWith("tee-sink-") && t.isAlive())
+                n++;
+        return n;
+    }
+
+    private static void fail(String message) {
+        if (failures < 10)
+            System.out.println("FAILED: " + message);
+        failures++;
+    }
+}
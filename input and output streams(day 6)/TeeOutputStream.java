@@ -0,0 +1,311 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// An OutputStream that writes everything to several files at once, in
+// place of the one writeTo per file in DemoBais and demoBaos.
+//
+// Bytes are copied once, into one of up to BLOCKS direct blocks. When a
+// block fills, every sink gets a read-only view of it, and each sink has
+// its own thread that writes whatever blocks it has waiting with one
+// gathering FileChannel.write. The block goes back to be reused when the
+// last sink is done with it. So the caller pays one copy however many
+// files there are, and a slow file holds up the others only once all the
+// blocks are waiting on it.
+//
+// Nothing is set up until it is needed: blocks are made as the stream asks
+// for them, the first MIN_BLOCK long and each one after a block fills twice
+// as long, up to BLOCK_SIZE, and the sink threads start with the first
+// block handed over. A few bytes cost one small block; a long stream soon
+// runs on full-size ones, a smaller block being dropped when it comes back
+// for reuse.
+//
+// flush() hands over the part-filled block and waits until every file has
+// it; close() then also closes the files. If writing one file fails, the
+// others carry on, and the next write, flush or close throws; close still
+// hands the others everything written, so they end up complete.
+class TeeOutputStream extends OutputStream {
+    static final int MIN_BLOCK = 8 << 10;
+    static final int BLOCK_SIZE = 1 << 20;
+    static final int BLOCKS = 8;
+
+    private static final class Block {
+        final ByteBuffer buf;
+        // sinks yet to write this block
+        final AtomicInteger pending = new AtomicInteger();
+
+        Block(int size) {
+            buf = ByteBuffer.allocateDirect(size);
+        }
+    }
+
+    // one block as one sink sees it
+    private static final class Piece {
+        final Block block;
+        final ByteBuffer view;
+
+        Piece(Block block, ByteBuffer view) {
+            this.block = block;
+            this.view = view;
+        }
+    }
+
+    private static final Piece STOP = new Piece(null, null);
+
+    private final Sink[] sinks;
+    private final BlockingQueue<Block> free = new ArrayBlockingQueue<>(BLOCKS);
+    private final Object progress = new Object();
+    private Block current;
+    // size of the next block made; doubles each time a block fills
+    private int blockSize = MIN_BLOCK;
+    private int blocksMade;
+    private boolean started;
+    // bytes handed to the sinks so far
+    private long handed;
+    private volatile IOException failure;
+    private boolean closed;
+
+    TeeOutputStream(Path... files) throws IOException {
+        this(open(files));
+    }
+
+    // The channels are closed with the stream.
+    TeeOutputStream(FileChannel... channels) {
+        if (channels.length == 0)
+            throw new IllegalArgumentException("No sinks.");
+        sinks = new Sink[channels.length];
+        for (int i = 0; i < channels.length; i++)
+            sinks[i] = new Sink(channels[i], i);
+    }
+
+    private static FileChannel[] open(Path[] files) throws IOException {
+        FileChannel[] channels = new FileChannel[files.length];
+        try {
+            for (int i = 0; i < files.length; i++)
+                channels[i] = FileChannel.open(files[i], StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            for (FileChannel c : channels)
+                if (c != null)
+                    c.close();
+            throw e;
+        }
+        return channels;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        block().buf.put((byte) b);
+        if (!current.buf.hasRemaining())
+            handOver();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if ((off | len) < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        while (len > 0) {
+            ByteBuffer buf = block().buf;
+            int n = Math.min(len, buf.remaining());
+            buf.put(b, off, n);
+            off += n;
+            len -= n;
+            if (!buf.hasRemaining())
+                handOver();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        checkOpen();
+        if (current != null && current.buf.position() > 0)
+            handOver();
+        awaitSinks();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        IOException thrown = null;
+        try {
+            // not flush(): after a sink has failed that throws before
+            // handing over, and the good files would lose the last bytes
+            // of writes that returned
+            if (current != null && current.buf.position() > 0)
+                handOver();
+            awaitSinks();
+        } catch (IOException e) {
+            thrown = e;
+        }
+        closed = true;
+        for (Sink sink : sinks)
+            sink.queue.add(STOP);
+        for (Sink sink : sinks) {
+            try {
+                sink.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            try {
+                sink.channel.close();
+            } catch (IOException e) {
+                if (thrown == null)
+                    thrown = e;
+            }
+        }
+        if (thrown != null)
+            throw thrown;
+    }
+
+    private Block block() throws IOException {
+        checkOpen();
+        if (current == null) {
+            Block b = free.poll();
+            if (b == null && blocksMade < BLOCKS) {
+                b = new Block(blockSize);
+                blocksMade++;
+            }
+            if (b == null) {
+                try {
+                    b = free.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            // outgrown: the stream has since filled bigger blocks
+            if (b.buf.capacity() < blockSize)
+                b = new Block(blockSize);
+            b.buf.clear();
+            current = b;
+        }
+        return current;
+    }
+
+    // gives the current block to every sink
+    private void handOver() throws IOException {
+        if (!started) {
+            started = true;
+            for (Sink sink : sinks)
+                sink.start();
+        }
+        Block block = current;
+        current = null;
+        if (!block.buf.hasRemaining())
+            blockSize = Math.min(BLOCK_SIZE, blockSize * 2);
+        ByteBuffer filled = block.buf.flip();
+        handed += filled.remaining();
+        block.pending.set(sinks.length);
+        for (Sink sink : sinks)
+            sink.queue.add(new Piece(block, filled.asReadOnlyBuffer()));
+        checkFailure();
+    }
+
+    private void awaitSinks() throws IOException {
+        synchronized (progress) {
+            for (Sink sink : sinks) {
+                while (sink.written < handed && failure == null) {
+                    try {
+                        progress.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+            }
+        }
+        checkFailure();
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed)
+            throw new IOException("Stream closed");
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        IOException e = failure;
+        if (e != null)
+            throw new IOException("A tee sink failed: " + e.getMessage(), e);
+    }
+
+    private void release(Block block) {
+        if (block.pending.decrementAndGet() == 0)
+            free.add(block);
+    }
+
+    // Writes one file: waits for a block, takes any others already waiting
+    // too, and writes them all in one call.
+    private final class Sink extends Thread {
+        final FileChannel channel;
+        // room for every block and the STOP after them
+        final BlockingQueue<Piece> queue = new ArrayBlockingQueue<>(BLOCKS + 1);
+        volatile long written;
+        private boolean failed;
+        private final Piece[] batch = new Piece[BLOCKS];
+        private final ByteBuffer[] views = new ByteBuffer[BLOCKS];
+
+        Sink(FileChannel channel, int index) {
+            super("tee-sink-" + index);
+            this.channel = channel;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    batch[0] = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (batch[0] == STOP)
+                    return;
+                int n = 1;
+                Piece next;
+                while (n < batch.length && (next = queue.peek()) != null && next != STOP)
+                    batch[n++] = queue.poll();
+
+                for (int i = 0; i < n; i++)
+                    views[i] = batch[i].view;
+                write(views, n);
+                for (int i = 0; i < n; i++) {
+                    release(batch[i].block);
+                    batch[i] = null;
+                    views[i] = null;
+                }
+                synchronized (progress) {
+                    progress.notifyAll();
+                }
+            }
+        }
+
+        // After a failure the sink stops writing but still counts the
+        // bytes, so flush does not wait for it.
+        private void write(ByteBuffer[] buffers, int n) {
+            long bytes = 0;
+            for (int i = 0; i < n; i++)
+                bytes += buffers[i].remaining();
+            if (!failed) {
+                try {
+                    long left = bytes;
+                    while (left > 0)
+                        left -= channel.write(buffers, 0, n);
+                } catch (IOException | RuntimeException e) {
+                    // a channel opened read-only throws unchecked; either
+                    // way this sink is done, and must keep releasing blocks
+                    failed = true;
+                    if (failure == null)
+                        failure = e instanceof IOException ? (IOException) e : new IOException(e);
+                }
+            }
+            written += bytes;
+        }
+    }
+}
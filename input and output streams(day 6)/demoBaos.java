@@ -6,17 +6,21 @@ class demoBaos
         try{
             FileOutputStream focus1=new FileOutputStream("s1.txt");
             FileOutputStream focus2=new FileOutputStream("s2.txt");
+            // both files written at once, from one copy of the bytes
+            TeeOutputStream tee=new TeeOutputStream(focus1.getChannel(),focus2.getChannel());
 
             ByteArrayOutputStream baos=new ByteArrayOutputStream();
             String str="this is a string";
             baos.write(65);
             baos.write(str.getBytes());
 
-            baos.writeTo(focus1);
-            baos.writeTo(focus2);
+            baos.writeTo(tee);
+            tee.close();
            // baos.flush();
             baos.close();
-        }catch(Exception e){}
+        }catch(Exception e){
+            e.printStackTrace();
+        }
         
     }
 }
\ No newline at end of file
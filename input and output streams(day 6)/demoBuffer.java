@@ -12,15 +12,17 @@ class demoBuffer{
             // Reading data from the file
            
         }
-        catch(Exception e){}
+        catch(Exception e){
+            e.printStackTrace();
+        }
         try{
             FileInputStream fo = new FileInputStream("nith.txt");
          BufferedInputStream fin = new BufferedInputStream(fo);
-         int i=0;
-         while((i=fin.read())!=-1)
-         {
-            System.out.print((char)i);
-         }
-        }catch(Exception e){}
+         // a block per read() call rather than a byte
+         BlockCopy.copy(fin, System.out, null);
+         fin.close();
+        }catch(Exception e){
+            e.printStackTrace();
+        }
     }
 }
\ No newline at end of file
@@ -1,4 +1,6 @@
 import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 class DemoData {
     public static void main(String[] args) {
@@ -17,6 +19,20 @@ class DemoData {
             System.out.println(data);
             din.close();
             fin.close();
+
+            // For many records, ColumnWriter keeps each column in its own
+            // pages, and ColumnReader reads only the pages a query needs;
+            // ColumnFileBench measures it at millions of rows
+            Path file = Paths.get("nithya.col");
+            try (ColumnWriter cw = new ColumnWriter(file, true).intColumn("id").intColumn("marks")) {
+                for (int i = 0; i < 50_000; i++)
+                    cw.setInt(0, i).setInt(1, i % 101).endRow();
+            }
+            try (ColumnReader cr = new ColumnReader(file)) {
+                long total = cr.sum(cr.column("marks"), cr.column("id"), 20_000, 20_999);
+                System.out.println("Total marks of ids 20000 to 20999: " + total + ", pages read: "
+                        + cr.pagesRead() + " of " + cr.groups() * cr.columns());
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }